@@ -0,0 +1,230 @@
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Multi producer, single consumer logger used by ProfileDeleter.
+ * <p>
+ * Threads logging a message claim the next slot of a fixed size ring buffer
+ * with a single atomic increment and store the LogEvent there, so logging
+ * never takes a lock. A single daemon thread takes
+ * messages from the buffer in the order they were claimed, formats them and
+ * passes them to the LogListener.<br>
+ * If the buffer is full, threads logging a message wait for the consumer to
+ * free a slot rather than dropping the message.<br>
+ * When the buffer is empty the consumer thread parks until a thread logging a
+ * message unparks it, so an idle logger uses no CPU. The consumer thread runs
+ * until shutdown is called.
+ */
+public class AsyncLogger {
+
+    /**
+     * Receives formatted messages from the consumer thread.
+     */
+    public interface LogListener {
+
+        /**
+         * Called on the consumer thread for each message logged, in the order
+         * the messages were logged.
+         *
+         * @param event the message and the context it was logged in
+         * @param log_message the message formatted as a line of text
+         */
+        void logWritten(LogEvent event, String log_message);
+
+        /**
+         * Called on the consumer thread when every message logged so far has
+         * been passed to logWritten, so the listener can write out anything
+         * it has buffered.
+         */
+        void batchComplete();
+    }
+
+    /**
+     * Class attributes.
+     */
+    private final AtomicReferenceArray<LogEvent> buffer;
+    private final int mask;
+    private final AtomicLong claimed;
+    private final AtomicLong consumed;
+    private final LogListener listener;
+    private final Thread consumer_thread;
+    private final SimpleDateFormat human_readable_timestamp;
+    private final Date date;
+    private final StringBuilder log_message;
+    private volatile boolean stopped;
+
+    /**
+     * Constructor for AsyncLogger class.
+     * <p>
+     * Starts the consumer thread.
+     *
+     * @param capacity the number of messages the buffer can hold, rounded up
+     * to a power of 2
+     * @param listener the listener to pass formatted messages to
+     */
+    public AsyncLogger(int capacity, LogListener listener) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        buffer = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+        claimed = new AtomicLong(0);
+        consumed = new AtomicLong(0);
+        this.listener = listener;
+        human_readable_timestamp = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss.SSS");
+        date = new Date();
+        log_message = new StringBuilder(256);
+        stopped = false;
+        consumer_thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "ProfileDeleter-log");
+        consumer_thread.setDaemon(true);
+        consumer_thread.start();
+    }
+
+    /**
+     * Adds a message to the log without blocking.
+     * <p>
+     * Messages logged after shutdown has been called are dropped.
+     *
+     * @param event the message and the context it was logged in
+     */
+    public void log(LogEvent event) {
+        if (Thread.currentThread() == consumer_thread) {
+            // A listener logging from the consumer thread cannot wait for
+            // itself to free a slot, so the message is handled immediately.
+            handle(event);
+            return;
+        }
+        if (stopped) {
+            return;
+        }
+        long sequence = claimed.getAndIncrement();
+        while (sequence - consumed.get() >= buffer.length() && consumer_thread.isAlive()) {
+            LockSupport.unpark(consumer_thread);
+            Thread.yield();
+        }
+        buffer.set((int) sequence & mask, event);
+        LockSupport.unpark(consumer_thread);
+    }
+
+    /**
+     * Waits until every message logged before this was called has been passed
+     * to the listener.
+     */
+    public void flush() {
+        if (Thread.currentThread() == consumer_thread) {
+            return;
+        }
+        long target = claimed.get();
+        while (consumed.get() < target && consumer_thread.isAlive()) {
+            LockSupport.unpark(consumer_thread);
+            LockSupport.parkNanos(100000L);
+        }
+    }
+
+    /**
+     * Stops the consumer thread once every message logged before this was
+     * called has been passed to the listener, and waits for it to finish.
+     * <p>
+     * Messages logged after this is called are dropped. Calling this more than
+     * once has no further effect.
+     */
+    public void shutdown() {
+        stopped = true;
+        if (Thread.currentThread() == consumer_thread) {
+            return;
+        }
+        LockSupport.unpark(consumer_thread);
+        boolean interrupted = false;
+        while (consumer_thread.isAlive()) {
+            try {
+                consumer_thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes messages from the buffer in order and handles them. Runs on the
+     * consumer thread until shutdown is called and every claimed message has
+     * been handled.
+     */
+    private void consume() {
+        long next = 0;
+        boolean batch_pending = false;
+        while (true) {
+            int index = (int) next & mask;
+            LogEvent event = buffer.get(index);
+            if (event == null) {
+                if (batch_pending && claimed.get() == next) {
+                    batch_pending = false;
+                    try {
+                        listener.batchComplete();
+                    } catch (RuntimeException e) {
+                        // A failing listener must not stop the log.
+                    }
+                }
+                if (stopped && claimed.get() == next) {
+                    return;
+                }
+                // Every thread logging a message unparks the consumer after
+                // storing it, and a permit given before parking is kept, so
+                // no message is left waiting in the buffer.
+                LockSupport.park(this);
+                continue;
+            }
+            batch_pending = true;
+            buffer.set(index, null);
+            try {
+                handle(event);
+            } catch (RuntimeException e) {
+                // A failing listener must not stop the log.
+            }
+            next++;
+            consumed.set(next);
+        }
+    }
+
+    /**
+     * Formats a message and passes it to the listener.
+     * <p>
+     * Only called on the consumer thread so the formatter and builder are
+     * reused for every message.
+     *
+     * @param event the message to handle
+     */
+    private void handle(LogEvent event) {
+        log_message.setLength(0);
+        if (event.getSeverity() != null) {
+            switch (event.getSeverity()) {
+                case INFO:
+                    log_message.append("Info: ");
+                    break;
+                case WARNING:
+                    log_message.append("Warning: ");
+                    break;
+                case ERROR:
+                    log_message.append("ERROR: ");
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (event.getIncludeTimestamp()) {
+            date.setTime(event.getTimestamp());
+            log_message.append('[').append(human_readable_timestamp.format(date)).append("] ");
+        }
+        log_message.append(event.getMessage());
+        listener.logWritten(event, log_message.toString());
+    }
+}
@@ -0,0 +1,320 @@
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compressed, deduplicated store for registry backup files.
+ * <p>
+ * Each registry file is split into one chunk per registry key. Chunks are
+ * stored gzip compressed in the objects folder, named by the SHA-256 hash of
+ * their contents, so a key that has not changed since a previous backup is
+ * only ever stored once.<br>
+ * Every backup added is recorded as a line in index.txt containing the date,
+ * computer, label and chunk hashes so backups can be found by computer, SID
+ * or date and restored as a plain registry file.
+ */
+public class BackupStore {
+
+    /**
+     * Lock used when writing to the index so stores from multiple threads or
+     * ProfileDeleter instances do not interleave their lines.
+     */
+    private static final Object INDEX_LOCK = new Object();
+
+    /**
+     * Character set used for chunks, the index and hashing.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Class attributes.
+     */
+    private final File store_directory;
+    private final File objects_directory;
+    private final File index_file;
+
+    /**
+     * Constructor for BackupStore class.
+     *
+     * @param store_directory the folder the store is kept in. Created when the
+     * first backup is added
+     */
+    public BackupStore(String store_directory) {
+        this.store_directory = new File(store_directory);
+        this.objects_directory = new File(store_directory, "objects");
+        this.index_file = new File(store_directory, "index.txt");
+    }
+
+    /**
+     * A single backup recorded in the store index.
+     */
+    public static class Entry {
+
+        private final String date;
+        private final String computer;
+        private final String label;
+        private final List<String> chunk_hashes;
+
+        Entry(String date, String computer, String label, List<String> chunk_hashes) {
+            this.date = date;
+            this.computer = computer;
+            this.label = label;
+            this.chunk_hashes = chunk_hashes;
+        }
+
+        /**
+         * Gets the date the backup was added, in the format yyyy-MM-dd HH:mm:ss.
+         *
+         * @return the date the backup was added
+         */
+        public String getDate() {
+            return date;
+        }
+
+        /**
+         * Gets the computer the backup was taken from.
+         *
+         * @return the computer the backup was taken from
+         */
+        public String getComputer() {
+            return computer;
+        }
+
+        /**
+         * Gets the label of the backup, for example ProfileList_ followed by
+         * the SID.
+         *
+         * @return the label of the backup
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Gets the hashes of the chunks making up the backup, in order.
+         *
+         * @return the chunk hashes
+         */
+        public List<String> getChunkHashes() {
+            return chunk_hashes;
+        }
+    }
+
+    /**
+     * Adds a registry file to the store.
+     * <p>
+     * The file is read a line at a time and each registry key is hashed and
+     * written as it is read. Chunks already in the store are not written
+     * again.
+     *
+     * @param reg_file the registry file to add
+     * @param computer the computer the registry file was taken from
+     * @param label the label to record the backup under
+     * @return the index entry for the backup
+     * @throws IOException an IO error occurred when reading the registry file
+     * or writing to the store
+     */
+    public Entry store(File reg_file, String computer, String label) throws IOException {
+        if (!objects_directory.isDirectory() && !objects_directory.mkdirs() && !objects_directory.isDirectory()) {
+            throw new IOException("Unable to create backup store folder " + objects_directory.getPath());
+        }
+        List<String> chunk_hashes = new ArrayList<>();
+        try (BufferedReader reader = RegFileReader.openReader(reg_file)) {
+            StringBuilder chunk = new StringBuilder();
+            String line;
+            boolean first_line = true;
+            while ((line = reader.readLine()) != null) {
+                if (first_line) {
+                    first_line = false;
+                    continue;
+                }
+                if (line.startsWith("[") && chunk.length() > 0) {
+                    chunk_hashes.add(storeChunk(chunk.toString()));
+                    chunk.setLength(0);
+                }
+                if (!line.isEmpty()) {
+                    chunk.append(line).append("\r\n");
+                }
+            }
+            if (chunk.length() > 0) {
+                chunk_hashes.add(storeChunk(chunk.toString()));
+            }
+        }
+        String date = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+        StringBuilder index_line = new StringBuilder();
+        index_line.append(date).append('\t').append(computer).append('\t').append(label).append('\t');
+        for (int i = 0; i < chunk_hashes.size(); i++) {
+            if (i > 0) {
+                index_line.append(',');
+            }
+            index_line.append(chunk_hashes.get(i));
+        }
+        synchronized (INDEX_LOCK) {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(index_file, true))) {
+                writer.write(index_line.toString());
+                writer.newLine();
+            }
+        }
+        return new Entry(date, computer, label, chunk_hashes);
+    }
+
+    /**
+     * Finds backups in the store index.
+     *
+     * @param computer the computer to find backups for. An empty String
+     * matches every computer
+     * @param label_contains text the label must contain, for example a SID. An
+     * empty String matches every label
+     * @param date_prefix the start of the date the backup was added, for
+     * example 2018-06 for every backup added in June 2018. An empty String
+     * matches every date
+     * @return the matching backups, oldest first
+     * @throws IOException an IO error occurred when reading the index
+     */
+    public List<Entry> find(String computer, String label_contains, String date_prefix) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!index_file.exists()) {
+            return entries;
+        }
+        synchronized (INDEX_LOCK) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(index_file))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    if (fields.length >= 3 && fields[0].startsWith(date_prefix) && (computer.isEmpty() || fields[1].equalsIgnoreCase(computer)) && fields[2].toLowerCase().contains(label_contains.toLowerCase())) {
+                        List<String> chunk_hashes = fields.length > 3 && !fields[3].isEmpty() ? Arrays.asList(fields[3].split(",")) : new ArrayList<String>();
+                        entries.add(new Entry(fields[0], fields[1], fields[2], chunk_hashes));
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Recreates a plain registry file from a backup in the store.
+     * <p>
+     * The file is written as UTF-16LE with the Windows Registry Editor Version
+     * 5.00 header so it can be imported with REG IMPORT.
+     *
+     * @param entry the backup to restore
+     * @param reg_file the registry file to create
+     * @throws IOException an IO error occurred when reading a chunk or writing
+     * the registry file, or a chunk is missing from the store
+     */
+    public void restore(Entry entry, File reg_file) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(reg_file), Charset.forName("UTF-16LE")), 65536)) {
+            writer.write('\uFEFF');
+            writer.write(RegFileWriter.REGEDIT5_HEADER);
+            writer.write("\r\n");
+            char[] buffer = new char[8192];
+            for (String chunk_hash : entry.getChunkHashes()) {
+                File chunk_file = getChunkFile(chunk_hash);
+                if (!chunk_file.exists()) {
+                    throw new IOException("Backup store is missing chunk " + chunk_hash + " for backup " + entry.getLabel());
+                }
+                writer.write("\r\n");
+                try (InputStreamReader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(chunk_file)), UTF_8)) {
+                    int read;
+                    while ((read = reader.read(buffer)) > 0) {
+                        writer.write(buffer, 0, read);
+                    }
+                }
+            }
+            writer.write("\r\n");
+        }
+    }
+
+    /**
+     * Gets the folder the store is kept in.
+     *
+     * @return the folder the store is kept in
+     */
+    public File getStoreDirectory() {
+        return store_directory;
+    }
+
+    /**
+     * Writes a chunk to the objects folder unless it is already stored.
+     * <p>
+     * The chunk is written to a temporary file first and renamed once
+     * complete, so a partially written chunk is never mistaken for a stored
+     * one.
+     *
+     * @param chunk the text of the registry key
+     * @return the SHA-256 hash of the chunk
+     * @throws IOException an IO error occurred when writing the chunk
+     */
+    private String storeChunk(String chunk) throws IOException {
+        byte[] chunk_bytes = chunk.getBytes(UTF_8);
+        String chunk_hash = sha256(chunk_bytes);
+        File chunk_file = getChunkFile(chunk_hash);
+        if (!chunk_file.exists()) {
+            File chunk_directory = chunk_file.getParentFile();
+            if (!chunk_directory.isDirectory() && !chunk_directory.mkdirs() && !chunk_directory.isDirectory()) {
+                throw new IOException("Unable to create backup store folder " + chunk_directory.getPath());
+            }
+            File temp_file = File.createTempFile(chunk_hash, ".tmp", chunk_directory);
+            try (OutputStream output = new GZIPOutputStream(new FileOutputStream(temp_file))) {
+                output.write(chunk_bytes);
+            }
+            if (!temp_file.renameTo(chunk_file) && !temp_file.delete()) {
+                temp_file.deleteOnExit();
+            }
+        }
+        return chunk_hash;
+    }
+
+    /**
+     * Gets the file a chunk is stored in.
+     * <p>
+     * Chunks are spread over sub folders named by the first two characters of
+     * their hash to keep folders small enough to browse.
+     *
+     * @param chunk_hash the SHA-256 hash of the chunk
+     * @return the file the chunk is stored in
+     */
+    private File getChunkFile(String chunk_hash) {
+        return new File(new File(objects_directory, chunk_hash.substring(0, 2)), chunk_hash + ".gz");
+    }
+
+    /**
+     * Calculates the SHA-256 hash of some bytes.
+     *
+     * @param bytes the bytes to hash
+     * @return the hash as lower case hex
+     */
+    private static String sha256(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte value : digest) {
+                hex.append(Character.forDigit((value >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(value & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model for the deletion report table that reads each cell straight
+ * from the DeletionResult of each user.
+ * <p>
+ * No copy of the report is made when it is displayed, cells are only read
+ * when the table draws or sorts them, so a report of thousands of users opens
+ * as quickly as a report of a few.<br>
+ * Results can be added while a deletion is running and are shown as new rows.
+ * Everything must be called on the event dispatch thread.
+ */
+public class DeletionReportTableModel extends AbstractTableModel {
+
+    /**
+     * The column showing whether every step of the deletion succeeded.
+     */
+    public static final int SUCCESS_COLUMN = 1;
+
+    /**
+     * The column showing the size in bytes of each user.
+     */
+    public static final int SIZE_COLUMN = 7;
+
+    /**
+     * Class attributes.
+     */
+    private final List<DeletionResult> results;
+
+    /**
+     * Constructor for DeletionReportTableModel class.
+     */
+    public DeletionReportTableModel() {
+        results = new ArrayList<>();
+    }
+
+    /**
+     * Replaces every row with a new list of results.
+     *
+     * @param new_results the results to display
+     */
+    public void setResults(List<DeletionResult> new_results) {
+        results.clear();
+        results.addAll(new_results);
+        fireTableDataChanged();
+    }
+
+    /**
+     * Adds the result of a single user as a new row.
+     *
+     * @param result the result to add
+     */
+    public void addResult(DeletionResult result) {
+        results.add(result);
+        fireTableRowsInserted(results.size() - 1, results.size() - 1);
+    }
+
+    /**
+     * Gets the results displayed in the table in the order they were added.
+     *
+     * @return the results displayed in the table
+     */
+    public List<DeletionResult> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Gets the result displayed in a row.
+     *
+     * @param row the row in the model
+     * @return the result displayed in the row
+     */
+    public DeletionResult getResultAt(int row) {
+        return results.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return results.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return DeletionResult.REPORT_HEADINGS.length;
+    }
+
+    @Override
+    public String getColumnName(int col) {
+        return DeletionResult.REPORT_HEADINGS[col];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int col) {
+        return col == SIZE_COLUMN ? Long.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int col) {
+        return results.get(row).getColumn(col);
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int col) {
+        return false;
+    }
+}
@@ -0,0 +1,307 @@
+
+/**
+ * Result of deleting a single user.
+ * <p>
+ * Records the outcome and time taken of each step of the deletion along with
+ * the SID, GUID and size of the user at the time it was deleted, so reports
+ * and totals can be built without parsing report text.<br>
+ * Each result is filled in by the single delete_user_process deleting the
+ * user and only read once that process has completed.
+ */
+public class DeletionResult {
+
+    /**
+     * The steps taken to delete a user.
+     */
+    public enum STEP {
+        FOLDER, SID, GUID
+    }
+
+    /**
+     * Headings of the columns returned by toObjectArray.
+     */
+    public static final String[] REPORT_HEADINGS = {"User", "Successful?", "Folder Deleted?", "SID Deleted?", "GUID Deleted?", "SID", "GUID", "Size"};
+
+    /**
+     * Headings of the additional timing columns written by appendReportLine.
+     */
+    public static final String[] REPORT_TIMING_HEADINGS = {"Folder Time (ms)", "SID Time (ms)", "GUID Time (ms)"};
+
+    /**
+     * Class attributes.
+     */
+    private final String name;
+    private final String sid;
+    private final String guid;
+    private final long size;
+    private final boolean[] deleted;
+    private final String[] outcomes;
+    private final long[] durations;
+    private boolean folder_renamed;
+
+    /**
+     * Constructor for DeletionResult class.
+     * <p>
+     * Takes a copy of the name, SID, GUID and size of the user so the result
+     * is unaffected by any later changes to the user.
+     *
+     * @param user the user being deleted
+     */
+    public DeletionResult(UserData user) {
+        name = user.getName();
+        sid = user.getSid();
+        guid = user.getGuid();
+        size = user.getSize();
+        deleted = new boolean[STEP.values().length];
+        outcomes = new String[STEP.values().length];
+        durations = new long[STEP.values().length];
+        folder_renamed = false;
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = "";
+        }
+    }
+
+    /**
+     * Records the result of a step of the deletion.
+     *
+     * @param step the step to record the result for
+     * @param step_deleted whether the step completed successfully
+     * @param outcome the text to display in the report for the step
+     * @param duration how long the step took in milliseconds, including any
+     * retries
+     */
+    public void setStepResult(STEP step, boolean step_deleted, String outcome, long duration) {
+        deleted[step.ordinal()] = step_deleted;
+        outcomes[step.ordinal()] = outcome;
+        durations[step.ordinal()] = duration;
+    }
+
+    /**
+     * Sets the folder renamed attribute.
+     * <p>
+     * Set when a two phase deletion renamed the user folder and queued it to
+     * be purged in the background, rather than deleting it.
+     *
+     * @param folder_renamed whether the user folder was renamed and queued
+     * for purge
+     */
+    public void setFolderRenamed(boolean folder_renamed) {
+        this.folder_renamed = folder_renamed;
+    }
+
+    /**
+     * Gets the name attribute
+     *
+     * @return the name of the users folder
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the SID attribute
+     *
+     * @return the ProfileList SID value for the user in the registry
+     */
+    public String getSid() {
+        return sid;
+    }
+
+    /**
+     * Gets the GUID attribute
+     *
+     * @return the ProfileGuid GUID value for the user in the registry
+     */
+    public String getGuid() {
+        return guid;
+    }
+
+    /**
+     * Gets the size attribute
+     *
+     * @return the size of the user folder in bytes when it was deleted, or
+     * UserData.SIZE_NOT_CHECKED or UserData.SIZE_CHECK_FAILED
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets whether a step of the deletion completed successfully.
+     *
+     * @param step the step to check
+     * @return whether the step completed successfully
+     */
+    public boolean getDeleted(STEP step) {
+        return deleted[step.ordinal()];
+    }
+
+    /**
+     * Gets the outcome of a step of the deletion.
+     *
+     * @param step the step to get the outcome for
+     * @return the text displayed in the report for the step
+     */
+    public String getOutcome(STEP step) {
+        return outcomes[step.ordinal()];
+    }
+
+    /**
+     * Gets how long a step of the deletion took.
+     *
+     * @param step the step to get the time taken for
+     * @return how long the step took in milliseconds
+     */
+    public long getDuration(STEP step) {
+        return durations[step.ordinal()];
+    }
+
+    /**
+     * Gets whether every step of the deletion completed successfully.
+     *
+     * @return whether the user was deleted
+     */
+    public boolean getSuccess() {
+        for (boolean step_deleted : deleted) {
+            if (!step_deleted) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the folder renamed attribute.
+     *
+     * @return whether the user folder was renamed and queued for purge rather
+     * than deleted
+     */
+    public boolean getFolderRenamed() {
+        return folder_renamed;
+    }
+
+    /**
+     * Gets the number of bytes freed by the deletion.
+     * <p>
+     * A folder that was renamed and queued for purge is not counted, as the
+     * purge may still fail. See getBytesQueued.
+     *
+     * @return the size of the user folder if it was deleted and its size is
+     * known, otherwise 0
+     */
+    public long getBytesFreed() {
+        return deleted[STEP.FOLDER.ordinal()] && !folder_renamed && size > 0 ? size : 0;
+    }
+
+    /**
+     * Gets the number of bytes renamed and queued for purge by a two phase
+     * deletion.
+     *
+     * @return the size of the user folder if it was renamed and queued for
+     * purge and its size is known, otherwise 0
+     */
+    public long getBytesQueued() {
+        return deleted[STEP.FOLDER.ordinal()] && folder_renamed && size > 0 ? size : 0;
+    }
+
+    /**
+     * Gets the size as displayed in the deletion report.
+     *
+     * @return the size in bytes, or text explaining why it is not known
+     */
+    public String getSizeText() {
+        if (size == UserData.SIZE_NOT_CHECKED) {
+            return "No size set";
+        } else if (size < 0) {
+            return "Could not calculate size";
+        }
+        return Long.toString(size);
+    }
+
+    /**
+     * Converts the result to an Object array for displaying in a JTable.
+     * <p>
+     * The size is returned in bytes as a Long so the column can be sorted
+     * numerically, use getSizeText for the size as text.
+     *
+     * @return the result as an Object array in the order of REPORT_HEADINGS
+     */
+    public Object[] toObjectArray() {
+        Object[] columns = new Object[REPORT_HEADINGS.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = getColumn(i);
+        }
+        return columns;
+    }
+
+    /**
+     * Gets a single column of the result for displaying in a JTable.
+     * <p>
+     * The size is returned in bytes as a Long so the column can be sorted
+     * numerically, use getSizeText for the size as text.
+     *
+     * @param column the index of the column in REPORT_HEADINGS
+     * @return the value of the column, or null if the column does not exist
+     */
+    public Object getColumn(int column) {
+        switch (column) {
+            case 0:
+                return name.isEmpty() ? "No name set" : name;
+            case 1:
+                return getSuccess() ? "Yes" : "No";
+            case 2:
+                return outcomes[STEP.FOLDER.ordinal()];
+            case 3:
+                return outcomes[STEP.SID.ordinal()];
+            case 4:
+                return outcomes[STEP.GUID.ordinal()];
+            case 5:
+                return sid.isEmpty() ? "No SID set" : sid;
+            case 6:
+                return guid.isEmpty() ? "No GUID set" : guid;
+            case 7:
+                return size;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Appends the result as a tab delimited line of the deletion report.
+     * <p>
+     * The line contains the columns of REPORT_HEADINGS followed by the columns
+     * of REPORT_TIMING_HEADINGS.
+     *
+     * @param report the report to append the line to
+     * @return the report
+     */
+    public StringBuilder appendReportLine(StringBuilder report) {
+        for (int i = 0; i < REPORT_HEADINGS.length - 1; i++) {
+            report.append(getColumn(i)).append('\t');
+        }
+        report.append(getSizeText());
+        for (long duration : durations) {
+            report.append('\t').append(duration);
+        }
+        return report;
+    }
+
+    /**
+     * Appends the headings of the deletion report as a tab delimited line.
+     *
+     * @param report the report to append the line to
+     * @return the report
+     */
+    public static StringBuilder appendReportHeadings(StringBuilder report) {
+        for (int i = 0; i < REPORT_HEADINGS.length; i++) {
+            if (i > 0) {
+                report.append('\t');
+            }
+            report.append(REPORT_HEADINGS[i]);
+        }
+        for (String heading : REPORT_TIMING_HEADINGS) {
+            report.append('\t').append(heading);
+        }
+        return report;
+    }
+}
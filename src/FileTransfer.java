@@ -0,0 +1,165 @@
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * In process file copy used to pull files such as registry backups, reports
+ * and logs back from remote computers.
+ * <p>
+ * Files are copied with FileChannel.transferTo so the data is moved by the
+ * operating system without being copied through the Java heap. The copy can
+ * optionally be verified by comparing CRC32 checksums of the source and
+ * destination files.
+ */
+public class FileTransfer {
+
+    /**
+     * Size of the buffer used when calculating checksums.
+     */
+    private static final int CHECKSUM_BUFFER_SIZE = 65536;
+
+    /**
+     * The outcome of a single file copy.
+     */
+    public static class Result {
+
+        private final long bytes;
+        private final long duration;
+        private final long checksum;
+
+        Result(long bytes, long duration, long checksum) {
+            this.bytes = bytes;
+            this.duration = duration;
+            this.checksum = checksum;
+        }
+
+        /**
+         * Gets the number of bytes copied.
+         *
+         * @return the number of bytes copied
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Gets how long the copy took, including verification.
+         *
+         * @return how long the copy took in milliseconds
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * Gets the CRC32 checksum of the copied file.
+         *
+         * @return the checksum or -1 if the copy was not verified
+         */
+        public long getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * Gets the throughput of the copy.
+         *
+         * @return the throughput in bytes per second
+         */
+        public long getBytesPerSecond() {
+            return duration > 0 ? bytes * 1000 / duration : bytes * 1000;
+        }
+    }
+
+    /**
+     * Copies a file.
+     * <p>
+     * If the copy fails or cannot be verified the partially copied destination
+     * file is deleted.<br>
+     * Interrupting the copying thread closes the file channels, so the copy
+     * stops with an InterruptedException and the thread is left interrupted.
+     *
+     * @param source the file to copy. Can be on a remote computer using
+     * \\computername
+     * @param destination the file to create. Any existing file is overwritten
+     * @param verify whether to compare the checksums of the source and
+     * destination files after copying
+     * @return the result of the copy
+     * @throws IOException an IO error occurred when copying the file or the
+     * checksums of the source and destination files do not match
+     * @throws InterruptedException the copying thread was interrupted
+     */
+    public static Result copy(File source, File destination, boolean verify) throws IOException, InterruptedException {
+        long start_time = System.currentTimeMillis();
+        boolean copy_complete = false;
+        try {
+            long bytes;
+            try (FileChannel source_channel = new FileInputStream(source).getChannel();
+                    FileChannel destination_channel = new FileOutputStream(destination).getChannel()) {
+                bytes = source_channel.size();
+                long position = 0;
+                while (position < bytes) {
+                    long transferred = source_channel.transferTo(position, bytes - position, destination_channel);
+                    if (transferred <= 0) {
+                        throw new IOException("Copy of " + source.getPath() + " stopped after " + position + " of " + bytes + " bytes");
+                    }
+                    position += transferred;
+                }
+            }
+            long checksum = -1;
+            if (verify) {
+                checksum = checksum(destination);
+                long source_checksum = checksum(source);
+                if (checksum != source_checksum) {
+                    throw new IOException("Checksum of copied file " + destination.getPath() + " does not match " + source.getPath());
+                }
+            }
+            copy_complete = true;
+            return new Result(bytes, System.currentTimeMillis() - start_time, checksum);
+        } catch (ClosedByInterruptException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedException("Copy of " + source.getPath() + " was interrupted");
+        } finally {
+            if (!copy_complete && destination.exists()) {
+                destination.delete();
+            }
+        }
+    }
+
+    /**
+     * Calculates the CRC32 checksum of a file.
+     *
+     * @param file the file to calculate the checksum for
+     * @return the checksum of the file
+     * @throws IOException an IO error occurred when reading the file
+     */
+    public static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_BUFFER_SIZE);
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            while (channel.read(buffer) > 0) {
+                crc.update(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Formats a throughput as a readable String.
+     *
+     * @param bytes_per_second the throughput in bytes per second
+     * @return the throughput in KB/s or MB/s
+     */
+    public static String formatThroughput(long bytes_per_second) {
+        if (bytes_per_second >= 1048576) {
+            return String.format("%.1f MB/s", bytes_per_second / 1048576.0);
+        }
+        return String.format("%.1f KB/s", bytes_per_second / 1024.0);
+    }
+}
@@ -2,12 +2,20 @@ param([string]$directory)
 $directoryList = Get-Childitem $directory
 $directoryListClean = @()
 foreach($userDirectory in $directoryList) {
+$keyFolders = @(Get-ChildItem -Force -ErrorAction SilentlyContinue $userDirectory.FullName | Where-Object { $_.PSIsContainer })
+$keyFolders += @(Get-ChildItem -Force -ErrorAction SilentlyContinue "$($userDirectory.FullName)\AppData" | Where-Object { $_.PSIsContainer })
+$keyFoldersUpdated = ""
+if ($keyFolders.Count -gt 0) {
+$keyFoldersUpdated = "$(($keyFolders | Sort-Object LastWriteTime -Descending | Select-Object -First 1).LastWriteTime)"
+}
 $newDirectoryObject = New-Object System.Object
 $newDirectoryObject | Add-Member -type NoteProperty -name Name -value "$($userDirectory.Name)"
 $newDirectoryObject | Add-Member -type NoteProperty -name LastUpdated -value "$($userDirectory.LastWriteTime)"
+$newDirectoryObject | Add-Member -type NoteProperty -name KeyFoldersUpdated -value "$keyFoldersUpdated"
 $newDirectoryObject.Name = $newDirectoryObject.Name -replace "`n|`r|`t",""
 $newDirectoryObject.LastUpdated = $newDirectoryObject.LastUpdated -replace "`n|`r|`t",""
-$newDirectoryObjectString = "$($newDirectoryObject.Name)" + "`t" + "$($newDirectoryObject.LastUpdated)"
+$newDirectoryObject.KeyFoldersUpdated = $newDirectoryObject.KeyFoldersUpdated -replace "`n|`r|`t",""
+$newDirectoryObjectString = "$($newDirectoryObject.Name)" + "`t" + "$($newDirectoryObject.LastUpdated)" + "`t" + "$($newDirectoryObject.KeyFoldersUpdated)"
 $directoryListClean += $newDirectoryObjectString
 }
 $directoryListClean += "EndOfScriptGetDirectoryList"
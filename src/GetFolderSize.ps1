@@ -1,5 +1,17 @@
 param([string]$directory)
-$fileSize = ls -force -r -ea SilentlyContinue $directory|measure -s Length|select-object -expand Sum
+$fileSize = 0
+$lastReport = [Environment]::TickCount
+# Each top level item is summed by measure, so progress costs one check per item rather than a script block per file.
+foreach ($item in @(ls -force -ea SilentlyContinue $directory)) {
+    $itemSize = ls -force -r -ea SilentlyContinue $item.FullName|measure -s Length|select-object -expand Sum
+    if ($itemSize) {
+        $fileSize += $itemSize
+    }
+    if ([Environment]::TickCount - $lastReport -ge 1000) {
+        "PartialSize:$fileSize"
+        $lastReport = [Environment]::TickCount
+    }
+}
 $endOfScript = "EndOfScriptGetFolderSize"
 $fileSize
-$endOfScript
\ No newline at end of file
+$endOfScript
@@ -0,0 +1,96 @@
+
+/**
+ * The user, stage and attempt the current thread is working on.
+ * <p>
+ * Every message logged by a thread is tagged with the thread's current
+ * context so the structured log can be grouped by user and stage without
+ * parsing the message text.<br>
+ * Threads in the thread pool are reused, so tasks that set a context must
+ * clear it when they finish.
+ */
+public class LogContext {
+
+    /**
+     * The context of each thread.
+     */
+    private static final ThreadLocal<LogContext> CURRENT = new ThreadLocal<LogContext>() {
+        @Override
+        protected LogContext initialValue() {
+            return new LogContext();
+        }
+    };
+
+    /**
+     * Class attributes.
+     */
+    private String user;
+    private String stage;
+    private int attempt;
+
+    /**
+     * Constructor for LogContext class.
+     */
+    private LogContext() {
+        user = "";
+        stage = "";
+        attempt = 0;
+    }
+
+    /**
+     * Sets the user and stage the current thread is working on and resets the
+     * attempt.
+     *
+     * @param user the name of the user, or an empty String if the stage is not
+     * for a single user
+     * @param stage the name of the stage, for example state_check
+     */
+    public static void set(String user, String stage) {
+        LogContext context = CURRENT.get();
+        context.user = user == null ? "" : user;
+        context.stage = stage == null ? "" : stage;
+        context.attempt = 0;
+    }
+
+    /**
+     * Sets the attempt the current thread is on.
+     *
+     * @param attempt the attempt, starting at 1
+     */
+    public static void setAttempt(int attempt) {
+        CURRENT.get().attempt = attempt;
+    }
+
+    /**
+     * Clears the context of the current thread.
+     */
+    public static void clear() {
+        set("", "");
+    }
+
+    /**
+     * Gets the user the current thread is working on.
+     *
+     * @return the name of the user, or an empty String if none is set
+     */
+    public static String getUser() {
+        return CURRENT.get().user;
+    }
+
+    /**
+     * Gets the stage the current thread is working on.
+     *
+     * @return the name of the stage, or an empty String if none is set
+     */
+    public static String getStage() {
+        return CURRENT.get().stage;
+    }
+
+    /**
+     * Gets the attempt the current thread is on.
+     *
+     * @return the attempt, or 0 if none is set
+     */
+    public static int getAttempt() {
+        return CURRENT.get().attempt;
+    }
+}
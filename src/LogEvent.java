@@ -0,0 +1,320 @@
+
+/**
+ * A single logged message along with the context it was logged in.
+ * <p>
+ * Created by the thread logging the message and handled later by the logging
+ * thread, which formats it as a line of text for the log and as a JSON line
+ * for the structured log.<br>
+ * A message can be given as a template with {} in place of each argument. The
+ * message is only built from the template when it is first read, which
+ * happens on the logging thread, so the thread logging the message does not
+ * spend time building Strings.
+ */
+public class LogEvent {
+
+    /**
+     * Class attributes.
+     */
+    private String message;
+    private Object[] args;
+    private final ProfileDeleter.LOG_TYPE severity;
+    private final long timestamp;
+    private final boolean include_timestamp;
+    private final boolean display_to_gui;
+    private final String host;
+    private final String session_id;
+    private final String user;
+    private final String stage;
+    private final int attempt;
+    private final long duration;
+    private final String outcome;
+    private final String output;
+
+    /**
+     * Constructor for LogEvent class.
+     *
+     * @param message the message to add to the log
+     * @param severity the severity LOG_TYPE of the message
+     * @param timestamp the time the message was logged in milliseconds since
+     * the epoch
+     * @param include_timestamp whether to include a timestamp in the text log
+     * @param display_to_gui whether the message should be displayed in any GUI
+     * showing the log
+     * @param host the computer being worked on, or an empty String
+     * @param session_id the session ID of the deletion, or an empty String
+     * @param user the user being worked on, or an empty String
+     * @param stage the stage being worked on, or an empty String
+     * @param attempt the attempt at the stage, or 0 if not known
+     * @param duration how long the stage took in milliseconds, or -1 if not
+     * known
+     * @param outcome the outcome of the stage, or an empty String
+     * @param output the end of any process output or error message, or an
+     * empty String
+     */
+    public LogEvent(String message, ProfileDeleter.LOG_TYPE severity, long timestamp, boolean include_timestamp, boolean display_to_gui, String host, String session_id, String user, String stage, int attempt, long duration, String outcome, String output) {
+        this(message, null, severity, timestamp, include_timestamp, display_to_gui, host, session_id, user, stage, attempt, duration, outcome, output);
+    }
+
+    /**
+     * Constructor for LogEvent class using a message template.
+     *
+     * @param template the message to add to the log with {} in place of each
+     * argument
+     * @param args the arguments to put in the template, or null if the
+     * template has no arguments
+     * @param severity the severity LOG_TYPE of the message
+     * @param timestamp the time the message was logged in milliseconds since
+     * the epoch
+     * @param include_timestamp whether to include a timestamp in the text log
+     * @param display_to_gui whether the message should be displayed in any GUI
+     * showing the log
+     * @param host the computer being worked on, or an empty String
+     * @param session_id the session ID of the deletion, or an empty String
+     * @param user the user being worked on, or an empty String
+     * @param stage the stage being worked on, or an empty String
+     * @param attempt the attempt at the stage, or 0 if not known
+     * @param duration how long the stage took in milliseconds, or -1 if not
+     * known
+     * @param outcome the outcome of the stage, or an empty String
+     * @param output the end of any process output or error message, or an
+     * empty String
+     */
+    public LogEvent(String template, Object[] args, ProfileDeleter.LOG_TYPE severity, long timestamp, boolean include_timestamp, boolean display_to_gui, String host, String session_id, String user, String stage, int attempt, long duration, String outcome, String output) {
+        this.message = template;
+        this.args = args;
+        this.severity = severity;
+        this.timestamp = timestamp;
+        this.include_timestamp = include_timestamp;
+        this.display_to_gui = display_to_gui;
+        this.host = host == null ? "" : host;
+        this.session_id = session_id == null ? "" : session_id;
+        this.user = user == null ? "" : user;
+        this.stage = stage == null ? "" : stage;
+        this.attempt = attempt;
+        this.duration = duration;
+        this.outcome = outcome == null ? "" : outcome;
+        this.output = output == null ? "" : output;
+    }
+
+    /**
+     * Gets the message attribute, building it from the template the first
+     * time it is read.
+     * <p>
+     * Not thread safe. Only the logging thread reads the message.
+     *
+     * @return the message added to the log
+     */
+    public String getMessage() {
+        if (args != null) {
+            message = formatTemplate(message, args);
+            args = null;
+        }
+        return message;
+    }
+
+    /**
+     * Builds a message from a template by replacing each {} with the next
+     * argument.
+     * <p>
+     * Any {} left over once the arguments run out are kept as they are, and
+     * any arguments left over once the {} run out are ignored.
+     *
+     * @param template the message with {} in place of each argument
+     * @param args the arguments to put in the template
+     * @return the message
+     */
+    public static String formatTemplate(String template, Object[] args) {
+        StringBuilder message = new StringBuilder(template.length() + 16 * args.length);
+        int arg = 0;
+        int start = 0;
+        int placeholder = template.indexOf("{}");
+        while (placeholder >= 0 && arg < args.length) {
+            message.append(template, start, placeholder).append(args[arg]);
+            arg++;
+            start = placeholder + 2;
+            placeholder = template.indexOf("{}", start);
+        }
+        return message.append(template, start, template.length()).toString();
+    }
+
+    /**
+     * Gets the severity attribute.
+     *
+     * @return the severity LOG_TYPE of the message
+     */
+    public ProfileDeleter.LOG_TYPE getSeverity() {
+        return severity;
+    }
+
+    /**
+     * Gets the timestamp attribute.
+     *
+     * @return the time the message was logged in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Gets the include timestamp attribute.
+     *
+     * @return whether to include a timestamp in the text log
+     */
+    public boolean getIncludeTimestamp() {
+        return include_timestamp;
+    }
+
+    /**
+     * Gets the display to GUI attribute.
+     *
+     * @return whether the message should be displayed in any GUI showing the
+     * log
+     */
+    public boolean getDisplayToGui() {
+        return display_to_gui;
+    }
+
+    /**
+     * Gets the host attribute.
+     *
+     * @return the computer being worked on, or an empty String
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Gets the session ID attribute.
+     *
+     * @return the session ID of the deletion, or an empty String
+     */
+    public String getSessionId() {
+        return session_id;
+    }
+
+    /**
+     * Gets the user attribute.
+     *
+     * @return the user being worked on, or an empty String
+     */
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * Gets the stage attribute.
+     *
+     * @return the stage being worked on, or an empty String
+     */
+    public String getStage() {
+        return stage;
+    }
+
+    /**
+     * Gets the attempt attribute.
+     *
+     * @return the attempt at the stage, or 0 if not known
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * Gets the duration attribute.
+     *
+     * @return how long the stage took in milliseconds, or -1 if not known
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Gets the outcome attribute.
+     *
+     * @return the outcome of the stage, or an empty String
+     */
+    public String getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Gets the output attribute.
+     *
+     * @return the end of any process output or error message, or an empty
+     * String
+     */
+    public String getOutput() {
+        return output;
+    }
+
+    /**
+     * Appends the event to a StringBuilder as a single line of JSON.
+     * <p>
+     * Empty Strings, an attempt of 0 and a duration of -1 are left out.
+     *
+     * @param json the StringBuilder to append to
+     * @return the StringBuilder
+     */
+    public StringBuilder appendJson(StringBuilder json) {
+        json.append("{\"time\":").append(timestamp);
+        json.append(",\"level\":\"").append(severity == null ? "NONE" : severity.name()).append('"');
+        appendJsonField(json, "host", host);
+        appendJsonField(json, "session_id", session_id);
+        appendJsonField(json, "user", user);
+        appendJsonField(json, "stage", stage);
+        if (attempt > 0) {
+            json.append(",\"attempt\":").append(attempt);
+        }
+        if (duration >= 0) {
+            json.append(",\"duration_ms\":").append(duration);
+        }
+        appendJsonField(json, "outcome", outcome);
+        appendJsonField(json, "message", getMessage());
+        appendJsonField(json, "output", output);
+        return json.append('}');
+    }
+
+    /**
+     * Appends a String field to a JSON object unless the value is empty.
+     *
+     * @param json the StringBuilder to append to
+     * @param name the name of the field
+     * @param value the value of the field
+     */
+    private static void appendJsonField(StringBuilder json, String name, String value) {
+        if (value.isEmpty()) {
+            return;
+        }
+        json.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append("\\u00");
+                        json.append(Character.forDigit(c >> 4, 16));
+                        json.append(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        json.append(c);
+                    }
+                    break;
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,78 @@
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed size buffer holding the most recent log lines.
+ * <p>
+ * Every line added is given an index counting from 0 for the first line ever
+ * added. Once the buffer is full the oldest line is discarded for each new
+ * line, so memory use stays bounded no matter how long the program runs. The
+ * full log is kept in the log files.
+ */
+public class LogTail {
+
+    /**
+     * Class attributes.
+     */
+    private final String[] lines;
+    private long count;
+
+    /**
+     * Constructor for LogTail class.
+     *
+     * @param capacity the number of lines to keep
+     */
+    public LogTail(int capacity) {
+        lines = new String[Math.max(capacity, 1)];
+        count = 0;
+    }
+
+    /**
+     * Adds a line, discarding the oldest line if the buffer is full.
+     *
+     * @param line the line to add
+     * @return the index of the line
+     */
+    public synchronized long add(String line) {
+        lines[(int) (count % lines.length)] = line;
+        return count++;
+    }
+
+    /**
+     * Gets a line by its index.
+     *
+     * @param index the index of the line returned by add
+     * @return the line, or null if it has been discarded or not yet added
+     */
+    public synchronized String get(long index) {
+        if (index < 0 || index >= count || index < count - lines.length) {
+            return null;
+        }
+        return lines[(int) (index % lines.length)];
+    }
+
+    /**
+     * Gets the number of lines added since the buffer was created, including
+     * lines that have been discarded.
+     *
+     * @return the number of lines added
+     */
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * Gets a copy of the lines in the buffer, oldest first.
+     *
+     * @return the lines in the buffer
+     */
+    public synchronized List<String> snapshot() {
+        long first = Math.max(0, count - lines.length);
+        List<String> snapshot = new ArrayList<>((int) (count - first));
+        for (long i = first; i < count; i++) {
+            snapshot.add(lines[(int) (i % lines.length)]);
+        }
+        return snapshot;
+    }
+}
@@ -7,18 +7,31 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.text.ParseException;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
-import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 /**
@@ -63,11 +76,19 @@ public class ProfileDeleter {
     private String local_computer;
     private String users_directory;
     private String local_data_directory;
-    private volatile List<UserData> user_list;
-    private volatile List<String> users_deleted;
-    private List<String> cannot_delete_list;
-    private List<String> should_not_delete_list;
-    private volatile List<String> log_list;
+    private final UserRegistry user_registry;
+    private volatile List<DeletionResult> deletion_results;
+    private final ConcurrentLinkedQueue<DeletionResult> completed_deletion_results;
+    private SelectionRules cannot_delete_rules;
+    private SelectionRules should_not_delete_rules;
+    private SelectionRules auto_select_rules;
+    private final LogTail log_tail;
+    private volatile RollingLogWriter rolling_log;
+    private volatile RollingLogWriter json_log;
+    private final StringBuilder json_line;
+    private volatile String log_file_directory;
+    private volatile String log_file_prefix;
+    private boolean log_file_failed;
     private String session_id;
     private String registry_backup_date_suffix;
     private String logs_location;
@@ -75,8 +96,13 @@ public class ProfileDeleter {
     private String reports_location;
     private String backups_location;
     private String src_location;
+    private String cache_location;
     private String unc_root;
+    private String registry_backup_mode;
     private AtomicInteger number_of_users_deleted;
+    private final AtomicLong total_size;
+    private final AtomicLong selected_size;
+    private final AtomicInteger selected_count;
     private int state_check_attempts;
     private int registry_check_attempts;
     private int folder_deletion_attempts;
@@ -84,7 +110,11 @@ public class ProfileDeleter {
     private int registry_guid_deletion_attempts;
     private int number_of_pooled_threads;
     private int intended_number_of_pooled_threads;
-    private int registry_backup_wait;
+    private int total_pooled_threads;
+    private int registry_backup_poll_interval;
+    private int registry_backup_timeout;
+    private long log_file_max_size;
+    private int log_file_max_minutes;
     private boolean size_check;
     private boolean state_check;
     private boolean registry_check;
@@ -95,8 +125,58 @@ public class ProfileDeleter {
     private boolean delete_all_users;
     private boolean run_registry_backup;
     private boolean backup_folder_created;
-    private ActionListener log_updated;
+    private boolean incremental_size_check;
+    private boolean backup_store_enabled;
+    private boolean file_transfer_verify;
+    private boolean two_phase_delete;
+    private int purge_concurrency;
+    private volatile boolean json_log_enabled;
+    private volatile LOG_TYPE log_level;
+    private volatile Map<String, LOG_TYPE> stage_log_levels;
+    private int size_check_walks_skipped;
+    private long size_check_time_saved;
+    private Map<String, Long> size_check_durations;
+    private volatile ActionListener log_updated;
+    private volatile UserDataListener user_listener;
+    private final AsyncLogger logger;
     private ExecutorService thread_pool;
+    private boolean shared_thread_pool;
+    private volatile boolean cancel_requested;
+    private final Set<Future<Object>> running_tasks;
+    private final Set<Process> running_processes;
+    private volatile Semaphore pooled_task_permits;
+
+    /**
+     * Number of logged messages that can be waiting to be written to the log
+     * list before threads logging a message have to wait.
+     */
+    private static final int LOG_BUFFER_CAPACITY = 8192;
+
+    /**
+     * Number of the most recent logged messages kept in memory. Every message
+     * is written to the log files in the 'logs=' folder.
+     */
+    private static final int LOG_TAIL_CAPACITY = 10000;
+
+    /**
+     * Number of characters of process output or error message kept with a
+     * stage outcome in the structured log.
+     */
+    private static final int OUTPUT_TAIL_LENGTH = 1000;
+
+    /**
+     * Number of ProfileDeleter sessions created so far. Each session after the
+     * first adds its number to its log file names so sessions started in the
+     * same second do not write to the same log files.
+     */
+    private static final AtomicInteger SESSIONS_CREATED = new AtomicInteger(0);
+
+    /**
+     * Charset of the OEM code page that console programs such as REG and
+     * powershell write their output in when it is read by this program. Found
+     * the first time it is needed.
+     */
+    private static Charset console_charset = null;
 
     /**
      * Severity level for logged messages.
@@ -146,11 +226,81 @@ public class ProfileDeleter {
         local_computer = "";
         users_directory = "";
         local_data_directory = "";
-        user_list = Collections.synchronizedList(new ArrayList<UserData>());
-        users_deleted = Collections.synchronizedList(new ArrayList<String>());
-        log_list = Collections.synchronizedList(new ArrayList<String>());
-        cannot_delete_list = new ArrayList<>();
-        should_not_delete_list = new ArrayList<>();
+        total_size = new AtomicLong(0);
+        selected_size = new AtomicLong(0);
+        selected_count = new AtomicInteger(0);
+        user_registry = new UserRegistry(new UserDataListener() {
+            @Override
+            public void sizeChanged(UserData user, boolean delete, long old_size, long new_size) {
+                long size_change = Math.max(new_size, 0) - Math.max(old_size, 0);
+                if (size_change != 0) {
+                    total_size.addAndGet(size_change);
+                    if (delete) {
+                        selected_size.addAndGet(size_change);
+                    }
+                }
+            }
+
+            @Override
+            public void deleteChanged(UserData user, long size, boolean old_delete, boolean new_delete) {
+                if (new_delete) {
+                    selected_count.incrementAndGet();
+                    selected_size.addAndGet(Math.max(size, 0));
+                } else {
+                    selected_count.decrementAndGet();
+                    selected_size.addAndGet(-Math.max(size, 0));
+                }
+            }
+
+            @Override
+            public void userChanged(UserData user) {
+                UserDataListener current_user_listener = user_listener;
+                if (current_user_listener != null) {
+                    current_user_listener.userChanged(user);
+                }
+            }
+        });
+        deletion_results = Collections.emptyList();
+        completed_deletion_results = new ConcurrentLinkedQueue<>();
+        log_tail = new LogTail(LOG_TAIL_CAPACITY);
+        rolling_log = null;
+        json_log = null;
+        json_line = new StringBuilder(512);
+        log_file_directory = null;
+        log_file_prefix = "";
+        log_file_failed = false;
+        this.log_updated = log_updated;
+        user_listener = null;
+        logger = new AsyncLogger(LOG_BUFFER_CAPACITY, new AsyncLogger.LogListener() {
+            @Override
+            public void logWritten(LogEvent event, String log_message) {
+                long index = log_tail.add(log_message);
+                writeLogFile(event, log_message);
+                ActionListener current_log_updated = ProfileDeleter.this.log_updated;
+                if (current_log_updated != null && event.getDisplayToGui()) {
+                    current_log_updated.actionPerformed(new java.awt.event.ActionEvent(ProfileDeleter.this, 0, "LogWritten" + Long.toString(index)));
+                }
+            }
+
+            @Override
+            public void batchComplete() {
+                if (!log_file_failed) {
+                    try {
+                        if (rolling_log != null) {
+                            rolling_log.flush();
+                        }
+                        if (json_log != null) {
+                            json_log.flush();
+                        }
+                    } catch (IOException e) {
+                        logFileFailed(e);
+                    }
+                }
+            }
+        });
+        cannot_delete_rules = new SelectionRules();
+        should_not_delete_rules = new SelectionRules();
+        auto_select_rules = new SelectionRules();
         session_id = "";
         registry_backup_date_suffix = "";
         logs_location = "";
@@ -158,7 +308,9 @@ public class ProfileDeleter {
         reports_location = "";
         backups_location = "";
         src_location = "";
+        cache_location = "";
         unc_root = "";
+        registry_backup_mode = "targeted";
         number_of_users_deleted = new AtomicInteger(0);
         state_check_attempts = 0;
         registry_check_attempts = 0;
@@ -167,7 +319,11 @@ public class ProfileDeleter {
         registry_guid_deletion_attempts = 0;
         number_of_pooled_threads = 0;
         intended_number_of_pooled_threads = 0;
-        registry_backup_wait = 0;
+        total_pooled_threads = 20;
+        registry_backup_poll_interval = 100;
+        registry_backup_timeout = 10000;
+        log_file_max_size = 10485760;
+        log_file_max_minutes = 1440;
         size_check = false;
         state_check = false;
         registry_check = false;
@@ -178,14 +334,36 @@ public class ProfileDeleter {
         delete_all_users = false;
         run_registry_backup = false;
         backup_folder_created = false;
-        this.log_updated = log_updated;
+        incremental_size_check = true;
+        backup_store_enabled = true;
+        file_transfer_verify = true;
+        two_phase_delete = true;
+        purge_concurrency = 2;
+        json_log_enabled = true;
+        log_level = LOG_TYPE.INFO;
+        stage_log_levels = Collections.emptyMap();
+        size_check_walks_skipped = 0;
+        size_check_time_saved = 0;
+        size_check_durations = new ConcurrentHashMap<>();
         thread_pool = null;
+        shared_thread_pool = false;
+        cancel_requested = false;
+        running_tasks = Collections.newSetFromMap(new ConcurrentHashMap<Future<Object>, Boolean>());
+        running_processes = Collections.newSetFromMap(new ConcurrentHashMap<Process, Boolean>());
+        pooled_task_permits = null;
         try {
             loadConfigFile();
         } catch (UnrecoverableException e) {
             String message = e.getMessage() + ". Cannot recover from this error";
             throw new UnrecoverableException(message);
         }
+        log_file_prefix = "Profile_Deleter_Log_" + generateDateString();
+        int session_number = SESSIONS_CREATED.incrementAndGet();
+        if (session_number > 1) {
+            log_file_prefix += "_" + session_number;
+        }
+        log_file_directory = logs_location;
+        logMessage("Writing log files to folder " + logs_location, LOG_TYPE.INFO, true, false);
     }
 
     /**
@@ -198,7 +376,11 @@ public class ProfileDeleter {
         this.users_directory = "\\\\" + remote_computer + "\\" + unc_root + "\\users\\";
         this.backup_folder_created = false;
         generateSessionID();
-        logMessage("Remote computer set to " + remote_computer, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Remote computer set to {}", remote_computer);
+        List<String> pending_purges = getPurgeQueue().getPendingFolders(remote_computer);
+        if (!pending_purges.isEmpty()) {
+            logMessage(LOG_TYPE.WARNING, "{} renamed folders from earlier deletions on this computer are still waiting to be purged: {}", pending_purges.size(), pending_purges);
+        }
     }
 
     /**
@@ -209,7 +391,7 @@ public class ProfileDeleter {
      */
     public void setUsersDirectory(String users_directory) {
         this.users_directory = users_directory;
-        logMessage("Users directory set to " + users_directory, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Users directory set to {}", users_directory);
     }
 
     /**
@@ -220,7 +402,7 @@ public class ProfileDeleter {
      */
     public void setLocalDataDirectory(String local_data_directory) {
         this.local_data_directory = local_data_directory;
-        logMessage("Local data directory set to " + local_data_directory, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Local data directory set to {}", local_data_directory);
     }
 
     /**
@@ -232,7 +414,7 @@ public class ProfileDeleter {
      */
     public void setLogsLocation(String logs_location) {
         this.logs_location = logs_location;
-        logMessage("Logs location set to " + logs_location, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Logs location set to {}", logs_location);
     }
 
     /**
@@ -244,7 +426,7 @@ public class ProfileDeleter {
      */
     public void setPstoolsLocation(String pstools_location) {
         this.pstools_location = pstools_location;
-        logMessage("Pstools location set to " + pstools_location, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Pstools location set to {}", pstools_location);
     }
 
     /**
@@ -256,7 +438,7 @@ public class ProfileDeleter {
      */
     public void setReportsLocation(String reports_location) {
         this.reports_location = reports_location;
-        logMessage("Reports location set to " + reports_location, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Reports location set to {}", reports_location);
     }
 
     /**
@@ -268,7 +450,7 @@ public class ProfileDeleter {
      */
     public void setBackupsLocation(String backups_location) {
         this.backups_location = backups_location;
-        logMessage("Backups location set to " + backups_location, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Backups location set to {}", backups_location);
     }
 
     /**
@@ -280,7 +462,20 @@ public class ProfileDeleter {
      */
     public void setSrcLocation(String src_location) {
         this.src_location = src_location;
-        logMessage("Src location set to " + src_location, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Src location set to {}", src_location);
+    }
+
+    /**
+     * Sets the cache location attribute.
+     * <p>
+     * Where cached data from previous runs, such as folder sizes, should be
+     * stored.
+     *
+     * @param cache_location where cached data should be stored.
+     */
+    public void setCacheLocation(String cache_location) {
+        this.cache_location = cache_location;
+        logMessage(LOG_TYPE.INFO, "Cache location set to {}", cache_location);
     }
 
     /**
@@ -294,7 +489,7 @@ public class ProfileDeleter {
      */
     public void setStateCheckAttempts(int state_check_attempts) {
         this.state_check_attempts = state_check_attempts;
-        logMessage("State check attempts set to " + state_check_attempts, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "State check attempts set to {}", state_check_attempts);
     }
 
     /**
@@ -308,7 +503,7 @@ public class ProfileDeleter {
      */
     public void setRegistryCheckAttempts(int registry_check_attempts) {
         this.registry_check_attempts = registry_check_attempts;
-        logMessage("Registry check attempts set to " + registry_check_attempts, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Registry check attempts set to {}", registry_check_attempts);
     }
 
     /**
@@ -322,7 +517,7 @@ public class ProfileDeleter {
      */
     public void setFolderDeletionAttempts(int folder_deletion_attempts) {
         this.folder_deletion_attempts = folder_deletion_attempts;
-        logMessage("Folder deletion attempts set to " + folder_deletion_attempts, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Folder deletion attempts set to {}", folder_deletion_attempts);
     }
 
     /**
@@ -336,7 +531,7 @@ public class ProfileDeleter {
      */
     public void setRegistrySidDeletionAttempts(int registry_sid_deletion_attempts) {
         this.registry_sid_deletion_attempts = registry_sid_deletion_attempts;
-        logMessage("Registry SID deletion attempts set to " + registry_sid_deletion_attempts, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Registry SID deletion attempts set to {}", registry_sid_deletion_attempts);
     }
 
     /**
@@ -350,7 +545,7 @@ public class ProfileDeleter {
      */
     public void setRegistryGuidDeletionAttempts(int registry_guid_deletion_attempts) {
         this.registry_guid_deletion_attempts = registry_guid_deletion_attempts;
-        logMessage("Registry GUID deletion attempts set to " + registry_guid_deletion_attempts, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Registry GUID deletion attempts set to {}", registry_guid_deletion_attempts);
     }
 
     /**
@@ -362,14 +557,18 @@ public class ProfileDeleter {
      * various lengthy processes
      */
     public void setNumberOfPooledThreads(int number_of_pooled_threads) {
-        logMessage("Attempting to set number of pooled threads to " + number_of_pooled_threads, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Attempting to set number of pooled threads to {}", number_of_pooled_threads);
         intended_number_of_pooled_threads = number_of_pooled_threads;
+        if (shared_thread_pool) {
+            logMessage(LOG_TYPE.INFO, "Using thread pool of {} threads shared with other computers, will not reinitialise", this.number_of_pooled_threads);
+            return;
+        }
         int number_of_pooled_threads_to_initialise = 0;
         boolean initialise_thread_pool = true;
         if (this.number_of_pooled_threads < 1) {
             logMessage("Thread pool has not been previously initialised", LOG_TYPE.INFO, true);
-            if (user_list != null && user_list.size() > 0 && number_of_pooled_threads > user_list.size()) {
-                number_of_pooled_threads_to_initialise = user_list.size();
+            if (!user_registry.isEmpty() && number_of_pooled_threads > user_registry.size()) {
+                number_of_pooled_threads_to_initialise = user_registry.size();
                 logMessage("Number to set pooled threads to is greater than the size of the user list, using user list size instead", LOG_TYPE.INFO, true);
             } else {
                 number_of_pooled_threads_to_initialise = number_of_pooled_threads;
@@ -377,13 +576,13 @@ public class ProfileDeleter {
         } else {
             if (number_of_pooled_threads <= this.number_of_pooled_threads) {
                 initialise_thread_pool = false;
-                logMessage("Thread pool has already been initialised with a higher number of threads " + this.number_of_pooled_threads + ", will not reinitialise", LOG_TYPE.INFO, true);
+                logMessage(LOG_TYPE.INFO, "Thread pool has already been initialised with a higher number of threads {}, will not reinitialise", this.number_of_pooled_threads);
             } else {
                 thread_pool.shutdown();
                 while (!thread_pool.isShutdown()) {
                 }
-                if (user_list != null && user_list.size() > 0 && number_of_pooled_threads > user_list.size() && user_list.size() > this.number_of_pooled_threads) {
-                    number_of_pooled_threads_to_initialise = user_list.size();
+                if (!user_registry.isEmpty() && number_of_pooled_threads > user_registry.size() && user_registry.size() > this.number_of_pooled_threads) {
+                    number_of_pooled_threads_to_initialise = user_registry.size();
                     logMessage("Number to set pooled threads to is greater than the size of the user list, using user list size instead", LOG_TYPE.INFO, true);
                 } else {
                     number_of_pooled_threads_to_initialise = number_of_pooled_threads;
@@ -393,8 +592,29 @@ public class ProfileDeleter {
         if (initialise_thread_pool) {
             this.number_of_pooled_threads = number_of_pooled_threads_to_initialise;
             thread_pool = Executors.newFixedThreadPool(number_of_pooled_threads_to_initialise);
-            logMessage("Number of pooled threads successfully set to " + number_of_pooled_threads_to_initialise, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Number of pooled threads successfully set to {}", number_of_pooled_threads_to_initialise);
+        }
+    }
+
+    /**
+     * Sets a thread pool shared with other ProfileDeleter sessions.
+     * <p>
+     * The size check, state check and deletion tasks of every session sharing
+     * the pool run on the same threads, so the number of threads used at once
+     * stays within the pool size however many computers are being worked on.
+     * setNumberOfPooledThreads will not replace a shared thread pool.
+     *
+     * @param thread_pool the thread pool to use for various lengthy processes
+     * @param number_of_pooled_threads the number of threads in the thread pool
+     */
+    public void setSharedThreadPool(ExecutorService thread_pool, int number_of_pooled_threads) {
+        if (this.thread_pool != null && !shared_thread_pool) {
+            this.thread_pool.shutdown();
         }
+        this.thread_pool = thread_pool;
+        this.number_of_pooled_threads = number_of_pooled_threads;
+        shared_thread_pool = true;
+        logMessage(LOG_TYPE.INFO, "Number of pooled threads set to shared thread pool of {}", number_of_pooled_threads);
     }
 
     /**
@@ -410,7 +630,7 @@ public class ProfileDeleter {
      */
     public void setIntendedNumberOfPooledThreads(int intended_number_of_pooled_threads) {
         this.intended_number_of_pooled_threads = intended_number_of_pooled_threads;
-        logMessage("Intended number of pooled threads set to " + intended_number_of_pooled_threads, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Intended number of pooled threads set to {}", intended_number_of_pooled_threads);
     }
 
     /**
@@ -422,7 +642,7 @@ public class ProfileDeleter {
      */
     public void setSizeCheck(boolean size_check) {
         this.size_check = size_check;
-        logMessage("Size check set to " + size_check, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Size check set to {}", size_check);
     }
 
     /**
@@ -434,7 +654,7 @@ public class ProfileDeleter {
      */
     public void setStateCheck(boolean state_check) {
         this.state_check = state_check;
-        logMessage("State check set to " + state_check, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "State check set to {}", state_check);
     }
 
     /**
@@ -446,7 +666,20 @@ public class ProfileDeleter {
      */
     public void setRegistryCheck(boolean registry_check) {
         this.registry_check = registry_check;
-        logMessage("Registry check set to " + registry_check, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Registry check set to {}", registry_check);
+    }
+
+    /**
+     * Sets the incremental size check attribute.
+     * <p>
+     * Determines whether a size check reuses cached sizes for user folders that
+     * have not been updated since the last size check.
+     *
+     * @param incremental_size_check whether to reuse cached sizes or not
+     */
+    public void setIncrementalSizeCheck(boolean incremental_size_check) {
+        this.incremental_size_check = incremental_size_check;
+        logMessage(LOG_TYPE.INFO, "Incremental size check set to {}", incremental_size_check);
     }
 
     /**
@@ -458,7 +691,7 @@ public class ProfileDeleter {
      */
     public void setSizeCheckComplete(boolean size_check_complete) {
         this.size_check_complete = size_check_complete;
-        logMessage("Size check complete set to " + size_check_complete, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Size check complete set to {}", size_check_complete);
     }
 
     /**
@@ -471,7 +704,7 @@ public class ProfileDeleter {
      */
     public void setStateCheckComplete(boolean state_check_complete) {
         this.state_check_complete = state_check_complete;
-        logMessage("State check complete set to " + state_check_complete, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "State check complete set to {}", state_check_complete);
     }
 
     /**
@@ -484,7 +717,7 @@ public class ProfileDeleter {
      */
     public void setRegistryCheckComplete(boolean registry_check_complete) {
         this.registry_check_complete = registry_check_complete;
-        logMessage("Registry check complete set to " + registry_check_complete, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Registry check complete set to {}", registry_check_complete);
     }
 
     /**
@@ -496,59 +729,64 @@ public class ProfileDeleter {
      */
     public void setDeleteAllUsers(boolean delete_all_users) {
         this.delete_all_users = delete_all_users;
-        if (user_list != null && !user_list.isEmpty() && state_check_complete) {
-            for (UserData user : user_list) {
-                if (!cannot_delete_list.contains(user.getName().toLowerCase()) && !should_not_delete_list.contains(user.getName().toLowerCase()) && user.getState().compareTo("Editable") == 0) {
-                    user.setDelete(this.delete_all_users);
+        if (!user_registry.isEmpty() && state_check_complete) {
+            for (UserData user : user_registry) {
+                if (!user.getCannotDelete() && !user.getShouldNotDelete() && user.getState() == UserData.STATE.EDITABLE) {
+                    user.setDelete(this.delete_all_users, true);
                 }
             }
         }
-        logMessage("Delete all users set to " + delete_all_users, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Delete all users set to {}", delete_all_users);
     }
 
     /**
      * Sets the user list attribute.
+     * <p>
+     * Replaces every user in the user registry.
      *
      * @param user_list list of UserData that contain details for the users on
      * the target computer
      */
     public void setUserList(List<UserData> user_list) {
-        this.user_list = Collections.synchronizedList(user_list);
+        user_registry.replaceAll(user_list);
     }
 
     /**
-     * Sets the cannot delete list attribute.
+     * Sets the cannot delete rules attribute.
      * <p>
-     * The users in this list cannot be deleted, regardless of their editable
-     * state.
+     * The users matching these rules cannot be deleted, regardless of their
+     * editable state.
      *
-     * @param cannot_delete_list list of user account names that are not allowed
-     * to be deleted
+     * @param cannot_delete_rules rules matching users that are not allowed to
+     * be deleted
      */
-    public void setCannotDeleteList(List<String> cannot_delete_list) {
-        this.cannot_delete_list = cannot_delete_list;
+    public void setCannotDeleteRules(SelectionRules cannot_delete_rules) {
+        this.cannot_delete_rules = cannot_delete_rules;
     }
 
     /**
-     * Sets the should not delete list attribute.
+     * Sets the should not delete rules attribute.
      * <p>
-     * The users in this list will never be automatically flagged for deletion,
-     * they must be manually flagged.
+     * The users matching these rules will never be automatically flagged for
+     * deletion, they must be manually flagged.
      *
-     * @param should_not_delete_list list of user account names that are
-     * recommended to not delete
+     * @param should_not_delete_rules rules matching users that are recommended
+     * to not delete
      */
-    public void setShouldNotDeleteList(List<String> should_not_delete_list) {
-        this.should_not_delete_list = should_not_delete_list;
+    public void setShouldNotDeleteRules(SelectionRules should_not_delete_rules) {
+        this.should_not_delete_rules = should_not_delete_rules;
     }
 
     /**
-     * Sets the log list attribute.
+     * Sets the auto select rules attribute.
+     * <p>
+     * Editable users matching these rules are automatically flagged for
+     * deletion unless they match the cannot delete or should not delete rules.
      *
-     * @param log_list list of logged events
+     * @param auto_select_rules rules matching users to flag for deletion
      */
-    public void setLogList(List<String> log_list) {
-        this.log_list = Collections.synchronizedList(log_list);
+    public void setAutoSelectRules(SelectionRules auto_select_rules) {
+        this.auto_select_rules = auto_select_rules;
     }
 
     /**
@@ -560,6 +798,42 @@ public class ProfileDeleter {
         this.log_updated = log_updated;
     }
 
+    /**
+     * Sets the user listener attribute.
+     * <p>
+     * The listener's userChanged function is called whenever a user in the
+     * user list changes, after the running totals have been updated. Intended
+     * to allow any GUI classes to update only the users that have changed.
+     *
+     * @param user_listener the UserDataListener to notify when a user changes,
+     * or null to stop notifying
+     */
+    public void setUserListener(UserDataListener user_listener) {
+        this.user_listener = user_listener;
+    }
+
+    /**
+     * Sets the cancel requested attribute.
+     * <p>
+     * Set to false before starting a new check or deletion after a previous
+     * one was cancelled. Use the cancel function to cancel a running check or
+     * deletion.
+     *
+     * @param cancel_requested whether running checks and deletions should stop
+     */
+    public void setCancelRequested(boolean cancel_requested) {
+        this.cancel_requested = cancel_requested;
+    }
+
+    /**
+     * Gets the cancel requested attribute.
+     *
+     * @return whether running checks and deletions have been asked to stop
+     */
+    public boolean getCancelRequested() {
+        return cancel_requested;
+    }
+
     /**
      * Gets the value of the remote computer attribute.
      *
@@ -569,6 +843,16 @@ public class ProfileDeleter {
         return remote_computer;
     }
 
+    /**
+     * Gets the value of the session ID attribute.
+     *
+     * @return the session ID of the deletion, or an empty String if no
+     * deletion has been started
+     */
+    public String getSessionId() {
+        return session_id;
+    }
+
     /**
      * Gets the value of the users directory attribute.
      *
@@ -643,6 +927,17 @@ public class ProfileDeleter {
         return src_location;
     }
 
+    /**
+     * Gets the cache location attribute.
+     * <p>
+     * Where cached data from previous runs should be stored.
+     *
+     * @return where cached data should be stored.
+     */
+    public String getCacheLocation() {
+        return cache_location;
+    }
+
     /**
      * Gets the number of users deleted attribute.
      * <p>
@@ -745,6 +1040,19 @@ public class ProfileDeleter {
         return intended_number_of_pooled_threads;
     }
 
+    /**
+     * Gets the total pooled threads attribute.
+     * <p>
+     * The number of pooled threads shared by every computer open in the GUI at
+     * once.
+     *
+     * @return the number of pooled threads shared by every computer open in
+     * the GUI at once
+     */
+    public int getTotalPooledThreads() {
+        return total_pooled_threads;
+    }
+
     /**
      * Gets the size check attribute.
      *
@@ -772,6 +1080,114 @@ public class ProfileDeleter {
         return registry_check;
     }
 
+    /**
+     * Gets the registry backup mode attribute.
+     * <p>
+     * In full mode the whole ProfileList and ProfileGuid keys are backed up
+     * during the registry check. In targeted mode only the SID and GUID keys
+     * of each user are backed up, just before they are deleted.
+     *
+     * @return the registry backup mode, either full or targeted
+     */
+    public String getRegistryBackupMode() {
+        return registry_backup_mode;
+    }
+
+    /**
+     * Gets the backup store enabled attribute.
+     *
+     * @return whether registry backups are kept in the backup store
+     */
+    public boolean getBackupStoreEnabled() {
+        return backup_store_enabled;
+    }
+
+    /**
+     * Gets the backup store registry backups are kept in.
+     * <p>
+     * The store is kept in the store folder inside the backups location.
+     *
+     * @return the backup store
+     */
+    public BackupStore getBackupStore() {
+        return new BackupStore(backups_location + "\\store");
+    }
+
+    /**
+     * Gets the run registry backup attribute.
+     *
+     * @return whether registry keys are backed up before being deleted
+     */
+    public boolean getRunRegistryBackup() {
+        return run_registry_backup;
+    }
+
+    /**
+     * Gets the incremental size check attribute.
+     *
+     * @return whether a size check reuses cached sizes or not
+     */
+    public boolean getIncrementalSizeCheck() {
+        return incremental_size_check;
+    }
+
+    /**
+     * Gets the two phase delete attribute.
+     *
+     * @return whether a deletion renames each user folder and deletes it in
+     * the background or deletes it straight away
+     */
+    public boolean getTwoPhaseDelete() {
+        return two_phase_delete;
+    }
+
+    /**
+     * Gets the purge concurrency attribute.
+     *
+     * @return the number of renamed folders deleted at once in the background
+     */
+    public int getPurgeConcurrency() {
+        return purge_concurrency;
+    }
+
+    /**
+     * Gets the queue of renamed folders waiting to be deleted in the
+     * background.
+     * <p>
+     * The queue is saved in the cache location and shared with every other
+     * ProfileDeleter session using the same cache location.
+     *
+     * @return the queue of renamed folders waiting to be deleted
+     */
+    public PurgeQueue getPurgeQueue() {
+        return PurgeQueue.getQueue(new File(cache_location + "\\purge_queue.txt"), purge_concurrency);
+    }
+
+    /**
+     * Gets the size check walks skipped attribute.
+     * <p>
+     * The number of user folders in the last size check whose cached size was
+     * reused instead of being calculated again.
+     *
+     * @return the number of folder size calculations skipped
+     */
+    public int getSizeCheckWalksSkipped() {
+        return size_check_walks_skipped;
+    }
+
+    /**
+     * Gets the size check time saved attribute.
+     * <p>
+     * The time (in milliseconds) the skipped folder size calculations took when
+     * they were last run.
+     *
+     * @return the approximate time saved by the last size check in
+     * milliseconds
+     */
+    public long getSizeCheckTimeSaved() {
+        return size_check_time_saved;
+    }
+
     /**
      * Gets the size check complete attribute.
      *
@@ -810,54 +1226,156 @@ public class ProfileDeleter {
 
     /**
      * Gets the user list attribute.
+     * <p>
+     * Returns an immutable snapshot of the user registry that will not change
+     * if users are added or removed later.
      *
      * @return list of UserData that contain details for the users on the target
      * computer
      */
     public List<UserData> getUserList() {
-        return user_list;
+        return user_registry.snapshot();
+    }
+
+    /**
+     * Gets the total size attribute.
+     * <p>
+     * Kept up to date as user sizes change so it can be read without walking
+     * the user list.
+     *
+     * @return the total size in bytes of every user folder whose size is known
+     */
+    public long getTotalSize() {
+        return total_size.get();
+    }
+
+    /**
+     * Gets the selected size attribute.
+     * <p>
+     * Kept up to date as user sizes and delete flags change so it can be read
+     * without walking the user list.
+     *
+     * @return the total size in bytes of every user folder flagged for
+     * deletion whose size is known
+     */
+    public long getSelectedSize() {
+        return selected_size.get();
+    }
+
+    /**
+     * Gets the selected count attribute.
+     * <p>
+     * Kept up to date as user delete flags change so it can be read without
+     * walking the user list.
+     *
+     * @return the number of users flagged for deletion
+     */
+    public int getSelectedCount() {
+        return selected_count.get();
+    }
+
+    /**
+     * Gets the user registry attribute.
+     * <p>
+     * Used to find users by folder name or SID.
+     *
+     * @return the registry of users on the target computer
+     */
+    public UserRegistry getUserRegistry() {
+        return user_registry;
+    }
+
+    /**
+     * Gets the deletion results attribute.
+     *
+     * @return the results of the users deleted by the last run of the
+     * processDeletion function, in the order the users were listed
+     */
+    public List<DeletionResult> getDeletionResults() {
+        return deletion_results;
+    }
+
+    /**
+     * Takes the next result of a user whose deletion has finished.
+     * <p>
+     * Results are queued as each user finishes so they can be displayed while
+     * the processDeletion function is still running. The queue is emptied
+     * when a new deletion starts.
+     *
+     * @return the result of a user whose deletion has finished, or null if no
+     * user has finished since this was last called
+     */
+    public DeletionResult pollCompletedDeletionResult() {
+        return completed_deletion_results.poll();
     }
 
     /**
-     * Gets the users deleted attribute.
+     * Gets the cannot delete rules attribute.
+     * <p>
+     * The users matching these rules cannot be deleted, regardless of their
+     * editable state.
      *
-     * @return the list of users deleted by the processDeletion function
+     * @return rules matching users that are not allowed to be deleted
      */
-    public List<String> getUsersDeleted() {
-        return users_deleted;
+    public SelectionRules getCannotDeleteRules() {
+        return cannot_delete_rules;
     }
 
     /**
-     * Gets the cannot delete list attribute.
+     * Gets the should not delete rules attribute.
      * <p>
-     * The users in this list cannot be deleted, regardless of their editable
-     * state.
+     * The users matching these rules will never be automatically flagged for
+     * deletion, they must be manually flagged.
      *
-     * @return list of user account names that are not allowed to be deleted
+     * @return rules matching users that are recommended to not delete
      */
-    public List<String> getCannotDeleteList() {
-        return cannot_delete_list;
+    public SelectionRules getShouldNotDeleteRules() {
+        return should_not_delete_rules;
     }
 
     /**
-     * Gets the should not delete list attribute.
+     * Gets the auto select rules attribute.
      * <p>
-     * The users in this list will never be automatically flagged for deletion,
-     * they must be manually flagged.
+     * Editable users matching these rules are automatically flagged for
+     * deletion unless they match the cannot delete or should not delete rules.
      *
-     * @return list of user account names that are recommended to not delete
+     * @return rules matching users to flag for deletion
      */
-    public List<String> getShouldNotDeleteList() {
-        return should_not_delete_list;
+    public SelectionRules getAutoSelectRules() {
+        return auto_select_rules;
     }
 
     /**
      * Gets the log list attribute.
+     * <p>
+     * Only the most recent logged messages are kept in memory, the full log is
+     * in the log files.
      *
-     * @return list of logged events
+     * @return a copy of the most recent logged messages, oldest first
      */
     public List<String> getLogList() {
-        return log_list;
+        return log_tail.snapshot();
+    }
+
+    /**
+     * Gets a single logged message.
+     *
+     * @param index the index of the message given in the "LogWritten"
+     * ActionEvent
+     * @return the message, or null if it is no longer kept in memory
+     */
+    public String getLogLine(long index) {
+        return log_tail.get(index);
+    }
+
+    /**
+     * Gets the number of messages logged.
+     *
+     * @return the number of messages logged, including those no longer kept
+     * in memory
+     */
+    public long getLogSize() {
+        return log_tail.size();
     }
 
     /**
@@ -877,26 +1395,182 @@ public class ProfileDeleter {
      */
     public Object[][] convertUserListTo2DObjectArray() {
         logMessage("Converting user list to 2D Object array", LOG_TYPE.INFO, true, false);
+        List<UserData> user_list = user_registry.snapshot();
         Object[][] object_array = new Object[user_list.size()][];
+        int unconverted_dates = 0;
+        String first_unconverted_user = "";
         for (int i = 0; i < user_list.size(); i++) {
-            object_array[i] = user_list.get(i).toObjectArray();/*
-            String last_updated_to_calendar = object_array[i][2].toString().replace(" ","/");
-            last_updated_to_calendar = last_updated_to_calendar.replace(":","/");
-            String[] calendar_fields = last_updated_to_calendar.split("/");
-            Calendar last_updated_as_calendar = Calendar.getInstance();
-            last_updated_as_calendar.set(Integer.parseInt(calendar_fields[2]), Integer.parseInt(calendar_fields[0]), Integer.parseInt(calendar_fields[1]), Integer.parseInt(calendar_fields[3]), Integer.parseInt(calendar_fields[4]), Integer.parseInt(calendar_fields[5]));
-             */
-            try {
-                Date last_updated_to_date = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss").parse(object_array[i][2].toString());
-                object_array[i][2] = last_updated_to_date;
-            } catch (ParseException e) {
-                logMessage("Failed to convert user " + user_list.get(i).getName() + " last updated to date. Last updated value is " + user_list.get(i).getLastUpdated(), LOG_TYPE.WARNING, true, false);
+            object_array[i] = user_list.get(i).toObjectArray();
+            if (object_array[i][2] == null) {
+                if (unconverted_dates == 0) {
+                    first_unconverted_user = user_list.get(i).getName();
+                }
+                unconverted_dates++;
             }
         }
+        if (unconverted_dates > 0) {
+            logMessage("Failed to convert last updated to date for " + unconverted_dates + " users, starting with user " + first_unconverted_user, LOG_TYPE.WARNING, true, false);
+        }
         logMessage("Converted user list to 2D Object array", LOG_TYPE.INFO, true, false);
         return object_array;
     }
 
+    /**
+     * Cancels the running check or deletion.
+     * <p>
+     * Tasks on the thread pool that have not started are never run, running
+     * tasks are interrupted and every external process started by a task is
+     * destroyed. psexec, powershell, REG and the other external programs are
+     * started directly rather than through cmd.exe so destroying the process
+     * stops the program itself, cmd.exe is only used for its built in
+     * commands. Checks stop with an InterruptedException and a deletion
+     * writes a partial deletion report marking the users that were not
+     * started.<br>
+     * Can be called from any thread. Stays in effect until cancel requested is
+     * set back to false.
+     */
+    public void cancel() {
+        cancel_requested = true;
+        logMessage("Cancel requested, stopping running tasks and processes", LOG_TYPE.WARNING, true);
+        // Wakes runPooledTasks if it is waiting for a pooled thread so it stops submitting tasks.
+        Semaphore current_pooled_task_permits = pooled_task_permits;
+        if (current_pooled_task_permits != null) {
+            current_pooled_task_permits.release();
+        }
+        for (Future<Object> task : running_tasks) {
+            task.cancel(true);
+        }
+        for (Process process : running_processes) {
+            process.destroy();
+        }
+        running_processes.clear();
+    }
+
+    /**
+     * Runs tasks on the thread pool and waits for them all to finish.
+     * <p>
+     * Used instead of ExecutorService.invokeAll so the tasks can be cancelled
+     * while they are queued or running. If the tasks are cancelled this waits
+     * for any task that had already started to stop before returning, so
+     * their results are complete.<br>
+     * A task is only submitted once a pooled thread is free for it. When the
+     * thread pool is shared with other sessions no more than the intended
+     * number of pooled threads are used by this session at once.<br>
+     * Nothing is polled, cancel wakes this thread if it is waiting for a
+     * pooled thread and each started task arrives at a Phaser when it
+     * finishes.
+     *
+     * @param tasks the tasks to run
+     * @return whether every task was run, false if they were cancelled
+     * @throws InterruptedException the thread was interrupted while waiting for
+     * the tasks to finish
+     */
+    private boolean runPooledTasks(List<? extends Callable<Object>> tasks) throws InterruptedException {
+        // The calling thread is registered as one party, each submitted task is another until it finishes or is found never to have started.
+        final Phaser started_tasks = new Phaser(1);
+        // Tasks are only submitted once a pooled thread is free for them, which also keeps the number of parties on the Phaser small.
+        final Semaphore session_threads = new Semaphore(Math.max(shared_thread_pool ? Math.min(intended_number_of_pooled_threads, number_of_pooled_threads) : number_of_pooled_threads, 1));
+        List<Future<Object>> futures = new ArrayList<>(tasks.size());
+        List<AtomicBoolean> task_claims = new ArrayList<>(tasks.size());
+        pooled_task_permits = session_threads;
+        try {
+            for (final Callable<Object> task : tasks) {
+                if (cancel_requested) {
+                    break;
+                }
+                session_threads.acquire();
+                if (cancel_requested) {
+                    break;
+                }
+                // Claimed by whichever happens first, the task starting or this thread finding it was cancelled before it started.
+                final AtomicBoolean task_claim = new AtomicBoolean(false);
+                task_claims.add(task_claim);
+                started_tasks.register();
+                Future<Object> future = thread_pool.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        if (!task_claim.compareAndSet(false, true)) {
+                            return null;
+                        }
+                        try {
+                            return cancel_requested ? null : task.call();
+                        } finally {
+                            session_threads.release();
+                            started_tasks.arriveAndDeregister();
+                        }
+                    }
+                });
+                futures.add(future);
+                running_tasks.add(future);
+                if (cancel_requested) {
+                    future.cancel(true);
+                }
+            }
+            for (Future<Object> future : futures) {
+                try {
+                    future.get();
+                } catch (CancellationException | ExecutionException e) {
+                }
+            }
+        } finally {
+            pooled_task_permits = null;
+            running_tasks.removeAll(futures);
+            for (AtomicBoolean task_claim : task_claims) {
+                if (task_claim.compareAndSet(false, true)) {
+                    started_tasks.arriveAndDeregister();
+                }
+            }
+        }
+        // A cancelled task that had already started is only finished once it arrives.
+        started_tasks.awaitAdvanceInterruptibly(started_tasks.arrive());
+        return !cancel_requested;
+    }
+
+    /**
+     * Starts an external process that is destroyed if the running check or
+     * deletion is cancelled.
+     *
+     * @param builder the ProcessBuilder for the process
+     * @return the started process
+     * @throws IOException the process could not be started or the running
+     * check or deletion has been cancelled
+     */
+    private Process startProcess(ProcessBuilder builder) throws IOException {
+        if (cancel_requested) {
+            throw new IOException("Cancelled before process could be started");
+        }
+        Iterator<Process> iterator = running_processes.iterator();
+        while (iterator.hasNext()) {
+            try {
+                iterator.next().exitValue();
+                iterator.remove();
+            } catch (IllegalThreadStateException e) {
+            }
+        }
+        Process process = builder.start();
+        running_processes.add(process);
+        if (cancel_requested) {
+            process.destroy();
+            running_processes.remove(process);
+            throw new IOException("Cancelled before process could be started");
+        }
+        return process;
+    }
+
+    /**
+     * Stops a check if cancel has been requested.
+     *
+     * @param stage the name of the check, used in the error message
+     * @throws InterruptedException cancel has been requested
+     */
+    private void checkCancelled(String stage) throws InterruptedException {
+        if (cancel_requested) {
+            String message = stage + " was cancelled";
+            logMessage(message, LOG_TYPE.WARNING, true);
+            throw new InterruptedException(message);
+        }
+    }
+
     /**
      * Process local Windows account deletion on target computer.
      * <p>
@@ -908,50 +1582,70 @@ public class ProfileDeleter {
      * A size check does not need to be done to process the deletion, this is an
      * optional check as it can take a very long time to complete.
      *
-     * @return deletion deletion report detailing users deleted and any problems
-     * deleting the user folder or registry keys
+     * @return the result of each user deleted detailing any problems deleting
+     * the user folder or registry keys, in the order the users were listed
      * @throws NotInitialisedException user list has not been initialised or a
      * state and/or registry check has not been run
      * @throws InterruptedException the thread pool was interrupted before all
      * tasks could be completed
      */
-    public List<String> processDeletion() throws NotInitialisedException, InterruptedException {
+    public List<DeletionResult> processDeletion() throws NotInitialisedException, InterruptedException {
+        LogContext.set("", "deletion");
         logMessage("Attempting to run deletion on users list", LOG_TYPE.INFO, true);
-        if (user_list != null && !user_list.isEmpty() && state_check_complete && registry_check_complete) {
-            List<UserData> new_folders = new ArrayList<>();
-            users_deleted = Collections.synchronizedList(new ArrayList<String>());
+        if (!user_registry.isEmpty() && state_check_complete && registry_check_complete) {
+            List<UserData> deleted_users = new ArrayList<>();
+            ConcurrentHashMap<String, DeletionResult> deletion_results_by_name = new ConcurrentHashMap<>();
             number_of_users_deleted.set(0);
-            double total_size_deleted = 0.0;
-            users_deleted.add("User" + '\t' + "Successful?" + '\t' + "Folder Deleted?" + '\t' + "SID Deleted?" + '\t' + "GUID Deleted?" + '\t' + "SID" + '\t' + "GUID" + '\t' + "Size");
+            completed_deletion_results.clear();
+            long total_size_deleted = 0;
+            long total_size_queued = 0;
+            if (run_registry_backup && registry_backup_mode.equals("targeted") && !backup_folder_created) {
+                try {
+                    generateLocalBackupFolder();
+                    backup_folder_created = true;
+                } catch (IOException | CannotEditException e) {
+                    logMessage("Unable to create backup folder, registry keys will not be deleted as they cannot be backed up. Error is: " + e.getMessage(), LOG_TYPE.ERROR, true);
+                }
+            }
             logMessage("Pooling user deletions for each flagged user", LOG_TYPE.INFO, true);
             List<delete_user_process> delete_user_process_list = new ArrayList<delete_user_process>();
-            for (UserData user : user_list) {
+            for (UserData user : user_registry) {
                 if (user.getDelete()) {
-                    logMessage("User " + user.getName() + " is flagged for deletion", LOG_TYPE.INFO, true);
-                    users_deleted.add(user.getName());
-                    delete_user_process_list.add(new delete_user_process(user, this, users_deleted, number_of_users_deleted));
-                } else {
-                    new_folders.add(user);
+                    logMessage(LOG_TYPE.INFO, "User {} is flagged for deletion", user.getName());
+                    deleted_users.add(user);
+                    user.setProgress("Waiting for deletion", 0);
+                    delete_user_process_list.add(new delete_user_process(user, this, deletion_results_by_name, completed_deletion_results, number_of_users_deleted));
                 }
             }
             logMessage("All tasks have been scheduled, awaiting task completion", LOG_TYPE.INFO, true);
+            boolean cancelled = false;
             try {
-                thread_pool.invokeAll(delete_user_process_list);
-                logMessage("All tasks completed", LOG_TYPE.INFO, true);
-                if (users_deleted.size() > 1) {
-                    for (int i = 1; i < users_deleted.size(); i++) {
-                        String[] deleted_user = users_deleted.get(i).split("\t");
-                        try {
-                            total_size_deleted += Double.parseDouble(deleted_user[7]);
-                        } catch (NumberFormatException e) {
-                        }
-                    }
-                }
+                cancelled = !runPooledTasks(delete_user_process_list);
+                logMessage(cancelled ? "Deletion was cancelled, users that were not started have not been deleted" : "All tasks completed", cancelled ? LOG_TYPE.WARNING : LOG_TYPE.INFO, true);
             } catch (InterruptedException e) {
                 logMessage("Failed to run pooled delete user tasks, thread pool was interrupted. Error is: " + e.getMessage(), LOG_TYPE.ERROR, true);
                 throw e;
             }
-            user_list = Collections.synchronizedList(new_folders);/*
+            List<DeletionResult> results = new ArrayList<>(deleted_users.size());
+            List<UserData> started_users = new ArrayList<>(deleted_users.size());
+            for (UserData user : deleted_users) {
+                DeletionResult result = deletion_results_by_name.get(user.getName());
+                if (result != null) {
+                    results.add(result);
+                    started_users.add(user);
+                    total_size_deleted += result.getBytesFreed();
+                    total_size_queued += result.getBytesQueued();
+                } else if (cancelled) {
+                    result = new DeletionResult(user);
+                    for (DeletionResult.STEP step : DeletionResult.STEP.values()) {
+                        result.setStepResult(step, false, "Not started, deletion was cancelled", 0);
+                    }
+                    results.add(result);
+                    user.setProgress("Not started, deletion was cancelled", 0);
+                }
+            }
+            deletion_results = Collections.unmodifiableList(results);
+            user_registry.removeAll(started_users);/*
             int number_of_pooled_threads_to_initialise;
             if (intended_number_of_pooled_threads > 0) {
                 number_of_pooled_threads_to_initialise = intended_number_of_pooled_threads;
@@ -960,22 +1654,32 @@ public class ProfileDeleter {
             }
             setNumberOfPooledThreads(number_of_pooled_threads_to_initialise);*/
             logMessage("Completed deletions", LOG_TYPE.INFO, true);
-            if (users_deleted.size() > 1) {
+            if (!results.isEmpty()) {
                 try {
-                    List<String> formatted_report = new ArrayList<String>();
-                    formatted_report.add("Deletion Report");
-                    formatted_report.add("Computer: " + remote_computer);
-                    formatted_report.add("Total Size Deleted: " + Long.toString(Math.round(total_size_deleted)));
-                    for (String deleted_folder : users_deleted) {
-                        formatted_report.add(deleted_folder);
+                    StringBuilder formatted_report = new StringBuilder(128 * (results.size() + 4));
+                    formatted_report.append("Deletion Report").append(System.lineSeparator());
+                    formatted_report.append("Computer: ").append(remote_computer).append(System.lineSeparator());
+                    formatted_report.append("Total Size Deleted: ").append(total_size_deleted).append(System.lineSeparator());
+                    if (total_size_queued > 0) {
+                        formatted_report.append("Total Size Renamed And Queued For Purge: ").append(total_size_queued).append(System.lineSeparator());
+                    }
+                    if (size_check_walks_skipped > 0) {
+                        formatted_report.append("Cached Sizes Used: ").append(size_check_walks_skipped).append(" (approximately ").append(size_check_time_saved / 1000).append(" seconds saved)").append(System.lineSeparator());
                     }
-                    writeToFile(reports_location + "\\" + remote_computer + "_deletion_report_" + session_id + ".txt", formatted_report);
-                    logMessage("Deletion report written to file " + reports_location + "\\" + remote_computer + "_deletion_report_" + session_id + ".txt", LOG_TYPE.INFO, true);
+                    if (cancelled) {
+                        formatted_report.append("Deletion was cancelled, users marked not started have not been touched").append(System.lineSeparator());
+                    }
+                    DeletionResult.appendReportHeadings(formatted_report);
+                    for (DeletionResult result : results) {
+                        result.appendReportLine(formatted_report.append(System.lineSeparator()));
+                    }
+                    writeToFile(reports_location + "\\" + remote_computer + "_deletion_report_" + session_id + ".txt", Collections.singletonList(formatted_report.toString()));
+                    logMessage(LOG_TYPE.INFO, "Deletion report written to file {}\\{}_deletion_report_{}.txt", reports_location, remote_computer, session_id);
                 } catch (IOException e) {
                     logMessage("Failed to write deletion report to file " + reports_location + "\\" + remote_computer + "_deletion_report_" + session_id + ".txt. Error is: " + e.getMessage(), LOG_TYPE.ERROR, true);
                 }
             }
-            return users_deleted;
+            return deletion_results;
         } else {
             String message = "Either user list has not been initialised or a state and/or registry check has not been run";
             logMessage(message, LOG_TYPE.WARNING, true);
@@ -1024,7 +1728,7 @@ public class ProfileDeleter {
                         registryBackup(remote_computer, "HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileList", "C:\\Temp\\" + filename_friendly_computer + "_ProfileList_" + registry_backup_date_suffix + ".reg");
                         run = false;
                     } catch (IOException | InterruptedException | CannotEditException e) {
-                        if (count >= registry_check_attempts) {
+                        if (count >= registry_check_attempts || cancel_requested) {
                             logMessage("Backup of registry key HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileList on " + remote_computer + " failed", LOG_TYPE.WARNING, true);
                             throw e;
                         } else {
@@ -1033,11 +1737,7 @@ public class ProfileDeleter {
                         }
                     }
                 }
-                try{
-                   Thread.sleep(registry_backup_wait);
-                } catch(InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+                waitForStableFile("\\\\" + remote_computer + "\\" + unc_root + "\\Temp\\" + filename_friendly_computer + "_ProfileList_" + registry_backup_date_suffix + ".reg");
                 run = true;
                 count = 1;
                 while(run) {
@@ -1045,7 +1745,7 @@ public class ProfileDeleter {
                         fileCopy("\\\\" + remote_computer + "\\" + unc_root + "\\Temp\\" + filename_friendly_computer + "_ProfileList_" + registry_backup_date_suffix + ".reg", local_data_directory);
                         run = false;
                     } catch (IOException | InterruptedException | CannotEditException e) {
-                        if (count >= registry_check_attempts) {
+                        if (count >= registry_check_attempts || cancel_requested) {
                             logMessage("Backup of registry key HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileList on " + remote_computer + " failed", LOG_TYPE.WARNING, true);
                             throw e;
                         } else {
@@ -1061,7 +1761,7 @@ public class ProfileDeleter {
                         fileDelete("\\\\" + remote_computer + "\\" + unc_root + "\\Temp\\" + filename_friendly_computer + "_ProfileList_" + registry_backup_date_suffix + ".reg");
                         run = false;
                     } catch (IOException | InterruptedException | CannotEditException e) {
-                        if (count >= registry_check_attempts) {
+                        if (count >= registry_check_attempts || cancel_requested) {
                             logMessage("Backup of registry key HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileList on " + remote_computer + " failed", LOG_TYPE.WARNING, true);
                             throw e;
                         } else {
@@ -1077,7 +1777,7 @@ public class ProfileDeleter {
                         registryBackup(remote_computer, "HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileGuid", "C:\\Temp\\" + filename_friendly_computer + "_ProfileGuid_" + registry_backup_date_suffix + ".reg");
                         run = false;
                     } catch (IOException | InterruptedException | CannotEditException e) {
-                        if (count >= registry_check_attempts) {
+                        if (count >= registry_check_attempts || cancel_requested) {
                             logMessage("Backup and copy of registry key HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileGuid on " + remote_computer + " failed", LOG_TYPE.WARNING, true);
                             throw e;
                         } else {
@@ -1086,11 +1786,7 @@ public class ProfileDeleter {
                         }
                     }
                 }
-                try{
-                   Thread.sleep(registry_backup_wait);
-                } catch(InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+                waitForStableFile("\\\\" + remote_computer + "\\" + unc_root + "\\Temp\\" + filename_friendly_computer + "_ProfileGuid_" + registry_backup_date_suffix + ".reg");
                 run = true;
                 count = 1;
                 while(run) {
@@ -1098,7 +1794,7 @@ public class ProfileDeleter {
                         fileCopy("\\\\" + remote_computer + "\\" + unc_root + "\\Temp\\" + filename_friendly_computer + "_ProfileGuid_" + registry_backup_date_suffix + ".reg", local_data_directory);
                         run = false;
                     } catch (IOException | InterruptedException | CannotEditException e) {
-                        if (count >= registry_check_attempts) {
+                        if (count >= registry_check_attempts || cancel_requested) {
                             logMessage("Backup of registry key HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileGuid on " + remote_computer + " failed", LOG_TYPE.WARNING, true);
                             throw e;
                         } else {
@@ -1114,7 +1810,7 @@ public class ProfileDeleter {
                         fileDelete("\\\\" + remote_computer + "\\" + unc_root + "\\Temp\\" + filename_friendly_computer + "_ProfileGuid_" + registry_backup_date_suffix + ".reg");
                         run = false;
                     } catch (IOException | InterruptedException | CannotEditException e) {
-                        if (count >= registry_check_attempts) {
+                        if (count >= registry_check_attempts || cancel_requested) {
                             logMessage("Backup of registry key HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileGuid on " + remote_computer + " failed", LOG_TYPE.WARNING, true);
                             throw e;
                         } else {
@@ -1123,82 +1819,121 @@ public class ProfileDeleter {
                         }
                     }
                 }
+                if (backup_store_enabled) {
+                    for (String hive : new String[]{"ProfileList", "ProfileGuid"}) {
+                        try {
+                            storeRegistryBackup(local_data_directory + "\\" + filename_friendly_computer + "_" + hive + "_" + registry_backup_date_suffix + ".reg", hive + "_" + registry_backup_date_suffix);
+                        } catch (IOException e) {
+                            logMessage("Unable to add " + hive + " registry backup to backup store, plain backup file has been kept. Error is: " + e.getMessage(), LOG_TYPE.WARNING, true);
+                        }
+                    }
+                }
                 registry_backup_complete = true;
             }
         }
     }
 
+    /**
+     * Adds a registry backup file to the backup store and deletes the plain
+     * file.
+     * <p>
+     * If the file cannot be added to the store the plain file is kept.
+     *
+     * @param full_file_name the path + filename of the registry backup file
+     * @param label the label to record the backup under in the store index
+     * @throws IOException an IO error occurred when adding the file to the
+     * store
+     */
+    public void storeRegistryBackup(String full_file_name, String label) throws IOException {
+        logMessage(LOG_TYPE.INFO, "Attempting to add registry backup {} to backup store", full_file_name);
+        File backup_file = new File(full_file_name);
+        BackupStore.Entry entry = getBackupStore().store(backup_file, remote_computer, label);
+        if (!backup_file.delete()) {
+            logMessage("Unable to delete plain registry backup " + full_file_name + " after adding it to backup store", LOG_TYPE.WARNING, true);
+        }
+        logMessage(LOG_TYPE.INFO, "Successfully added registry backup {} to backup store as {} registry keys", full_file_name, entry.getChunkHashes().size());
+    }
+
+    /**
+     * Recreates a plain registry backup file from the backup store.
+     * <p>
+     * If more than one backup matches the most recent one is restored.
+     *
+     * @param computer the computer the backup was taken from
+     * @param label_contains text the backup label must contain, for example a
+     * SID
+     * @param date_prefix the start of the date the backup was added in the
+     * format yyyy-MM-dd HH:mm:ss. Use an empty String for any date
+     * @param full_file_name the path + filename of the registry file to create
+     * @throws IOException an IO error occurred when reading the store or
+     * writing the file
+     * @throws DoesNotExistException no backup in the store matches
+     */
+    public void restoreRegistryBackup(String computer, String label_contains, String date_prefix, String full_file_name) throws IOException, DoesNotExistException {
+        logMessage(LOG_TYPE.INFO, "Attempting to restore registry backup {} for computer {} from backup store to {}", label_contains, computer, full_file_name);
+        List<BackupStore.Entry> entries = getBackupStore().find(computer, label_contains, date_prefix);
+        if (entries.isEmpty()) {
+            String message = "No registry backup " + label_contains + " for computer " + computer + " found in backup store";
+            logMessage(message, LOG_TYPE.ERROR, true);
+            throw new DoesNotExistException(message);
+        }
+        BackupStore.Entry entry = entries.get(entries.size() - 1);
+        getBackupStore().restore(entry, new File(full_file_name));
+        logMessage(LOG_TYPE.INFO, "Successfully restored registry backup {} taken {} to {}", entry.getLabel(), entry.getDate(), full_file_name);
+    }
+
     /**
      * Processes ProfileSid and ProfileGuid registry data obtained from target
      * computer and assigns the values to the correct user in the user list
      * attribute.
      * <p>
-     * backupAndCopyRegistry function must be run before this function can be
-     * run, or the needed files need to be manually created.<br>
-     * Local data directory attribute must be initialised before this function
-     * can be run.
+     * The registry data is read from a snapshot of the live registry taken
+     * with the registrySnapshot function.<br>
+     * If the snapshot fails on every attempt and backupAndCopyRegistry has been
+     * run the registry data is streamed from the backup .reg files instead
+     * using RegFileReader.
      *
-     * @throws IOException thrown if IO errors are received when trying to open
-     * needed files
-     * @throws NotInitialisedException local data directory attribute has not
-     * been initialised
+     * @throws IOException thrown if IO errors are received when trying to read
+     * the registry data
+     * @throws NotInitialisedException no registry data could be found for the
+     * remote computer
      */
     public void findSIDAndGUID() throws IOException, NotInitialisedException, CannotEditException, InterruptedException {
         logMessage("Attempting to compile SID and GUID data from registry queries", LOG_TYPE.INFO, true);
-        //if (local_data_directory.compareTo("") != 0) {
-        List<String> regkeys_profile_list = null;
-        List<String> regkeys_profile_guid = null;
+        RegistryProfileIndex registry_index = null;
         String filename_friendly_computer = remote_computer.replace('.', '_');
         try {
-            //logMessage("Loading file " + local_data_directory + "\\" + filename_friendly_computer + "_ProfileList.txt", LOG_TYPE.INFO, true);
-            //regkeys_profile_list = readFromFile(local_data_directory + "\\" + filename_friendly_computer + "_ProfileList.txt");
             boolean run = true;
             int count = 1;
-            while(run) {
-                try {
-                    regkeys_profile_list = registryQuery(remote_computer, "HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileList");
-                    run = false;
-                } catch (IOException | CannotEditException | InterruptedException | NotInitialisedException e) {
-                    if (count >= registry_check_attempts) {
-                        logMessage("Unable to execute registry query or read data from registry", LOG_TYPE.ERROR, true);
-                        if(registry_backup_complete) {
-                            try{
-                                logMessage("Attempting to read registry data from backup instead", LOG_TYPE.INFO, true);
-                                logMessage("Loading file " + local_data_directory + "\\" + filename_friendly_computer + "_ProfileList_" + registry_backup_date_suffix + ".reg", LOG_TYPE.INFO, true);
-                                regkeys_profile_list = readFromFile(local_data_directory + "\\" + filename_friendly_computer + "_ProfileList_" + registry_backup_date_suffix + ".reg");
-                                run = false;
-                            } catch (IOException e2) {
-                                logMessage("Failed to read from file", LOG_TYPE.ERROR, true);
-                                throw e2;
-                            }
-                        } else {
-                            throw e;
-                        }
-                    } else {
-                        logMessage("Attempt " + Integer.toString(count) + " at running registry query failed", LOG_TYPE.WARNING, true);
-                        count++;
-                    }
-                }
-            }
-            try{
-                Thread.sleep(registry_backup_wait);
-            } catch(InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-            run = true;
-            count = 1;
-            while(run) {
+            while (run) {
                 try {
-                    regkeys_profile_guid = registryQuery(remote_computer, "HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileGuid");
+                    registry_index = registrySnapshot(remote_computer);
                     run = false;
                 } catch (IOException | CannotEditException | InterruptedException | NotInitialisedException e) {
-                    if (count >= registry_check_attempts) {
+                    if (count >= registry_check_attempts || cancel_requested) {
                         logMessage("Unable to execute registry query or read data from registry", LOG_TYPE.ERROR, true);
-                        if(registry_backup_complete) {
+                        if (registry_backup_complete) {
                             try {
                                 logMessage("Attempting to read registry data from backup instead", LOG_TYPE.INFO, true);
-                                logMessage("Loading file " + local_data_directory + "\\" + filename_friendly_computer + "_ProfileGuid_" + registry_backup_date_suffix + ".reg", LOG_TYPE.INFO, true);
-                                regkeys_profile_guid = readFromFile(local_data_directory + "\\" + filename_friendly_computer + "_ProfileGuid_" + registry_backup_date_suffix + ".reg");
+                                registry_index = new RegistryProfileIndex();
+                                for (String hive : new String[]{"ProfileList", "ProfileGuid"}) {
+                                    String backup_filename = local_data_directory + "\\" + filename_friendly_computer + "_" + hive + "_" + registry_backup_date_suffix + ".reg";
+                                    File backup_file = new File(backup_filename);
+                                    boolean restored_from_store = false;
+                                    if (!backup_file.exists() && backup_store_enabled) {
+                                        try {
+                                            restoreRegistryBackup(remote_computer, hive + "_" + registry_backup_date_suffix, "", backup_filename);
+                                            restored_from_store = true;
+                                        } catch (DoesNotExistException e2) {
+                                            throw new IOException(e2.getMessage());
+                                        }
+                                    }
+                                    logMessage(LOG_TYPE.INFO, "Loading file {}", backup_filename);
+                                    RegFileReader.read(backup_file, registry_index);
+                                    if (restored_from_store && !backup_file.delete()) {
+                                        logMessage("Unable to delete restored registry backup " + backup_filename, LOG_TYPE.WARNING, true);
+                                    }
+                                }
                                 run = false;
                             } catch (IOException e2) {
                                 logMessage("Failed to read from file", LOG_TYPE.ERROR, true);
@@ -1213,91 +1948,30 @@ public class ProfileDeleter {
                     }
                 }
             }
-            //logMessage("Loading file " + local_data_directory + "\\" + filename_friendly_computer + "_ProfileGuid.txt", LOG_TYPE.INFO, true);
-            //regkeys_profile_guid = readFromFile(local_data_directory + "\\" + filename_friendly_computer + "_ProfileGuid.txt");
-            
-            if (regkeys_profile_list != null && !regkeys_profile_list.isEmpty() && regkeys_profile_guid != null && !regkeys_profile_guid.isEmpty()) {
-                String current_sid = "";
-                String profile_path = "";
-                String profile_guid = "";
-                boolean found_profile_path = false;
-                count = 0;
-                logMessage("Processing file " + local_data_directory + "\\" + filename_friendly_computer + "_ProfileList.txt", LOG_TYPE.INFO, true);
-                for (String line : regkeys_profile_list) {
-                    line = line.replace(" ", "");
-                    line = line.replace("\t", "");
-                    if (line.startsWith("HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\WindowsNT\\CurrentVersion\\ProfileList\\") || count == regkeys_profile_list.size() - 1) {
-                        String new_sid = line.replace("HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\WindowsNT\\CurrentVersion\\ProfileList\\", "");
-                        logMessage("Found new SID " + new_sid, LOG_TYPE.INFO, true);
-                        if (!profile_path.isEmpty()) {
-                            logMessage("Processing details for found profile " + profile_path, LOG_TYPE.INFO, true);
-                            boolean found_user = false;
-                            for (UserData user : user_list) {
-                                if (user.getName().toLowerCase().compareTo(profile_path.toLowerCase().replace("c:\\users\\", "")) == 0) {
-                                    found_user = true;
-                                    logMessage("Found matching user account", LOG_TYPE.INFO, true);
-                                    if (!user.getSid().isEmpty()) {
-                                        logMessage("SID already exists for user, resolving conflict", LOG_TYPE.INFO, true);
-                                        boolean found_guid = false;
-                                        for (String guid : regkeys_profile_guid) {
-                                            if (guid.contains("HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileGuid\\")) {
-                                                guid = guid.replace("HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileGuid\\", "");
-                                                if (guid.compareTo(profile_guid) == 0) {
-                                                    logMessage("Found matching GUID from " + local_data_directory + "\\" + filename_friendly_computer + "_ProfileGuid.txt. Checking SID for match", LOG_TYPE.INFO, true);
-                                                    found_guid = true;
-                                                }
-                                            } else if (found_guid) {
-                                                String sid = guid.replace(" ", "");
-                                                sid = sid.replace("\t", "");
-                                                sid = sid.replace("SidStringREG_SZ", "");
-                                                if (sid.compareTo(current_sid) == 0) {
-                                                    logMessage("New SID details match SID details for GUID, replacing user details with new details. SID set to " + current_sid + " and GUID to " + profile_guid, LOG_TYPE.INFO, true);
-                                                    user_list.get(user_list.indexOf(user)).setSid(current_sid);
-                                                    user_list.get(user_list.indexOf(user)).setGuid(profile_guid);
-                                                    break;
-                                                }
-                                            }
-                                        }
-                                        logMessage("No match found, discarding new details found for SID " + current_sid, LOG_TYPE.INFO, true);
-                                    } else {
-                                        logMessage("Set SID for user " + profile_path + " to " + current_sid + " and GUID to " + profile_guid, LOG_TYPE.INFO, true);
-                                        user_list.get(user_list.indexOf(user)).setSid(current_sid);
-                                        user_list.get(user_list.indexOf(user)).setGuid(profile_guid);
-                                    }
-                                    break;
-                                }
-                            }
-                            if (!found_user) {
-                                logMessage("No matching user found for profile " + profile_path, LOG_TYPE.INFO, true);
-                            }
-                            current_sid = new_sid;
-                            profile_path = "";
-                            profile_guid = "";
-                        } else {
-                            current_sid = new_sid;
-                            logMessage("SID is " + current_sid, LOG_TYPE.INFO, true);
-                        }
-                    } else if (line.startsWith("ProfileImagePathREG_EXPAND_SZ")) {
-                        profile_path = line.replace("ProfileImagePathREG_EXPAND_SZ", "");
-                        logMessage("Found profile_path " + profile_path, LOG_TYPE.INFO, true);
-                    } else if (line.startsWith("GuidREG_SZ")) {
-                        profile_guid = line.replace("GuidREG_SZ", "");
-                        logMessage("Found GUID " + profile_guid, LOG_TYPE.INFO, true);
+            if (registry_index != null && registry_index.getProfileCount() > 0) {
+                logMessage(LOG_TYPE.INFO, "Indexed {} ProfileList SIDs and {} ProfileGuid GUIDs", registry_index.getProfileCount(), registry_index.getGuidCount());
+                for (UserData user : user_registry) {
+                    String sid = registry_index.findSid(user.getName());
+                    if (sid != null) {
+                        String guid = registry_index.findGuid(sid);
+                        logMessage(LOG_TYPE.INFO, "Set SID for user {} to {} and GUID to {}", user.getName(), sid, guid);
+                        user_registry.setSid(user, sid);
+                        user.setGuid(guid);
+                    } else {
+                        logMessage(LOG_TYPE.INFO, "No matching profile found in registry for user {}", user.getName());
                     }
-                    count++;
                 }
                 registry_check_complete = true;
-                logMessage("Successfully compiled SID and GUID data from registry backups", LOG_TYPE.INFO, true);
+                logMessage("Successfully compiled SID and GUID data from registry", LOG_TYPE.INFO, true);
             } else {
-                String message = "File " + local_data_directory + "\\" + filename_friendly_computer + "_ProfileList.txt or " + local_data_directory + "\\" + filename_friendly_computer + "_ProfileGuid.txt is either empty or corrupt";
+                String message = "Registry data for ProfileList and ProfileGuid on computer " + remote_computer + " is either empty or corrupt";
                 logMessage(message, LOG_TYPE.ERROR, true);
                 throw new NotInitialisedException(message);
             }
         } catch (IOException | InterruptedException | CannotEditException e) {
-            logMessage("Unable to read file " + local_data_directory + "\\" + filename_friendly_computer + "_ProfileList.txt. File may not exist. Error is " + e.getMessage(), LOG_TYPE.ERROR, true);
+            logMessage("Unable to read ProfileList and ProfileGuid registry data for computer " + remote_computer + ". Error is " + e.getMessage(), LOG_TYPE.ERROR, true);
             throw e;
         }
-        //}
     }
 
     /**
@@ -1305,33 +1979,43 @@ public class ProfileDeleter {
      * users directory.
      * <p>
      * Gets the folder name and last updated date for each user.<br>
-     * Sets delete to true unless the folder name is in the cannot delete list.
+     * Flags users matching the cannot delete and should not delete rules.
      *
      * @throws IOException an IO error has occurred when running the powershell
      * script to get the user list on the target computer
      */
     public void generateUserList() throws IOException {
-        logMessage("Attempting to build users directory " + users_directory, LOG_TYPE.INFO, true);
+        LogContext.set("", "user_list");
+        logMessage(LOG_TYPE.INFO, "Attempting to build users directory {}", users_directory);
         if (users_directory.compareTo("") != 0) {
             try {
-                user_list = Collections.synchronizedList(new ArrayList<UserData>());
-                String command = "Set-ExecutionPolicy -ExecutionPolicy Bypass -Scope Process | powershell.exe -File \"" + src_location + "\\GetDirectoryList.ps1\" -directory " + users_directory;
-                ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\WindowsPowerShell\\v1.0\\powershell.exe", "-Command", command);
+                List<UserData> user_list = new ArrayList<>();
+                ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\WindowsPowerShell\\v1.0\\powershell.exe", "-ExecutionPolicy", "Bypass", "-File", src_location + "\\GetDirectoryList.ps1", "-directory", users_directory);
                 builder.redirectErrorStream(true);
-                Process power_shell_process = builder.start();
-                try (BufferedReader powershell_process_output_stream = new BufferedReader(new InputStreamReader(power_shell_process.getInputStream()))) {
+                Process power_shell_process = startProcess(builder);
+                try (BufferedReader powershell_process_output_stream = new BufferedReader(new InputStreamReader(power_shell_process.getInputStream(), getConsoleCharset()))) {
                     String output = "";
                     String line = "";
-                    while ((line = powershell_process_output_stream.readLine()).compareTo("EndOfScriptGetDirectoryList") != 0) {
-                        if (!line.isEmpty()) {
-                            logMessage("Discovered folder details " + line, LOG_TYPE.INFO, true);
+                    while ((line = powershell_process_output_stream.readLine()) != null && line.compareTo("EndOfScriptGetDirectoryList") != 0) {
+                        if (line.contains(PurgeQueue.PURGE_SUFFIX)) {
+                            logMessage(LOG_TYPE.INFO, "Skipping renamed folder waiting to be purged {}", line);
+                        } else if (!line.isEmpty()) {
+                            logMessage(LOG_TYPE.INFO, "Discovered folder details {}", line);
                             String[] line_split = line.split("\\t");
-                            UserData user = new UserData(false, line_split[0], line_split[1], "", "", "", "");
+                            UserData user = new UserData(false, line_split[0], line_split[1], UserData.SIZE_NOT_CHECKED, UserData.STATE.NOT_CHECKED, "", "");
+                            if (line_split.length > 2) {
+                                user.setKeyFoldersUpdated(line_split[2]);
+                            }
                             user_list.add(user);
                         }
                     }
+                    if (line == null) {
+                        throw new IOException("GetDirectoryList.ps1 stopped before listing every folder");
+                    }
                 }
                 power_shell_process.destroy();
+                user_registry.replaceAll(user_list);
+                applySelectionRules();
                 int number_of_pooled_threads_to_initialise;
                 if (intended_number_of_pooled_threads > 0) {
                     number_of_pooled_threads_to_initialise = intended_number_of_pooled_threads;
@@ -1339,7 +2023,7 @@ public class ProfileDeleter {
                     number_of_pooled_threads_to_initialise = Integer.MAX_VALUE;
                 }
                 setNumberOfPooledThreads(number_of_pooled_threads_to_initialise);
-                logMessage("Successfully built users directory " + users_directory, LOG_TYPE.INFO, true);
+                logMessage(LOG_TYPE.INFO, "Successfully built users directory {}", users_directory);
             } catch (IOException e) {
                 logMessage("Failed to build users directory " + users_directory, LOG_TYPE.ERROR, true);
                 logMessage(e.getMessage(), LOG_TYPE.ERROR, true);
@@ -1355,34 +2039,143 @@ public class ProfileDeleter {
      * <p>
      * This check can take a very long time depending on the size of the users
      * directory on the target computer.<br>
+     * If incremental size check is turned on the size of a user folder is only
+     * calculated again if the folder or any of its key sub folders have been
+     * updated since the last size check, otherwise the cached size is
+     * used.<br>
      * This check is not required to run a deletion.
      *
      * @throws InterruptedException the thread pool was interrupted before all
      * tasks could be completed
      */
     public void checkSize() throws InterruptedException {
+        LogContext.set("", "size_check");
         logMessage("Calcuting size of directory list", LOG_TYPE.INFO, true);
+        List<UserData> user_list = user_registry.snapshot();
         if (user_list.size() > 0 && users_directory.compareTo("") != 0) {
+            Map<String, String[]> size_cache = new HashMap<>();
+            if (incremental_size_check) {
+                size_cache = loadSizeCache();
+            }
+            size_check_walks_skipped = 0;
+            size_check_time_saved = 0;
+            size_check_durations.clear();
             logMessage("Pooling size check tasks for each user", LOG_TYPE.INFO, true);
             List<size_check_process> size_check_process_list = new ArrayList<size_check_process>();
-            for (int i = 0; i < user_list.size(); i++) {
-                size_check_process_list.add(new size_check_process(i, this));
+            for (UserData user : user_list) {
+                String[] cached_size = size_cache.get(user.getName().toLowerCase());
+                if (cached_size != null && !user.getLastUpdated().isEmpty() && cached_size[1].equals(user.getLastUpdated()) && cached_size[2].equals(user.getKeyFoldersUpdated())) {
+                    logMessage(LOG_TYPE.INFO, "Folder {} has not been updated since the last size check, using cached size {}", user.getName(), cached_size[3]);
+                    user.setSize(Long.parseLong(cached_size[3]));
+                    user.setProgress("Size loaded from cache", 100);
+                    long cached_duration = Long.parseLong(cached_size[4]);
+                    size_check_durations.put(user.getName().toLowerCase(), cached_duration);
+                    size_check_walks_skipped++;
+                    size_check_time_saved += cached_duration;
+                } else {
+                    user.setProgress("Waiting for size check", 0);
+                    size_check_process_list.add(new size_check_process(user, this));
+                }
             }
             logMessage("All tasks have been scheduled, awaiting task completion", LOG_TYPE.INFO, true);
             try {
-                thread_pool.invokeAll(size_check_process_list);
-                logMessage("All tasks completed", LOG_TYPE.INFO, true);
-                size_check_complete = true;
+                if (runPooledTasks(size_check_process_list)) {
+                    logMessage("All tasks completed", LOG_TYPE.INFO, true);
+                    size_check_complete = true;
+                } else {
+                    checkCancelled("Size check");
+                }
             } catch (InterruptedException e) {
                 logMessage("Failed to run pooled size check tasks, thread pool was interrupted. Error is: " + e.getMessage(), LOG_TYPE.ERROR, true);
                 throw e;
             }
+            if (incremental_size_check) {
+                logMessage(LOG_TYPE.INFO, "Incremental size check skipped {} of {} folder size calculations, saving approximately {} seconds", size_check_walks_skipped, user_list.size(), size_check_time_saved / 1000);
+                saveSizeCache();
+            }
             logMessage("Finished calculating size of directory list", LOG_TYPE.INFO, true);
         } else {
             logMessage("Directory list is empty, aborting size calculation", LOG_TYPE.WARNING, true);
         }
     }
 
+    /**
+     * Records how long it took to calculate the size of a user folder.
+     * <p>
+     * Used to report how much time the incremental size check saves.
+     *
+     * @param user the name of the user folder
+     * @param duration the time taken to calculate the size in milliseconds
+     */
+    public void recordSizeCheckDuration(String user, long duration) {
+        size_check_durations.put(user.toLowerCase(), duration);
+    }
+
+    /**
+     * Loads the cached folder sizes for the remote computer from the cache
+     * location.
+     * <p>
+     * Each line of the cache file is a tab delimited record of the folder name,
+     * last updated, key folders updated, size and the time taken to calculate
+     * the size.
+     *
+     * @return the cached size records keyed by lower case folder name. Empty if
+     * no cache exists for the remote computer
+     */
+    public Map<String, String[]> loadSizeCache() {
+        Map<String, String[]> size_cache = new HashMap<>();
+        String filename = getSizeCacheFilename();
+        if (new File(filename).exists()) {
+            try {
+                for (String line : readFromFile(filename)) {
+                    String[] line_split = line.split("\t", -1);
+                    if (line_split.length == 5 && Pattern.matches("[0-9]+", line_split[3]) && Pattern.matches("[0-9]+", line_split[4])) {
+                        size_cache.put(line_split[0].toLowerCase(), line_split);
+                    }
+                }
+                logMessage(LOG_TYPE.INFO, "Loaded {} cached folder sizes from {}", size_cache.size(), filename);
+            } catch (IOException e) {
+                logMessage("Failed to load size cache " + filename + ", all folder sizes will be calculated. Error is: " + e.getMessage(), LOG_TYPE.WARNING, true);
+            }
+        } else {
+            logMessage(LOG_TYPE.INFO, "No size cache found for computer {}, all folder sizes will be calculated", remote_computer);
+        }
+        return size_cache;
+    }
+
+    /**
+     * Saves the folder sizes from the last size check to the cache location so
+     * they can be reused by the next incremental size check.
+     * <p>
+     * Only folders that have a calculated size are saved.
+     */
+    public void saveSizeCache() {
+        String filename = getSizeCacheFilename();
+        List<String> size_cache = new ArrayList<>();
+        for (UserData user : user_registry) {
+            Long duration = size_check_durations.get(user.getName().toLowerCase());
+            if (duration != null && user.getSize() >= 0) {
+                size_cache.add(user.getName() + '\t' + user.getLastUpdated() + '\t' + user.getKeyFoldersUpdated() + '\t' + user.getSize() + '\t' + duration);
+            }
+        }
+        try {
+            new File(cache_location).mkdirs();
+            writeToFile(filename, size_cache, false);
+            logMessage(LOG_TYPE.INFO, "Saved {} folder sizes to size cache {}", size_cache.size(), filename);
+        } catch (IOException e) {
+            logMessage("Failed to save size cache " + filename + ". Error is: " + e.getMessage(), LOG_TYPE.WARNING, true);
+        }
+    }
+
+    /**
+     * Gets the path + filename of the size cache file for the remote computer.
+     *
+     * @return the path + filename of the size cache file
+     */
+    private String getSizeCacheFilename() {
+        return cache_location + "\\" + remote_computer.replace('.', '_') + "_size_cache.txt";
+    }
+
     /**
      * Checks the state of each user folder on the target computer to determine
      * if the folder can be edited and therefore deleted.
@@ -1393,14 +2186,15 @@ public class ProfileDeleter {
      * tasks could be completed
      */
     public void checkState() throws InterruptedException {
+        LogContext.set("", "state_check");
         logMessage("Checking editable state of directory list", LOG_TYPE.INFO, true);
-        if (user_list.size() > 0 && users_directory.compareTo("") != 0) {
+        if (!user_registry.isEmpty() && users_directory.compareTo("") != 0) {
             //ExecutorService thread_pool = Executors.newFixedThreadPool(number_of_pooled_threads);
             logMessage("Pooling state check tasks for each user", LOG_TYPE.INFO, true);
             List<state_check_process> state_check_process_list = new ArrayList<state_check_process>();
-            for (int i = 0; i < user_list.size(); i++) {
-                //thread_pool.submit(new state_check_process(i, this));
-                state_check_process_list.add(new state_check_process(i, this));
+            for (UserData user : user_registry) {
+                user.setProgress("Waiting for state check", 0);
+                state_check_process_list.add(new state_check_process(user, this));
             }
             logMessage("All tasks have been scheduled, awaiting task completion", LOG_TYPE.INFO, true);
             /*thread_pool.shutdown();
@@ -1409,9 +2203,12 @@ public class ProfileDeleter {
                 thread_pool_terminated = thread_pool.isTerminated();
             }*/
             try {
-                thread_pool.invokeAll(state_check_process_list);
-                logMessage("All tasks completed", LOG_TYPE.INFO, true);
-                state_check_complete = true;
+                if (runPooledTasks(state_check_process_list)) {
+                    logMessage("All tasks completed", LOG_TYPE.INFO, true);
+                    state_check_complete = true;
+                } else {
+                    checkCancelled("State check");
+                }
             } catch (InterruptedException e) {
                 logMessage("Failed to run pooled state check tasks, thread pool was interrupted. Error is: " + e.getMessage(), LOG_TYPE.ERROR, true);
                 throw e;
@@ -1429,8 +2226,11 @@ public class ProfileDeleter {
      * This check is required before a deletion can be run.
      */
     public void checkRegistry() {
+        LogContext.set("", "registry_check");
         logMessage("Getting registry SID and GUID values for user list", LOG_TYPE.INFO, true);
-        if(run_registry_backup) {
+        if (run_registry_backup && registry_backup_mode.equals("targeted")) {
+            logMessage("Registry backup mode is targeted, registry keys will be backed up for each user when they are deleted", LOG_TYPE.INFO, true);
+        } else if(run_registry_backup) {
             try {
                 if(!backup_folder_created) {
                     generateLocalBackupFolder();
@@ -1454,11 +2254,15 @@ public class ProfileDeleter {
     }
 
     /**
-     * Runs the size check, state check and registry check if their
+     * Runs the size check, registry check and state check if their
      * corresponding boolean attribute is set to true.
      * <p>
      * Set the corresponding boolean attribute for each check using the
-     * setSizeCheck, setStateCheck and setRegistryCheck functions.
+     * setSizeCheck, setStateCheck and setRegistryCheck functions.<br>
+     * The selection rules are applied again after the size check and the
+     * registry check, as rules can depend on the size and SID they find. The
+     * registry check runs before the state check so users protected by a size
+     * or sid: rule are known before the state check renames any folders.
      *
      * @throws IOException an IO error occurs when trying to check the editable
      * state of users in user list attribute
@@ -1467,24 +2271,60 @@ public class ProfileDeleter {
      */
     public void checkAll() throws IOException, InterruptedException {
         logMessage("Running all enabled checks", LOG_TYPE.INFO, true);
+        checkCancelled("Checks");
         if (size_check) {
             checkSize();
+            applySelectionRules();
         } else {
             logMessage("Size check is turned off, skipping size check", LOG_TYPE.INFO, true);
         }
-        if (state_check) {
-            checkState();
-        } else {
-            logMessage("State check is turned off, skipping state check", LOG_TYPE.INFO, true);
-        }
+        checkCancelled("Checks");
         if (registry_check) {
             checkRegistry();
+            applySelectionRules();
         } else {
             logMessage("Registry check is turned off, skipping registry check", LOG_TYPE.INFO, true);
         }
+        checkCancelled("Checks");
+        if (state_check) {
+            checkState();
+        } else {
+            logMessage("State check is turned off, skipping state check", LOG_TYPE.INFO, true);
+        }
+        checkCancelled("Checks");
+        applySelectionRules();
         logMessage("Running enabled checks complete", LOG_TYPE.INFO, true);
     }
 
+    /**
+     * Evaluates the selection rules against every user in a single pass.
+     * <p>
+     * Sets the cannot delete and should not delete flags of each user, removes
+     * the delete flag from users that cannot be deleted or that should not be
+     * deleted but were flagged automatically, and flags editable users
+     * matching the auto select rules for deletion unless they cannot or should
+     * not be deleted.<br>
+     * Run after the user list is generated and after each check that finds
+     * the size or SID the rules can depend on.
+     */
+    public void applySelectionRules() {
+        long now = System.currentTimeMillis();
+        int auto_selected = 0;
+        for (UserData user : user_registry) {
+            boolean cannot_delete = cannot_delete_rules.matches(user, now);
+            boolean should_not_delete = should_not_delete_rules.matches(user, now);
+            user.setCannotDelete(cannot_delete);
+            user.setShouldNotDelete(should_not_delete);
+            if (cannot_delete || (should_not_delete && user.getDeleteAutomatic())) {
+                user.setDelete(false);
+            } else if (!should_not_delete && user.getState() == UserData.STATE.EDITABLE && !user.getDelete() && !auto_select_rules.isEmpty() && auto_select_rules.matches(user, now)) {
+                user.setDelete(true, true);
+                auto_selected++;
+            }
+        }
+        logMessage(LOG_TYPE.INFO, "Applied selection rules to user list, {} users automatically flagged for deletion", auto_selected);
+    }
+
     /**
      * Generates a session ID for uniquely naming folders and files related to
      * the particular deletion.
@@ -1493,7 +2333,7 @@ public class ProfileDeleter {
      */
     public void generateSessionID() {
         session_id = generateDateString();
-        logMessage("Session ID has been set to " + session_id, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Session ID has been set to {}", session_id);
     }
 
     /**
@@ -1552,25 +2392,46 @@ public class ProfileDeleter {
      * @throws InterruptedException the pstools process thread was interrupted
      */
     public void directoryRename(String computer, String directory, String folder, String folder_renamed) throws IOException, CannotEditException, InterruptedException {
+        directoryRename(computer, directory, folder, folder_renamed, true);
+    }
+
+    /**
+     * Uses pstools to rename a folder, optionally stopping if the running
+     * check or deletion is cancelled.
+     *
+     * @param computer the computer the folder is on
+     * @param directory the directory containing the folder to rename
+     * @param folder the name of the folder to rename
+     * @param folder_renamed the name to rename the folder to
+     * @param cancellable whether the rename stops if the running check or
+     * deletion is cancelled. The renames of a two-phase delete are not
+     * cancellable, as the remote REN may already have run when psexec is
+     * stopped
+     * @throws IOException an IO error occurs when trying to rename the folder
+     * @throws CannotEditException unable to rename the folder
+     * @throws InterruptedException the pstools process thread was interrupted
+     */
+    public void directoryRename(String computer, String directory, String folder, String folder_renamed, boolean cancellable) throws IOException, CannotEditException, InterruptedException {
         try {
-            logMessage("Attempting to rename folder " + directory + folder + " to " + folder_renamed, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Attempting to rename folder {}{} to {}", directory, folder, folder_renamed);
             String line = "";
             String error = "";
-            String command = pstools_location + "\\psexec -accepteula -e \\\\" + computer + " cmd /c REN \"" + directory + folder + "\" \"" + folder_renamed + "\" && echo editable|| echo uneditable";
-            ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\cmd.exe", "/c", command);
+            ProcessBuilder builder = new ProcessBuilder(pstools_location + "\\psexec", "-accepteula", "-e", "\\\\" + computer, "cmd", "/c", "REN", directory + folder, folder_renamed);
             builder.redirectErrorStream(true);
-            Process pstools_process = builder.start();
+            Process pstools_process = cancellable ? startProcess(builder) : builder.start();
             try (BufferedReader pstools_process_output_stream = new BufferedReader(new InputStreamReader(pstools_process.getInputStream()))) {
                 while ((line = pstools_process_output_stream.readLine()) != null) {
-                    error = line;
+                    if (!line.isEmpty()) {
+                        error = line;
+                    }
                 }
             }
-            pstools_process.waitFor();
-            if (!error.equals("editable")) {
+            // psexec exits with the exit code of the remote REN, which is 0 only if the folder was renamed.
+            if (pstools_process.waitFor() != 0) {
                 String message = "Unable to rename folder " + directory + folder + ". Error is: " + error;
                 throw new CannotEditException(message);
             }
-            logMessage("Successfully renamed folder " + directory + folder + " to " + folder_renamed, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Successfully renamed folder {}{} to {}", directory, folder, folder_renamed);
         } catch (CannotEditException | IOException | InterruptedException e) {
             logMessage("Could not rename directory " + directory + folder, LOG_TYPE.WARNING, true);
             logMessage(e.getMessage(), LOG_TYPE.WARNING, true);
@@ -1591,25 +2452,55 @@ public class ProfileDeleter {
      * size of access and run the powershell script
      */
     public String findFolderSize(String user) throws NonNumericException, IOException {
+        return findFolderSize(user, null);
+    }
+
+    /**
+     * Calculates the size of a user folder, reporting the size counted so far
+     * as the progress of a user while the folder is being walked.
+     * <p>
+     * GetFolderSize.ps1 sums each top level item in the folder with measure
+     * and writes a PartialSize:&lt;bytes&gt; line after an item if a second
+     * has passed since the last one, so a large folder such as AppData is
+     * reported once it has been summed.
+     *
+     * @param user the name of the user folder to calculate the size of
+     * @param user_data the user to set the progress of, or null to not report
+     * progress
+     * @return the size of the folder
+     * @throws NonNumericException the size calculated is not a number
+     * @throws IOException an IO error has occurred when trying to calculate the
+     * size of access and run the powershell script
+     */
+    public String findFolderSize(String user, UserData user_data) throws NonNumericException, IOException {
         try {
-            logMessage("Calculating filesize for folder " + users_directory + user, LOG_TYPE.INFO, true);
-            String command = "Set-ExecutionPolicy -ExecutionPolicy Bypass -Scope Process | powershell.exe -File \"" + src_location + "\\GetFolderSize.ps1\" -directory " + users_directory + user;
-            ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\WindowsPowerShell\\v1.0\\powershell.exe", "-command", command);
+            logMessage(LOG_TYPE.INFO, "Calculating filesize for folder {}{}", users_directory, user);
+            ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\WindowsPowerShell\\v1.0\\powershell.exe", "-ExecutionPolicy", "Bypass", "-File", src_location + "\\GetFolderSize.ps1", "-directory", users_directory + user);
             builder.redirectErrorStream(true);
-            Process power_shell_process = builder.start();
+            Process power_shell_process = startProcess(builder);
             String output;
             try (BufferedReader powershell_process_output_stream = new BufferedReader(new InputStreamReader(power_shell_process.getInputStream()))) {
                 output = "";
                 String line = "";
-                while ((line = powershell_process_output_stream.readLine()).compareTo("EndOfScriptGetFolderSize") != 0) {
-                    if (!line.isEmpty()) {
+                while ((line = powershell_process_output_stream.readLine()) != null && line.compareTo("EndOfScriptGetFolderSize") != 0) {
+                    if (line.startsWith("PartialSize:")) {
+                        if (user_data != null) {
+                            try {
+                                user_data.setProgress(String.format("Calculating size, %,.1f MB so far", Long.parseLong(line.substring("PartialSize:".length())) / (1024.0 * 1024.0)), -1);
+                            } catch (NumberFormatException e) {
+                            }
+                        }
+                    } else if (!line.isEmpty()) {
                         output = line;
                     }
                 }
+                if (line == null) {
+                    throw new IOException("GetFolderSize.ps1 stopped before calculating the size of folder " + users_directory + user);
+                }
             }
             power_shell_process.destroy();
             if (Pattern.matches("[0-9]+", output)) {
-                logMessage("Successfully calculated filesize for folder " + users_directory + user + ": " + output, LOG_TYPE.INFO, true);
+                logMessage(LOG_TYPE.INFO, "Successfully calculated filesize for folder {}{}: {}", users_directory, user, output);
                 return output;
             } else {
                 String message = "Size calculated is not a number. Ensure powershell script " + src_location + "\\GetFolderSize.ps1 is correct";
@@ -1637,10 +2528,9 @@ public class ProfileDeleter {
             logMessage("Attempting to find hostname of this computer", LOG_TYPE.INFO, true);
             String line = "";
             String error = "";
-            String command = "hostname";
-            ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\cmd.exe", "/c", command);
+            ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\hostname.exe");
             builder.redirectErrorStream(true);
-            Process cmd_process = builder.start();
+            Process cmd_process = startProcess(builder);
             try (BufferedReader cmd_process_output_stream = new BufferedReader(new InputStreamReader(cmd_process.getInputStream()))) {
                 while ((line = cmd_process_output_stream.readLine()) != null) {
                     error = line;
@@ -1653,7 +2543,7 @@ public class ProfileDeleter {
                 throw new NotInitialisedException(message);
             }
             local_computer = error;
-            logMessage("Successfully found hostname of this computer: " + local_computer, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Successfully found hostname of this computer: {}", local_computer);
         } catch (IOException | InterruptedException e) {
             logMessage("Failed to run CMD command to get hostname", LOG_TYPE.ERROR, true);
             logMessage(e.getMessage(), LOG_TYPE.ERROR, true);
@@ -1661,6 +2551,55 @@ public class ProfileDeleter {
         }
     }
 
+    /**
+     * Gets the charset console programs such as REG and powershell write their
+     * output in when it is read by this program.
+     * <p>
+     * Console programs write in the OEM code page of this computer rather than
+     * the default charset Java uses, so reading their output with the default
+     * charset corrupts any non-ASCII characters. The OEM code page is read from
+     * the registry of this computer the first time this is called. If it
+     * cannot be found or Java does not support it the default charset is used.
+     *
+     * @return the charset to read console program output with
+     */
+    public static synchronized Charset getConsoleCharset() {
+        if (console_charset == null) {
+            console_charset = Charset.defaultCharset();
+            try {
+                ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\reg.exe", "QUERY", "HKLM\\SYSTEM\\CurrentControlSet\\Control\\Nls\\CodePage", "/v", "OEMCP");
+                builder.redirectErrorStream(true);
+                Process reg_process = builder.start();
+                String code_page = "";
+                try (BufferedReader reg_process_output_stream = new BufferedReader(new InputStreamReader(reg_process.getInputStream()))) {
+                    String line;
+                    while ((line = reg_process_output_stream.readLine()) != null) {
+                        String[] line_split = line.trim().split("\\s+");
+                        if (line_split.length == 3 && line_split[0].equals("OEMCP")) {
+                            code_page = line_split[2];
+                        }
+                    }
+                }
+                reg_process.waitFor();
+                if (code_page.equals("65001")) {
+                    console_charset = Charset.forName("UTF-8");
+                } else if (Pattern.matches("[0-9]+", code_page)) {
+                    for (String charset_name : new String[]{"Cp" + code_page, "MS" + code_page, "IBM" + code_page}) {
+                        if (Charset.isSupported(charset_name)) {
+                            console_charset = Charset.forName(charset_name);
+                            break;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // Keep the default charset, only non-ASCII characters are affected.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return console_charset;
+    }
+
     /**
      * Finds the absolute path of the directory the program is running in.
      *
@@ -1679,7 +2618,7 @@ public class ProfileDeleter {
             String command = "@echo off|echo %CD%";
             ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\cmd.exe", "/c", command);
             builder.redirectErrorStream(true);
-            Process cmd_process = builder.start();
+            Process cmd_process = startProcess(builder);
             try (BufferedReader cmd_process_output_stream = new BufferedReader(new InputStreamReader(cmd_process.getInputStream()))) {
                 while ((line = cmd_process_output_stream.readLine()) != null) {
                     error = line;
@@ -1691,7 +2630,7 @@ public class ProfileDeleter {
                 logMessage(message, LOG_TYPE.ERROR, true);
                 throw new NotInitialisedException(message);
             }
-            logMessage("Successfully found absolute path to directory this program is stored in: " + error, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Successfully found absolute path to directory this program is stored in: {}", error);
             return error;
         } catch (IOException | InterruptedException e) {
             logMessage("Failed to run CMD command to find absolute path to directory this program is stored in", LOG_TYPE.ERROR, true);
@@ -1713,13 +2652,13 @@ public class ProfileDeleter {
      */
     public void directoryCreate(String directory) throws IOException, CannotEditException, InterruptedException {
         try {
-            logMessage("Attempting to create folder " + directory, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Attempting to create folder {}", directory);
             String line = "";
             String error = "";
             String command = "MKDIR \"" + directory + "\"";
             ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\cmd.exe", "/c", command);
             builder.redirectErrorStream(true);
-            Process cmd_process = builder.start();
+            Process cmd_process = startProcess(builder);
             try (BufferedReader cmd_process_output_stream = new BufferedReader(new InputStreamReader(cmd_process.getInputStream()))) {
                 while ((line = cmd_process_output_stream.readLine()) != null) {
                     error = line;
@@ -1731,7 +2670,7 @@ public class ProfileDeleter {
                 logMessage(message, LOG_TYPE.WARNING, true);
                 throw new CannotEditException(message);
             }
-            logMessage("Successfully created folder " + directory, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Successfully created folder {}", directory);
         } catch (IOException | InterruptedException e) {
             logMessage("Could not create folder " + directory, LOG_TYPE.ERROR, true);
             logMessage(e.getMessage(), LOG_TYPE.ERROR, true);
@@ -1753,14 +2692,33 @@ public class ProfileDeleter {
      * @throws InterruptedException the cmd process thread was interrupted
      */
     public void directoryDelete(String directory) throws IOException, CannotEditException, InterruptedException {
+        directoryDelete(directory, true);
+    }
+
+    /**
+     * Deletes a folder, optionally stopping if the running check or deletion
+     * is cancelled.
+     * <p>
+     * Can be used to delete folders on remote computers using \\computername.
+     *
+     * @param directory the path + name of the folder to delete
+     * @param cancellable whether the deletion stops if the running check or
+     * deletion is cancelled. Background purges of renamed folders are not
+     * cancellable
+     * @throws IOException an IO error has occurred when running process to
+     * delete the folder
+     * @throws CannotEditException unable to delete the folder
+     * @throws InterruptedException the cmd process thread was interrupted
+     */
+    public void directoryDelete(String directory, boolean cancellable) throws IOException, CannotEditException, InterruptedException {
         try {
-            logMessage("Attempting to delete folder " + directory, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Attempting to delete folder {}", directory);
             String line = "";
             String error = "";
             String command = "RMDIR /S /Q \"" + directory + "\"";
             ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\cmd.exe", "/c", command);
             builder.redirectErrorStream(true);
-            Process cmd_process = builder.start();
+            Process cmd_process = cancellable ? startProcess(builder) : builder.start();
             try (BufferedReader cmd_process_output_stream = new BufferedReader(new InputStreamReader(cmd_process.getInputStream()))) {
                 while ((line = cmd_process_output_stream.readLine()) != null) {
                     error = line;
@@ -1772,7 +2730,7 @@ public class ProfileDeleter {
                 logMessage(message, LOG_TYPE.ERROR, true);
                 throw new CannotEditException(message);
             }
-            logMessage("Successfully deleted folder " + directory, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Successfully deleted folder {}", directory);
         } catch (CannotEditException | IOException | InterruptedException e) {
             logMessage("Could not delete folder " + directory, LOG_TYPE.ERROR, true);
             logMessage(e.getMessage(), LOG_TYPE.ERROR, true);
@@ -1796,7 +2754,7 @@ public class ProfileDeleter {
      */
     public void directoryDeleteFiles(String directory, List<String> files, List<String> do_not_delete) throws IOException, CannotEditException, InterruptedException {
         try {
-            logMessage("Attempting to delete list of files in directory " + directory, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Attempting to delete list of files in directory {}", directory);
             for (String file : files) {
                 boolean delete = true;
                 if (do_not_delete != null) {
@@ -1812,7 +2770,7 @@ public class ProfileDeleter {
                     String error = "";
                     ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\cmd.exe", "/c", command);
                     builder.redirectErrorStream(true);
-                    Process cmd_process = builder.start();
+                    Process cmd_process = startProcess(builder);
                     try (BufferedReader cmd_process_output_stream = new BufferedReader(new InputStreamReader(cmd_process.getInputStream()))) {
                         while ((line = cmd_process_output_stream.readLine()) != null) {
                             error = line;
@@ -1825,9 +2783,9 @@ public class ProfileDeleter {
                         logMessage(message, LOG_TYPE.ERROR, true);
                         throw new CannotEditException(message);
                     }
-                    logMessage("Successfully deleted file " + directory + "\\" + file, LOG_TYPE.INFO, true);
+                    logMessage(LOG_TYPE.INFO, "Successfully deleted file {}\\{}", directory, file);
                 } else {
-                    logMessage("File " + directory + "\\" + file + " is in do not delete list. It has not been deleted", LOG_TYPE.INFO, true);
+                    logMessage(LOG_TYPE.INFO, "File {}\\{} is in do not delete list. It has not been deleted", directory, file);
                 }
             }
         } catch (CannotEditException | IOException | InterruptedException e) {
@@ -1850,14 +2808,14 @@ public class ProfileDeleter {
      */
     public List<String> directoryListFiles(String directory) throws IOException, CannotEditException, InterruptedException {
         try {
-            logMessage("Attempting to get list of files in directory " + directory, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Attempting to get list of files in directory {}", directory);
             List<String> files = new ArrayList<>();
             String line = "";
             String error = "";
             String command = "dir /b /a-d \"" + directory + "\"";
             ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\cmd.exe", "/c", command);
             builder.redirectErrorStream(true);
-            Process cmd_process = builder.start();
+            Process cmd_process = startProcess(builder);
             try (BufferedReader cmd_process_output_stream = new BufferedReader(new InputStreamReader(cmd_process.getInputStream()))) {
                 while ((line = cmd_process_output_stream.readLine()) != null) {
                     if (line.compareTo("") != 0) {
@@ -1872,7 +2830,7 @@ public class ProfileDeleter {
                 logMessage(message, LOG_TYPE.ERROR, true);
                 throw new CannotEditException(message);
             } else {
-                logMessage("Successfully got list of files in directory " + directory, LOG_TYPE.INFO, true);
+                logMessage(LOG_TYPE.INFO, "Successfully got list of files in directory {}", directory);
                 return files;
             }
         } catch (CannotEditException | IOException | InterruptedException e) {
@@ -1884,51 +2842,87 @@ public class ProfileDeleter {
 
     /**
      * Copies a single file
+     * <p>
+     * The file is copied in process using FileTransfer and, if
+     * file_transfer_verify is set, verified by checksum. The throughput of the
+     * copy is logged.
      *
      * @param old_full_file_name the path + name of the file to copy. Can be
      * copied from a remote computer using \\computername
      * @param new_directory the folder to copy the file to
      * @throws IOException an IO error occurred when copying the file
      * @throws CannotEditException unable to copy the file
-     * @throws InterruptedException the cmd process thread was interrupted
+     * @throws InterruptedException the copying thread was interrupted
      */
     public void fileCopy(String old_full_file_name, String new_directory) throws IOException, CannotEditException, InterruptedException {
+        logMessage(LOG_TYPE.INFO, "Attempting to copy file {} to new directory {}", old_full_file_name, new_directory);
+        File old_file = new File(old_full_file_name);
+        if (!old_file.isFile()) {
+            String message = "Unable to copy file " + old_full_file_name + " to folder " + new_directory + ". Error is: file does not exist";
+            logMessage(message, LOG_TYPE.ERROR, true);
+            throw new CannotEditException(message);
+        }
         try {
-            logMessage("Attempting to copy file " + old_full_file_name + " to new directory " + new_directory, LOG_TYPE.INFO, true);
-            String line = "";
-            String error = "";
-            String command = "copy \"" + old_full_file_name + "\" \"" + new_directory + "\"";
-            ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\cmd.exe", "/c", command);
-            builder.redirectErrorStream(true);
-            Process cmd_process = builder.start();
-            try (BufferedReader cmd_process_output_stream = new BufferedReader(new InputStreamReader(cmd_process.getInputStream()))) {
-                while ((line = cmd_process_output_stream.readLine()) != null) {
-                    error = line;
-                }
+            FileTransfer.Result result = FileTransfer.copy(old_file, new File(new_directory, old_file.getName()), file_transfer_verify);
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Copy of file " + old_full_file_name + " was interrupted");
             }
-            cmd_process.waitFor();
-            if (!error.contains("file(s) copied")) {
-                String message = "Unable to copy file " + old_full_file_name + " to folder " + new_directory + ". Error is: " + error;
-                logMessage(message, LOG_TYPE.ERROR, true);
-                throw new CannotEditException(message);
-            }
-            logMessage("Successfully copied file " + old_full_file_name + " to new directory " + new_directory, LOG_TYPE.INFO, true);
-        } catch (IOException | InterruptedException e) {
+            logMessage("Successfully copied file " + old_full_file_name + " to new directory " + new_directory + ". Copied " + result.getBytes() + " bytes in " + result.getDuration() + "ms at " + FileTransfer.formatThroughput(result.getBytesPerSecond()) + (file_transfer_verify ? ", checksum verified" : ""), LOG_TYPE.INFO, true);
+        } catch (IOException e) {
+            String message = "Unable to copy file " + old_full_file_name + " to folder " + new_directory + ". Error is: " + e.getMessage();
+            logMessage(message, LOG_TYPE.ERROR, true);
+            throw new CannotEditException(message);
+        } catch (InterruptedException e) {
             logMessage("Could not copy file " + old_full_file_name + " to new directory " + new_directory, LOG_TYPE.ERROR, true);
             logMessage(e.getMessage(), LOG_TYPE.ERROR, true);
             throw e;
         }
     }
-    
+
+    /**
+     * Waits until a file exists and its size has stopped changing.
+     * <p>
+     * Used to detect when a file written by a remote process, such as a REG
+     * EXPORT, is complete. The size of the file is checked every
+     * registry_backup_poll_interval ms and the file is complete once two checks
+     * in a row return the same size greater than 0.
+     *
+     * @param filename the path + name of the file to wait for. Can be on a
+     * remote computer using \\computername
+     * @throws CannotEditException the file was not complete within
+     * registry_backup_timeout ms
+     * @throws InterruptedException the thread was interrupted while waiting
+     */
+    public void waitForStableFile(String filename) throws CannotEditException, InterruptedException {
+        logMessage(LOG_TYPE.INFO, "Waiting for file {} to finish being written", filename);
+        File file = new File(filename);
+        long start_time = System.currentTimeMillis();
+        long last_size = -1;
+        while (true) {
+            long size = file.length();
+            if (size > 0 && size == last_size) {
+                logMessage(LOG_TYPE.INFO, "File {} finished being written after {}ms", filename, System.currentTimeMillis() - start_time);
+                return;
+            }
+            if (System.currentTimeMillis() - start_time >= registry_backup_timeout) {
+                String message = "File " + filename + " was not finished being written within " + registry_backup_timeout + "ms";
+                logMessage(message, LOG_TYPE.ERROR, true);
+                throw new CannotEditException(message);
+            }
+            last_size = size;
+            Thread.sleep(registry_backup_poll_interval);
+        }
+    }
+
     public void fileDelete(String filename) throws IOException, CannotEditException, InterruptedException {
         try {
-            logMessage("Attempting to delete file " + filename, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Attempting to delete file {}", filename);
             String line = "";
             String error = "";
             String command = "del \"" + filename + "\" /F /Q";
             ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\cmd.exe", "/c", command);
             builder.redirectErrorStream(true);
-            Process cmd_process = builder.start();
+            Process cmd_process = startProcess(builder);
             try (BufferedReader cmd_process_output_stream = new BufferedReader(new InputStreamReader(cmd_process.getInputStream()))) {
                 while ((line = cmd_process_output_stream.readLine()) != null) {
                     error = line;
@@ -1940,7 +2934,7 @@ public class ProfileDeleter {
                 logMessage(message, LOG_TYPE.ERROR, true);
                 throw new CannotEditException(message);
             }
-            logMessage("Successfully deleted file " + filename, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Successfully deleted file {}", filename);
         } catch (IOException | InterruptedException e) {
             logMessage("Could not delete file " + filename, LOG_TYPE.ERROR, true);
             logMessage(e.getMessage(), LOG_TYPE.ERROR, true);
@@ -1964,15 +2958,13 @@ public class ProfileDeleter {
      */
     public void registryBackup(String computer, String reg_key, String full_file_name) throws IOException, CannotEditException, InterruptedException {
         try {
-            logMessage("Attempting to save registry key " + reg_key + " on computer " + computer + " to folder " + full_file_name, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Attempting to save registry key {} on computer {} to folder {}", reg_key, computer, full_file_name);
             String line = "";
             String error = "";
             boolean run = true;
-            String command = pstools_location + "\\psexec -accepteula -e \\\\" + computer + " REG EXPORT \"" + reg_key + "\" \"" + full_file_name + "\" /y";
-            //String command = "REG QUERY \"\\\\" + computer + "\\" + reg_key + "\" /s > \"" + full_file_name + "\"";
-            ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\cmd.exe", "/c", command);
+            ProcessBuilder builder = new ProcessBuilder(pstools_location + "\\psexec", "-accepteula", "-e", "\\\\" + computer, "REG", "EXPORT", reg_key, full_file_name, "/y");
             builder.redirectErrorStream(true);
-            Process cmd_process = builder.start();
+            Process cmd_process = startProcess(builder);
             try (BufferedReader cmd_process_output_stream = new BufferedReader(new InputStreamReader(cmd_process.getInputStream()))) {
                 while ((line = cmd_process_output_stream.readLine()) != null && run) {
                     error = line;
@@ -1984,7 +2976,7 @@ public class ProfileDeleter {
                 logMessage(message, LOG_TYPE.ERROR, true);
                 throw new CannotEditException(message);
             }
-            logMessage("Successfully saved registry key " + reg_key + " on computer " + computer + " to folder " + full_file_name, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Successfully saved registry key {} on computer {} to folder {}", reg_key, computer, full_file_name);
         } catch (IOException | InterruptedException e) {
             logMessage("Could not save registry key " + reg_key + " on computer " + computer + " to folder " + full_file_name + ". Error is " + e.getMessage(), LOG_TYPE.ERROR, true);
             throw e;
@@ -2006,15 +2998,14 @@ public class ProfileDeleter {
      */
     public List<String> registryQuery(String computer, String reg_key) throws IOException, CannotEditException, InterruptedException, NotInitialisedException {
         try {
-            logMessage("Attempting to get registry data " + reg_key + " on computer " + computer + " using REG QUERY", LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Attempting to get registry data {} on computer {} using REG QUERY", reg_key, computer);
             String line = "";
             String error = "";
             List<String> reg_query = new ArrayList<String>();
-            String command = "REG QUERY \"\\\\" + computer + "\\" + reg_key + "\" /s";
-            ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\cmd.exe", "/c", command);
+            ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\reg.exe", "QUERY", "\\\\" + computer + "\\" + reg_key, "/s");
             builder.redirectErrorStream(true);
-            Process cmd_process = builder.start();
-            try (BufferedReader cmd_process_output_stream = new BufferedReader(new InputStreamReader(cmd_process.getInputStream()))) {
+            Process cmd_process = startProcess(builder);
+            try (BufferedReader cmd_process_output_stream = new BufferedReader(new InputStreamReader(cmd_process.getInputStream(), getConsoleCharset()))) {
                 while ((line = cmd_process_output_stream.readLine()) != null) {
                     reg_query.add(line);
                 }
@@ -2031,7 +3022,7 @@ public class ProfileDeleter {
                 logMessage(message, LOG_TYPE.ERROR, true);
                 throw new CannotEditException(message);
             }
-            logMessage("Successfully ran REG QUERY for registry key " + reg_key + " on computer " + computer, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Successfully ran REG QUERY for registry key {} on computer {}", reg_key, computer);
             return reg_query;
         } catch (IOException | InterruptedException e) {
             logMessage("Could not run REG QUERY for registry key " + reg_key + " on computer " + computer + ". Error is " + e.getMessage(), LOG_TYPE.ERROR, true);
@@ -2039,6 +3030,161 @@ public class ProfileDeleter {
         }
     }
 
+    /**
+     * Takes a snapshot of the ProfileList and ProfileGuid registry keys using
+     * REG QUERY and indexes it.
+     * <p>
+     * Both keys are queried at the same time by a REG QUERY process each.
+     * ProfileList is read on the calling thread and ProfileGuid on a thread of
+     * its own, each into its own index as it is read, so the registry data is
+     * never held in memory as text. The ProfileGuid index is added to the
+     * ProfileList index once both have been read.
+     *
+     * @param computer the computer to take the snapshot from
+     * @return the index of the ProfileList and ProfileGuid registry data
+     * @throws IOException an IO error occurred when running REG QUERY
+     * @throws CannotEditException REG QUERY returned an error for either key
+     * @throws InterruptedException the cmd process thread was interrupted
+     * @throws NotInitialisedException nothing was returned for ProfileList
+     */
+    public RegistryProfileIndex registrySnapshot(String computer) throws IOException, CannotEditException, InterruptedException, NotInitialisedException {
+        try {
+            logMessage(LOG_TYPE.INFO, "Attempting to get ProfileList and ProfileGuid registry data on computer {} using REG QUERY", computer);
+            String line = "";
+            String error = "";
+            RegistryProfileIndex registry_index = new RegistryProfileIndex();
+            final RegistryProfileIndex guid_index = new RegistryProfileIndex();
+            ProcessBuilder guid_builder = new ProcessBuilder("C:\\Windows\\System32\\reg.exe", "QUERY", "\\\\" + computer + "\\" + RegistryProfileIndex.PROFILE_GUID_KEY, "/s");
+            guid_builder.redirectErrorStream(true);
+            final Process guid_process = startProcess(guid_builder);
+            Process list_process = null;
+            try {
+                ProcessBuilder list_builder = new ProcessBuilder("C:\\Windows\\System32\\reg.exe", "QUERY", "\\\\" + computer + "\\" + RegistryProfileIndex.PROFILE_LIST_KEY, "/s");
+                list_builder.redirectErrorStream(true);
+                list_process = startProcess(list_builder);
+                // Returns the last error line of the ProfileGuid output, or an empty String if there was none.
+                FutureTask<String> guid_reader = new FutureTask<>(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        String guid_line;
+                        String guid_error = "";
+                        try (BufferedReader guid_process_output_stream = new BufferedReader(new InputStreamReader(guid_process.getInputStream(), getConsoleCharset()))) {
+                            while ((guid_line = guid_process_output_stream.readLine()) != null) {
+                                if (guid_line.startsWith("ERROR")) {
+                                    guid_error = guid_line;
+                                } else {
+                                    guid_index.addRegQueryLine(guid_line);
+                                }
+                            }
+                        }
+                        return guid_error;
+                    }
+                });
+                Thread guid_reader_thread = new Thread(guid_reader, "ProfileDeleter-reg-query");
+                guid_reader_thread.setDaemon(true);
+                guid_reader_thread.start();
+                try (BufferedReader list_process_output_stream = new BufferedReader(new InputStreamReader(list_process.getInputStream(), getConsoleCharset()))) {
+                    while ((line = list_process_output_stream.readLine()) != null) {
+                        if (line.startsWith("ERROR")) {
+                            error = line;
+                        } else {
+                            registry_index.addRegQueryLine(line);
+                        }
+                    }
+                }
+                list_process.waitFor();
+                try {
+                    String guid_error = guid_reader.get();
+                    if (error.isEmpty()) {
+                        error = guid_error;
+                    }
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+                guid_process.waitFor();
+            } finally {
+                // Closes the output of both processes, so the ProfileGuid thread also stops if this thread was interrupted.
+                guid_process.destroy();
+                if (list_process != null) {
+                    list_process.destroy();
+                }
+            }
+            registry_index.addIndex(guid_index);
+            if (!error.isEmpty()) {
+                String message = "Could not run REG QUERY for ProfileList and ProfileGuid on computer " + computer + ", error is: " + error;
+                logMessage(message, LOG_TYPE.ERROR, true);
+                throw new CannotEditException(message);
+            } else if (registry_index.getProfileCount() == 0) {
+                String message = "Nothing returned from REG QUERY for registry key " + RegistryProfileIndex.PROFILE_LIST_KEY + " on computer " + computer;
+                logMessage(message, LOG_TYPE.ERROR, true);
+                throw new NotInitialisedException(message);
+            }
+            logMessage(LOG_TYPE.INFO, "Successfully ran REG QUERY for ProfileList and ProfileGuid on computer {}", computer);
+            return registry_index;
+        } catch (IOException | InterruptedException e) {
+            logMessage("Could not run REG QUERY for ProfileList and ProfileGuid on computer " + computer + ". Error is " + e.getMessage(), LOG_TYPE.ERROR, true);
+            throw e;
+        }
+    }
+
+    /**
+     * Backs up a registry key to a file on the local computer using REG QUERY.
+     * <p>
+     * The REG QUERY output is converted to registry file syntax with
+     * RegFileWriter as it is read, so nothing is written to the remote
+     * computer and the data is never held in memory.<br>
+     * If the backup fails the partially written file is deleted.
+     *
+     * @param computer the computer containing the registry key
+     * @param reg_key the registry key to backup
+     * @param full_file_name the path + filename of the backup file to create.
+     * Include the file extension
+     * @throws IOException an IO error occurred when running REG QUERY or
+     * writing the file
+     * @throws CannotEditException REG QUERY returned an error or no data for
+     * the registry key
+     * @throws InterruptedException the cmd process thread was interrupted
+     */
+    public void registryBackupTargeted(String computer, String reg_key, String full_file_name) throws IOException, CannotEditException, InterruptedException {
+        File backup_file = new File(full_file_name);
+        boolean backup_complete = false;
+        try {
+            logMessage(LOG_TYPE.INFO, "Attempting to save registry key {} on computer {} to file {} using REG QUERY", reg_key, computer, full_file_name);
+            String line = "";
+            String error = "";
+            int key_count = 0;
+            ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\reg.exe", "QUERY", "\\\\" + computer + "\\" + reg_key, "/s");
+            builder.redirectErrorStream(true);
+            Process cmd_process = startProcess(builder);
+            try (RegFileWriter reg_file_writer = new RegFileWriter(backup_file);
+                    BufferedReader cmd_process_output_stream = new BufferedReader(new InputStreamReader(cmd_process.getInputStream(), getConsoleCharset()))) {
+                while ((line = cmd_process_output_stream.readLine()) != null) {
+                    if (line.startsWith("ERROR")) {
+                        error = line;
+                    } else {
+                        reg_file_writer.addRegQueryLine(line);
+                    }
+                }
+                key_count = reg_file_writer.getKeyCount();
+            }
+            cmd_process.waitFor();
+            if (!error.isEmpty() || key_count == 0) {
+                String message = "Could not save registry key " + reg_key + " on computer " + computer + " to file " + full_file_name + (error.isEmpty() ? ", nothing was returned from REG QUERY" : ", error is: " + error);
+                logMessage(message, LOG_TYPE.ERROR, true);
+                throw new CannotEditException(message);
+            }
+            backup_complete = true;
+            logMessage(LOG_TYPE.INFO, "Successfully saved registry key {} on computer {} to file {}", reg_key, computer, full_file_name);
+        } catch (IOException | InterruptedException e) {
+            logMessage("Could not save registry key " + reg_key + " on computer " + computer + " to file " + full_file_name + ". Error is " + e.getMessage(), LOG_TYPE.ERROR, true);
+            throw e;
+        } finally {
+            if (!backup_complete && backup_file.exists() && !backup_file.delete()) {
+                logMessage("Unable to remove incomplete registry backup " + full_file_name, LOG_TYPE.WARNING, true);
+            }
+        }
+    }
+
     /**
      * Deletes a registry key using pstools.
      *
@@ -2050,13 +3196,12 @@ public class ProfileDeleter {
      */
     public void registryDelete(String computer, String reg_key) throws IOException, CannotEditException, InterruptedException {
         try {
-            logMessage("Attempting to delete registry key " + reg_key + " from computer " + computer, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Attempting to delete registry key {} from computer {}", reg_key, computer);
             String line = "";
             String error = "";
-            String command = pstools_location + "\\psexec -accepteula -e \\\\" + computer + " REG DELETE \"" + reg_key + "\" /f";
-            ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\cmd.exe", "/c", command);
+            ProcessBuilder builder = new ProcessBuilder(pstools_location + "\\psexec", "-accepteula", "-e", "\\\\" + computer, "REG", "DELETE", reg_key, "/f");
             builder.redirectErrorStream(true);
-            Process pstools_process = builder.start();
+            Process pstools_process = startProcess(builder);
             try (BufferedReader cmd_process_output_stream = new BufferedReader(new InputStreamReader(pstools_process.getInputStream()))) {
                 while ((line = cmd_process_output_stream.readLine()) != null) {
                     error = line;
@@ -2068,7 +3213,7 @@ public class ProfileDeleter {
                 throw new CannotEditException(message);
             }
             pstools_process.waitFor();
-            logMessage("Successfully deleted registry key " + reg_key + " from computer " + computer, LOG_TYPE.INFO, true);
+            logMessage(LOG_TYPE.INFO, "Successfully deleted registry key {} from computer {}", reg_key, computer);
         } catch (IOException | CannotEditException | InterruptedException e) {
             logMessage("Could not delete registry key " + reg_key + " from computer " + computer, LOG_TYPE.ERROR, true);
             logMessage(e.getMessage(), LOG_TYPE.ERROR, true);
@@ -2085,23 +3230,24 @@ public class ProfileDeleter {
      */
     public String printUserList() {
         logMessage("Compiling user list into readable String", LOG_TYPE.INFO, true, false);
+        List<UserData> user_list = user_registry.snapshot();
         String output = "";
-        Double total_size = 0.0;
+        long total_size = 0;
         output += UserData.headingsToString();
         if (user_list.size() > 0) {
             output += '\n';
         }
         for (int i = 0; i < user_list.size(); i++) {
             output += user_list.get(i).toString();
-            if (Pattern.matches("[-+]?[0-9]*\\.?[0-9]+", user_list.get(i).getSize())) {
-                total_size += Double.parseDouble(user_list.get(i).getSize());
+            if (user_list.get(i).getSize() >= 0) {
+                total_size += user_list.get(i).getSize();
             }
             if (i != user_list.size() - 1) {
                 output += '\n';
             }
         }
         if (user_list.size() > 0) {
-            Double size_in_megabytes = total_size / (1024.0 * 1024.0);
+            double size_in_megabytes = total_size / (1024.0 * 1024.0);
             long size_in_megaytes_long = Math.round(size_in_megabytes);
             String size_in_megabytes_long_string = Long.toString(size_in_megaytes_long);
             String size_in_megabytes_string = "";
@@ -2171,7 +3317,11 @@ public class ProfileDeleter {
      * If an ActionListener has been specified on the ProfileDeleter class it
      * will trigger a "LogWritten" ActionEvent on the ActionListener. This is
      * intended to allow any GUI classes to update any elements used to display
-     * the log as it is updated.
+     * the log as it is updated.<br>
+     * The message is timestamped and queued without blocking. It is added to
+     * the log list and the ActionEvent is triggered shortly afterwards on the
+     * logging thread, so use flushLog before reading the log list if every
+     * message must be included.
      *
      * @param message the message to add to the log
      * @param severity the severity LOG_TYPE of the message
@@ -2179,55 +3329,273 @@ public class ProfileDeleter {
      * @param display_to_gui triggers a "LogWritten" action event if an
      * ActionListener has been specified on the ProfileDeleter class
      */
-    public synchronized void logMessage(String message, LOG_TYPE severity, boolean include_timestamp, boolean display_to_gui) {
-        String log_message = "";
-        if (null != severity) {
-            switch (severity) {
-                case INFO:
-                    log_message += "Info: ";
-                    break;
-                case WARNING:
-                    log_message += "Warning: ";
-                    break;
-                case ERROR:
-                    log_message += "ERROR: ";
-                    break;
-                default:
-                    break;
+    public void logMessage(String message, LOG_TYPE severity, boolean include_timestamp, boolean display_to_gui) {
+        if (!isLoggable(severity)) {
+            return;
+        }
+        logger.log(new LogEvent(message, severity, System.currentTimeMillis(), include_timestamp, display_to_gui, remote_computer, session_id, LogContext.getUser(), LogContext.getStage(), LogContext.getAttempt(), -1, "", ""));
+    }
+
+    /**
+     * Adds a message built from a template to the log.
+     * <p>
+     * The message is only built if the severity is logged for the current
+     * stage, and is built on the logging thread rather than the calling
+     * thread. Each {} in the template is replaced with the next argument.<br>
+     * Overloads with a fixed number of arguments are provided so messages that
+     * are not logged do not create an argument array.
+     *
+     * @param severity the severity LOG_TYPE of the message
+     * @param template the message to add to the log with {} in place of the
+     * argument
+     * @param arg the argument to put in the template
+     */
+    public void logMessage(LOG_TYPE severity, String template, Object arg) {
+        if (isLoggable(severity)) {
+            logTemplate(severity, template, new Object[]{arg});
+        }
+    }
+
+    /**
+     * Adds a message built from a template to the log.
+     *
+     * @param severity the severity LOG_TYPE of the message
+     * @param template the message to add to the log with {} in place of each
+     * argument
+     * @param arg1 the first argument to put in the template
+     * @param arg2 the second argument to put in the template
+     * @see #logMessage(LOG_TYPE, String, Object)
+     */
+    public void logMessage(LOG_TYPE severity, String template, Object arg1, Object arg2) {
+        if (isLoggable(severity)) {
+            logTemplate(severity, template, new Object[]{arg1, arg2});
+        }
+    }
+
+    /**
+     * Adds a message built from a template to the log.
+     *
+     * @param severity the severity LOG_TYPE of the message
+     * @param template the message to add to the log with {} in place of each
+     * argument
+     * @param arg1 the first argument to put in the template
+     * @param arg2 the second argument to put in the template
+     * @param arg3 the third argument to put in the template
+     * @see #logMessage(LOG_TYPE, String, Object)
+     */
+    public void logMessage(LOG_TYPE severity, String template, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(severity)) {
+            logTemplate(severity, template, new Object[]{arg1, arg2, arg3});
+        }
+    }
+
+    /**
+     * Adds a message built from a template to the log.
+     *
+     * @param severity the severity LOG_TYPE of the message
+     * @param template the message to add to the log with {} in place of each
+     * argument
+     * @param args the arguments to put in the template
+     * @see #logMessage(LOG_TYPE, String, Object)
+     */
+    public void logMessage(LOG_TYPE severity, String template, Object... args) {
+        if (isLoggable(severity)) {
+            logTemplate(severity, template, args);
+        }
+    }
+
+    /**
+     * Queues a message template and its arguments on the logger.
+     *
+     * @param severity the severity LOG_TYPE of the message
+     * @param template the message to add to the log with {} in place of each
+     * argument
+     * @param args the arguments to put in the template
+     */
+    private void logTemplate(LOG_TYPE severity, String template, Object[] args) {
+        logger.log(new LogEvent(template, args, severity, System.currentTimeMillis(), true, true, remote_computer, session_id, LogContext.getUser(), LogContext.getStage(), LogContext.getAttempt(), -1, "", ""));
+    }
+
+    /**
+     * Checks whether a message of a given severity is logged for the stage the
+     * current thread is working on.
+     * <p>
+     * Uses the log_level_&lt;stage&gt; config value for the stage if there is
+     * one, otherwise the log_level config value. Messages without a severity
+     * are always logged.
+     *
+     * @param severity the severity LOG_TYPE of the message
+     * @return whether the message is logged
+     */
+    public boolean isLoggable(LOG_TYPE severity) {
+        if (severity == null) {
+            return true;
+        }
+        LOG_TYPE minimum = log_level;
+        Map<String, LOG_TYPE> levels = stage_log_levels;
+        if (!levels.isEmpty()) {
+            LOG_TYPE stage_level = levels.get(LogContext.getStage());
+            if (stage_level != null) {
+                minimum = stage_level;
             }
         }
+        return severity.GetState() >= minimum.GetState();
+    }
 
-        if (include_timestamp) {
-            SimpleDateFormat human_readable_timestamp = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss.SSS");
-            Date timestamp = new Date();
-            String format_timestamp = human_readable_timestamp.format(timestamp);
-            log_message += "[" + format_timestamp + "] ";
+    /**
+     * Parses a log level config value.
+     *
+     * @param key the config key being parsed, used in the error message
+     * @param value the config value
+     * @return the LOG_TYPE named by the value
+     * @throws NonNumericException the value is not INFO, WARNING or ERROR
+     */
+    private LOG_TYPE parseLogLevel(String key, String value) throws NonNumericException {
+        try {
+            return LOG_TYPE.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new NonNumericException(key + " must be INFO, WARNING or ERROR");
+        }
+    }
+
+    /**
+     * Adds the outcome of a stage to the log.
+     * <p>
+     * Used at the end of each stage of a check or deletion for a user so the
+     * structured log records how long the stage took and how it ended.<br>
+     * Outcomes are always logged while json_log is set, even if the severity
+     * is below the log level, so the structured log has the timing of every
+     * stage.
+     *
+     * @param stage the stage that ended, for example state_check
+     * @param user the user the stage was for, or an empty String
+     * @param attempt the number of attempts the stage took
+     * @param duration how long the stage took in milliseconds
+     * @param outcome the outcome of the stage, for example success or failed
+     * @param output the error message or process output if the stage failed,
+     * or an empty String. Only the end of long output is kept
+     * @param severity the severity LOG_TYPE of the message
+     */
+    public void logOutcome(String stage, String user, int attempt, long duration, String outcome, String output, LOG_TYPE severity) {
+        if (!json_log_enabled && !isLoggable(severity)) {
+            return;
         }
+        String output_tail = output == null ? "" : output;
+        if (output_tail.length() > OUTPUT_TAIL_LENGTH) {
+            output_tail = output_tail.substring(output_tail.length() - OUTPUT_TAIL_LENGTH);
+        }
+        Object[] args = user.isEmpty() ? new Object[]{stage, outcome, attempt, duration} : new Object[]{stage, user, outcome, attempt, duration};
+        logger.log(new LogEvent(user.isEmpty() ? "Stage {} ended with outcome {} after {} attempts in {}ms" : "Stage {} for user {} ended with outcome {} after {} attempts in {}ms", args, severity, System.currentTimeMillis(), true, false, remote_computer, session_id, user, stage, attempt, duration, outcome, output_tail));
+    }
 
-        log_message += message;
+    /**
+     * Waits until every message logged so far has been added to the log list
+     * and passed to the ActionListener.
+     */
+    public void flushLog() {
+        logger.flush();
+    }
 
-        log_list.add(log_message);
-        if(log_updated != null) {
-            if (display_to_gui) {
-                log_updated.actionPerformed(new java.awt.event.ActionEvent(this, 0, "LogWritten" + Integer.toString(log_list.size()-1)));
+    /**
+     * Stops the logging thread once every message logged so far has been
+     * handled, then closes the log files and the thread pool of this session.
+     * <p>
+     * Run when the session is no longer needed. A thread pool shared with
+     * other sessions is left running. Messages logged after this is called
+     * are dropped.
+     */
+    public void close() {
+        logger.shutdown();
+        try {
+            if (rolling_log != null) {
+                rolling_log.close();
+            }
+            if (json_log != null) {
+                json_log.close();
+            }
+        } catch (IOException e) {
+            // The logging thread has stopped so there is nowhere left to report the failure.
+        } finally {
+            rolling_log = null;
+            json_log = null;
+        }
+        if (thread_pool != null && !shared_thread_pool) {
+            thread_pool.shutdown();
+        }
+    }
+
+    /**
+     * Writes a logged message to the log files.
+     * <p>
+     * Only called on the logging thread. The log files are started once the
+     * config file has been loaded, beginning with the messages logged before
+     * then that are still in memory. If json_log is set the message is also
+     * written as a line of JSON to the structured log files.
+     *
+     * @param event the message and the context it was logged in
+     * @param log_message the formatted message
+     */
+    private void writeLogFile(LogEvent event, String log_message) {
+        if (log_file_failed || log_file_directory == null) {
+            return;
+        }
+        try {
+            if (rolling_log == null) {
+                RollingLogWriter new_rolling_log = new RollingLogWriter(new File(log_file_directory), log_file_prefix, ".txt", log_file_max_size, log_file_max_minutes * 60000L, Charset.defaultCharset());
+                for (String line : log_tail.snapshot()) {
+                    new_rolling_log.write(line);
+                }
+                rolling_log = new_rolling_log;
+            } else {
+                rolling_log.write(log_message);
             }
+            if (json_log_enabled) {
+                if (json_log == null) {
+                    json_log = new RollingLogWriter(new File(log_file_directory), log_file_prefix, ".jsonl", log_file_max_size, log_file_max_minutes * 60000L, Charset.forName("UTF-8"));
+                }
+                json_line.setLength(0);
+                json_log.write(event.appendJson(json_line).toString());
+            }
+        } catch (IOException e) {
+            logFileFailed(e);
         }
     }
 
     /**
-     * Dumps the list of logged messages to a text file.
+     * Stops writing to the log files after they could not be written.
+     * <p>
+     * Only called on the logging thread. Messages are still kept in memory.
+     *
+     * @param e the error that occurred writing the log files
+     */
+    private void logFileFailed(IOException e) {
+        log_file_failed = true;
+        logMessage("Unable to write log file, only the most recent messages will be kept. Error is: " + e.getMessage(), LOG_TYPE.ERROR, true);
+    }
+
+    /**
+     * Dumps the logged messages to a text file.
+     * <p>
+     * Flushes the log files and copies them into a single file. If the log
+     * files could not be written the messages kept in memory are written
+     * instead.
      *
      * @return the filename of the created text file
      * @throws IOException an IO error occurred when trying to create the text
      * file
-     * @throws NotInitialisedException the log list attribute has not had
-     * anything logged to it
+     * @throws NotInitialisedException nothing has been logged
      */
     public String writeLog() throws IOException, NotInitialisedException {
-        if (!log_list.isEmpty()) {
+        flushLog();
+        if (log_tail.size() > 0) {
             try {
                 String filename = logs_location + "\\Profile_Deleter_Log_" + remote_computer + "_" + generateDateString() + ".txt";
-                writeToFile(filename, log_list);
+                RollingLogWriter current_rolling_log = rolling_log;
+                if (current_rolling_log != null && !log_file_failed) {
+                    current_rolling_log.copyTo(new File(filename));
+                } else {
+                    writeToFile(filename, log_tail.snapshot());
+                }
                 return filename;
             } catch (IOException e) {
                 throw e;
@@ -2269,21 +3637,36 @@ public class ProfileDeleter {
             reports_location = "";
             backups_location = "";
             src_location = "";
+            cache_location = "";
             unc_root = "";
+            registry_backup_mode = "targeted";
             size_check = false;
             state_check = false;
             registry_check = false;
             delete_all_users = false;
             run_registry_backup = false;
+            incremental_size_check = true;
+            backup_store_enabled = true;
+            file_transfer_verify = true;
+            two_phase_delete = true;
+            purge_concurrency = 2;
+            total_pooled_threads = 20;
+            json_log_enabled = true;
             state_check_attempts = 0;
             registry_check_attempts = 0;
             folder_deletion_attempts = 0;
             registry_sid_deletion_attempts = 0;
             registry_guid_deletion_attempts = 0;
-            registry_backup_wait = 0;
+            registry_backup_poll_interval = 100;
+            registry_backup_timeout = 10000;
+            log_file_max_size = 10485760;
+            log_file_max_minutes = 1440;
             number_of_pooled_threads = 0;
-            cannot_delete_list = new ArrayList<>();
-            should_not_delete_list = new ArrayList<>();
+            List<String> cannot_delete_list = new ArrayList<>();
+            List<String> should_not_delete_list = new ArrayList<>();
+            List<String> auto_select_list = new ArrayList<>();
+            LOG_TYPE config_log_level = LOG_TYPE.INFO;
+            Map<String, LOG_TYPE> config_stage_log_levels = new HashMap<>();
             try {
                 if (!failed_to_load_config) {
                     logMessage("Attempting to load profiledeleter.config", LOG_TYPE.INFO, true);
@@ -2303,6 +3686,8 @@ public class ProfileDeleter {
                         backups_location = line.replace("backups=", "");
                     } else if (line.startsWith("src=")) {
                         src_location = line.replace("src=", "");
+                    } else if (line.startsWith("cache=")) {
+                        cache_location = line.replace("cache=", "");
                     } else if (line.startsWith("unc=")) {
                         unc_root = line.replace("unc=", "");
                     } else if (line.startsWith("size_check_default=")) {
@@ -2315,6 +3700,31 @@ public class ProfileDeleter {
                         delete_all_users = (Boolean.parseBoolean(line.replace("delete_all_users_default=", "")));
                     } else if (line.startsWith("run_registry_backup=")) {
                         run_registry_backup = (Boolean.parseBoolean(line.replace("run_registry_backup=", "")));
+                    } else if (line.startsWith("registry_backup_mode=")) {
+                        registry_backup_mode = line.replace("registry_backup_mode=", "").toLowerCase();
+                        if (!registry_backup_mode.equals("full") && !registry_backup_mode.equals("targeted")) {
+                            throw new NonNumericException("registry_backup_mode must be full or targeted");
+                        }
+                    } else if (line.startsWith("log_level=")) {
+                        config_log_level = parseLogLevel("log_level", line.replace("log_level=", ""));
+                    } else if (line.startsWith("log_level_") && line.contains("=")) {
+                        String stage = line.substring("log_level_".length(), line.indexOf('='));
+                        config_stage_log_levels.put(stage, parseLogLevel("log_level_" + stage, line.substring(line.indexOf('=') + 1)));
+                    } else if (line.startsWith("json_log=")) {
+                        json_log_enabled = (Boolean.parseBoolean(line.replace("json_log=", "")));
+                    } else if (line.startsWith("file_transfer_verify=")) {
+                        file_transfer_verify = (Boolean.parseBoolean(line.replace("file_transfer_verify=", "")));
+                    } else if (line.startsWith("backup_store=")) {
+                        backup_store_enabled = (Boolean.parseBoolean(line.replace("backup_store=", "")));
+                    } else if (line.startsWith("incremental_size_check=")) {
+                        incremental_size_check = (Boolean.parseBoolean(line.replace("incremental_size_check=", "")));
+                    } else if (line.startsWith("two_phase_delete=")) {
+                        two_phase_delete = (Boolean.parseBoolean(line.replace("two_phase_delete=", "")));
+                    } else if (line.startsWith("purge_concurrency=")) {
+                        purge_concurrency = (Integer.parseInt(line.replace("purge_concurrency=", "")));
+                        if (purge_concurrency < 1) {
+                            throw new NonNumericException("purge_concurrency must be greater than 0");
+                        }
                     } else if (line.startsWith("state_check_attempts=")) {
                         state_check_attempts = (Integer.parseInt(line.replace("state_check_attempts=", "")));
                         if (state_check_attempts < 1) {
@@ -2340,10 +3750,25 @@ public class ProfileDeleter {
                         if (registry_guid_deletion_attempts < 1) {
                             throw new NonNumericException("registry_guid_deletion_attempts must be greater than 0");
                         }
-                    } else if (line.startsWith("registry_backup_wait=")) {
-                        registry_backup_wait = (Integer.parseInt(line.replace("registry_backup_wait=", "")));
-                        if (registry_backup_wait < 1) {
-                            throw new NonNumericException("registry_backup_wait must be greater than 0");
+                    } else if (line.startsWith("registry_backup_poll_interval=")) {
+                        registry_backup_poll_interval = (Integer.parseInt(line.replace("registry_backup_poll_interval=", "")));
+                        if (registry_backup_poll_interval < 1) {
+                            throw new NonNumericException("registry_backup_poll_interval must be greater than 0");
+                        }
+                    } else if (line.startsWith("log_file_max_size=")) {
+                        log_file_max_size = (Long.parseLong(line.replace("log_file_max_size=", "")));
+                        if (log_file_max_size < 1) {
+                            throw new NonNumericException("log_file_max_size must be greater than 0");
+                        }
+                    } else if (line.startsWith("log_file_max_minutes=")) {
+                        log_file_max_minutes = (Integer.parseInt(line.replace("log_file_max_minutes=", "")));
+                        if (log_file_max_minutes < 1) {
+                            throw new NonNumericException("log_file_max_minutes must be greater than 0");
+                        }
+                    } else if (line.startsWith("registry_backup_timeout=")) {
+                        registry_backup_timeout = (Integer.parseInt(line.replace("registry_backup_timeout=", "")));
+                        if (registry_backup_timeout < 1) {
+                            throw new NonNumericException("registry_backup_timeout must be greater than 0");
                         }
                     } else if (line.startsWith("number_of_pooled_threads=")) {
                         if (line.replace("number_of_pooled_threads=", "").equals("max")) {
@@ -2354,12 +3779,22 @@ public class ProfileDeleter {
                                 throw new NonNumericException("number_of_pooled_threads must be greater than 0");
                             }
                         }
+                    } else if (line.startsWith("total_pooled_threads=")) {
+                        total_pooled_threads = (Integer.parseInt(line.replace("total_pooled_threads=", "")));
+                        if (total_pooled_threads < 1) {
+                            throw new NonNumericException("total_pooled_threads must be greater than 0");
+                        }
                     } else if (line.startsWith("cannot_delete_list=")) {
                         cannot_delete_list.add(line.replace("cannot_delete_list=", ""));
                     } else if (line.startsWith("should_not_delete_list=")) {
                         should_not_delete_list.add(line.replace("should_not_delete_list=", ""));
+                    } else if (line.startsWith("auto_select_rule=")) {
+                        auto_select_list.add(line.replace("auto_select_rule=", ""));
                     }
                 }
+                cannot_delete_rules = new SelectionRules(cannot_delete_list);
+                should_not_delete_rules = new SelectionRules(should_not_delete_list);
+                auto_select_rules = new SelectionRules(auto_select_list);
 
                 if (logs_location == null || logs_location.isEmpty() || pstools_location == null || pstools_location.isEmpty() || reports_location == null || reports_location.isEmpty() || backups_location == null || backups_location.isEmpty() || src_location == null || src_location.isEmpty() || unc_root == null || unc_root.isEmpty() || state_check_attempts <= 0 || registry_check_attempts <= 0 || folder_deletion_attempts <= 0 || registry_sid_deletion_attempts <= 0 || registry_guid_deletion_attempts <= 0 || intended_number_of_pooled_threads <= 0) {
                     if (!failed_to_load_config) {
@@ -2379,6 +3814,26 @@ public class ProfileDeleter {
                         }
                     }
                 } else {
+                    if (cache_location.isEmpty()) {
+                        cache_location = "cache";
+                    }
+                    if (registry_backup_mode.isEmpty()) {
+                        registry_backup_mode = "targeted";
+                    }
+                    if (registry_backup_poll_interval == 0) {
+                        registry_backup_poll_interval = 100;
+                    }
+                    if (registry_backup_timeout == 0) {
+                        registry_backup_timeout = 10000;
+                    }
+                    if (log_file_max_size == 0) {
+                        log_file_max_size = 10485760;
+                    }
+                    if (log_file_max_minutes == 0) {
+                        log_file_max_minutes = 1440;
+                    }
+                    log_level = config_log_level;
+                    stage_log_levels = config_stage_log_levels;
                     logMessage("Successfully loaded config file", LOG_TYPE.INFO, true);
                     attempting_to_load_config = false;
                 }
@@ -2425,6 +3880,7 @@ public class ProfileDeleter {
         profile_deleter_config_default.add("backups=backups");
         profile_deleter_config_default.add("src=src");
         profile_deleter_config_default.add("help=help");
+        profile_deleter_config_default.add("cache=cache");
         profile_deleter_config_default.add("* [sharename] in the UNC path \\\\[computer]\\[sharename] for the root folder on the remote computer. Example \\\\REMOTE_COMPUTER\\C$. Must include value for 'unc='");
         profile_deleter_config_default.add("unc=C$");
         profile_deleter_config_default.add("* whether specific toggles should default to true or false");
@@ -2436,23 +3892,47 @@ public class ProfileDeleter {
         profile_deleter_config_default.add("* how long (in milliseconds) to wait before displaying tooltips and dismissing tooltips once displayed");
         profile_deleter_config_default.add("tooltip_delay_timer=0");
         profile_deleter_config_default.add("tooltip_dismiss_timer=60000");
+        profile_deleter_config_default.add("* the number of lines kept in the system console. Older lines are removed from the system console but are kept in the log files");
+        profile_deleter_config_default.add("console_line_cap=5000");
         profile_deleter_config_default.add("* the number of times to repeat specfic checks and processes before registering a fail. Must include values greater than 0 for 'state_check_attempts=', 'registry_check_attempts=', 'folder_deletion_attempts=', 'registry_sid_deletion_attempts=' and 'registry_guid_deletion_attempts='");
         profile_deleter_config_default.add("state_check_attempts=10");
         profile_deleter_config_default.add("registry_check_attempts=30");
         profile_deleter_config_default.add("folder_deletion_attempts=10");
         profile_deleter_config_default.add("registry_sid_deletion_attempts=10");
         profile_deleter_config_default.add("registry_guid_deletion_attempts=10");
-        profile_deleter_config_default.add("* registry backup settings, whether to backup the registry and how long to wait (in ms) to copy the .reg file to the local computer after running the REG EXPORT command. If no wait time is set the file may not be found when trying to copy it");
+        profile_deleter_config_default.add("* registry backup settings, whether to backup the registry, how often (in ms) to check the .reg file created by the REG EXPORT command has finished being written and how long (in ms) to wait for it before registering a fail");
         profile_deleter_config_default.add("run_registry_backup=true");
-        profile_deleter_config_default.add("registry_backup_wait=2000");
+        profile_deleter_config_default.add("* registry backup mode. 'full' backs up the whole ProfileList and ProfileGuid keys during the registry check using the remote computers C:\\Temp folder. 'targeted' only backs up the SID and GUID keys of each user being deleted, straight to the local backups folder, just before they are deleted");
+        profile_deleter_config_default.add("registry_backup_mode=targeted");
+        profile_deleter_config_default.add("* whether registry backups are kept in a compressed store in the 'backups=' folder that only stores each unchanged registry key once, instead of as plain .reg files");
+        profile_deleter_config_default.add("backup_store=true");
+        profile_deleter_config_default.add("* whether files copied from the remote computer are verified by comparing checksums after copying");
+        profile_deleter_config_default.add("file_transfer_verify=true");
+        profile_deleter_config_default.add("registry_backup_poll_interval=100");
+        profile_deleter_config_default.add("registry_backup_timeout=10000");
+        profile_deleter_config_default.add("* log files are written to the 'logs=' folder as the program runs. A new log file is started when the current one reaches 'log_file_max_size=' bytes or has been written to for 'log_file_max_minutes=' minutes");
+        profile_deleter_config_default.add("log_file_max_size=10485760");
+        profile_deleter_config_default.add("log_file_max_minutes=1440");
+        profile_deleter_config_default.add("* whether every logged message is also written as a line of JSON to a .jsonl log file in the 'logs=' folder, tagged with the computer, session ID, user, stage, attempt, duration and outcome");
+        profile_deleter_config_default.add("json_log=true");
+        profile_deleter_config_default.add("* the lowest severity of message that is logged, either INFO, WARNING or ERROR. Messages below this severity are not built or written to the log. A different severity can be set for a single stage by including a new line with log_level_<stage>=<severity>, where the stage is user_list, size_check, state_check, registry_check, deletion, delete_folder, rename_folder, delete_sid, delete_guid or purge, for example log_level_state_check=WARNING");
+        profile_deleter_config_default.add("log_level=INFO");
+        profile_deleter_config_default.add("* whether a size check should only recalculate the size of user folders that have been updated since the last size check. Sizes from the last size check are cached in the 'cache=' folder");
+        profile_deleter_config_default.add("incremental_size_check=true");
+        profile_deleter_config_default.add("* whether a deletion renames each user folder and deletes its registry keys straight away, then deletes the renamed folder in the background. Renamed folders waiting to be deleted are saved in the 'cache=' folder and deleted the next time the program starts if it is closed first. 'purge_concurrency=' is the number of renamed folders deleted at once");
+        profile_deleter_config_default.add("two_phase_delete=true");
+        profile_deleter_config_default.add("purge_concurrency=2");
         profile_deleter_config_default.add("* number of concurrent threads to use for size check and deletion process. More threads can greatly reduce the run time of the program. Too many threads can heavily impact the performance of the computer as multi threading is RAM intensive and even cause the program to crash if RAM is maxed out. Must include value greater than 0 for 'number_of_pooled_threads='");
         profile_deleter_config_default.add("number_of_pooled_threads=10");
-        profile_deleter_config_default.add("* cannot delete list. Users in this list cannot be deleted by the program. Add users to the list by including a new line with cannot_delete_list=<username>");
+        profile_deleter_config_default.add("* number of concurrent threads shared by every computer open in the GUI at once. Each computer uses at most 'number_of_pooled_threads=' of them");
+        profile_deleter_config_default.add("total_pooled_threads=20");
+        profile_deleter_config_default.add("* cannot delete list. Users in this list cannot be deleted by the program. Add users to the list by including a new line with cannot_delete_list=<rule>. A rule is a username, glob:<pattern>, regex:<pattern>, sid:<pattern>, age><number>d or size><number>GB, and conditions joined with & must all match, for example cannot_delete_list=glob:svc_*");
         profile_deleter_config_default.add("cannot_delete_list=public");
         profile_deleter_config_default.add("cannot_delete_list=default");
-        profile_deleter_config_default.add("* should not delete list. Users in this list will not be flagged for deletion automatically by the program and must be flagged manually. Add users to the list by including a new line with should_not_delete_list=<username>");
+        profile_deleter_config_default.add("* should not delete list. Users in this list will not be flagged for deletion automatically by the program and must be flagged manually. Add users to the list by including a new line with should_not_delete_list=<rule>, using the same rules as the cannot delete list");
         profile_deleter_config_default.add("should_not_delete_list=administrator");
         profile_deleter_config_default.add("should_not_delete_list=intranet");
+        profile_deleter_config_default.add("* auto select rules. Editable users matching a rule are automatically flagged for deletion after the checks are run unless they are in the cannot delete or should not delete list. Add rules by including a new line with auto_select_rule=<rule>, using the same rules as the cannot delete list, for example auto_select_rule=age>90d & size>1GB");
         return profile_deleter_config_default;
     }
 
@@ -2533,13 +4013,12 @@ public class ProfileDeleter {
      * @throws InterruptedException the cmd process thread was interrupted
      */
     public boolean pingPC(String PC) throws IOException, InterruptedException {
-        logMessage("Pinging PC " + PC + " to ensure it exists and is reachable on the network", LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Pinging PC {} to ensure it exists and is reachable on the network", PC);
         boolean pc_online = false;
         try {
-            String command = "ping " + PC + " -n 1";
-            ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\cmd.exe", "/c", command);
+            ProcessBuilder builder = new ProcessBuilder("C:\\Windows\\System32\\PING.EXE", PC, "-n", "1");
             builder.redirectErrorStream(true);
-            Process p = builder.start();
+            Process p = startProcess(builder);
             BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()));
             p.waitFor();
 
@@ -2559,93 +4038,117 @@ public class ProfileDeleter {
             logMessage("Ping check has failed with error " + e.getMessage(), LOG_TYPE.ERROR, true);
             throw e;
         }
-        logMessage("Ping check has completed, result is " + pc_online, LOG_TYPE.INFO, true);
+        logMessage(LOG_TYPE.INFO, "Ping check has completed, result is {}", pc_online);
         return pc_online;
     }
 }
 
 class size_check_process implements Callable<Object> {
 
-    private int index;
+    private UserData user;
     private ProfileDeleter profile_deleter;
 
-    size_check_process(int index, ProfileDeleter profile_deleter) {
-        this.index = index;
+    size_check_process(UserData user, ProfileDeleter profile_deleter) {
+        this.user = user;
         this.profile_deleter = profile_deleter;
     }
 
     @Override
     public Object call() {
-        String folder = profile_deleter.getUserList().get(index).getName();
-        String folder_size = "";
+        String folder = user.getName();
+        long folder_size;
+        LogContext.set(folder, "size_check");
+        LogContext.setAttempt(1);
+        long start_time = System.currentTimeMillis();
+        user.setProgress("Calculating size", -1);
         try {
-            folder_size = profile_deleter.findFolderSize(folder);
-            profile_deleter.logMessage("Calculated size " + folder_size + " for folder " + folder, ProfileDeleter.LOG_TYPE.INFO, true);
-        } catch (NonNumericException | IOException e) {
-            folder_size = "Could not calculate size";
-            profile_deleter.logMessage(folder_size + " for folder " + folder, ProfileDeleter.LOG_TYPE.WARNING, true);
+            folder_size = Long.parseLong(profile_deleter.findFolderSize(folder, user));
+            profile_deleter.recordSizeCheckDuration(folder, System.currentTimeMillis() - start_time);
+            profile_deleter.logMessage(ProfileDeleter.LOG_TYPE.INFO, "Calculated size {} for folder {}", folder_size, folder);
+            profile_deleter.logOutcome("size_check", folder, 1, System.currentTimeMillis() - start_time, "success", "", ProfileDeleter.LOG_TYPE.INFO);
+        } catch (NonNumericException | IOException | NumberFormatException e) {
+            folder_size = UserData.SIZE_CHECK_FAILED;
+            profile_deleter.logMessage("Could not calculate size for folder " + folder, ProfileDeleter.LOG_TYPE.WARNING, true);
             profile_deleter.logMessage(e.getMessage(), ProfileDeleter.LOG_TYPE.ERROR, true);
+            profile_deleter.logOutcome("size_check", folder, 1, System.currentTimeMillis() - start_time, "failed", e.getMessage(), ProfileDeleter.LOG_TYPE.WARNING);
+        } finally {
+            LogContext.clear();
         }
-        profile_deleter.getUserList().get(index).setSize(folder_size);
+        user.setSize(folder_size);
+        user.setProgress(folder_size < 0 ? "Size check failed" : "Size checked", 100);
         return null;
     }
 }
 
 class state_check_process implements Callable<Object> {
 
-    private int index;
+    private UserData user_data;
     private ProfileDeleter profile_deleter;
 
-    state_check_process(int index, ProfileDeleter profile_deleter) {
-        this.index = index;
+    state_check_process(UserData user_data, ProfileDeleter profile_deleter) {
+        this.user_data = user_data;
         this.profile_deleter = profile_deleter;
     }
 
     @Override
     public Object call() {
-        String user = profile_deleter.getUserList().get(index).getName();
-        profile_deleter.logMessage("Checking editable state of folder " + user, ProfileDeleter.LOG_TYPE.INFO, true);
+        String user = user_data.getName();
+        LogContext.set(user, "state_check");
+        long start_time = System.currentTimeMillis();
+        String outcome = "failed";
+        String output = "";
+        profile_deleter.logMessage(ProfileDeleter.LOG_TYPE.INFO, "Checking editable state of folder {}", user);
         try {
-            if (!profile_deleter.getCannotDeleteList().contains(user.toLowerCase())) {
+            if (!user_data.getCannotDelete()) {
                 int count = 1;
                 boolean run = true;
                 while (run) {
+                    LogContext.setAttempt(count);
+                    user_data.setProgress("Checking state, attempt " + count + " of " + profile_deleter.getStateCheckAttempts(), (count - 1) * 100 / profile_deleter.getStateCheckAttempts());
                     if (count > 1) {
-                        profile_deleter.logMessage("Attempt " + count + " at checking state for user " + user, ProfileDeleter.LOG_TYPE.INFO, true);
+                        profile_deleter.logMessage(ProfileDeleter.LOG_TYPE.INFO, "Attempt {} at checking state for user {}", count, user);
                     }
                     try {
                         profile_deleter.directoryRename(profile_deleter.getRemoteComputer(), "C:\\users\\", user, user);
-                        profile_deleter.getUserList().get(index).setState("Editable");
-                        if (profile_deleter.getDeleteAllUsers() && !profile_deleter.getShouldNotDeleteList().contains(user.toLowerCase())) {
-                            profile_deleter.getUserList().get(index).setDelete(true);
+                        user_data.setState(UserData.STATE.EDITABLE);
+                        if (profile_deleter.getDeleteAllUsers() && !user_data.getShouldNotDelete()) {
+                            user_data.setDelete(true, true);
                         }
                         run = false;
-                        profile_deleter.logMessage("User " + user + " determined to be editable", ProfileDeleter.LOG_TYPE.INFO, true);
+                        outcome = "editable";
+                        profile_deleter.logMessage(ProfileDeleter.LOG_TYPE.INFO, "User {} determined to be editable", user);
                     } catch (CannotEditException e) {
-                        if (count >= profile_deleter.getStateCheckAttempts()) {
-                            profile_deleter.getUserList().get(index).setDelete(false);
-                            profile_deleter.logMessage("User " + user + " determined to be uneditable, all attempts have failed, state set to uneditable", ProfileDeleter.LOG_TYPE.INFO, true);
+                        if (count >= profile_deleter.getStateCheckAttempts() || profile_deleter.getCancelRequested()) {
+                            user_data.setDelete(false);
+                            profile_deleter.logMessage(ProfileDeleter.LOG_TYPE.INFO, "User {} determined to be uneditable, all attempts have failed, state set to uneditable", user);
                             run = false;
                             throw e;
                         } else {
                             count++;
-                            profile_deleter.logMessage("User " + user + " determined to be uneditable, running state check again", ProfileDeleter.LOG_TYPE.INFO, true);
+                            profile_deleter.logMessage(ProfileDeleter.LOG_TYPE.INFO, "User {} determined to be uneditable, running state check again", user);
                         }
                     }
                 }
             } else {
-                profile_deleter.getUserList().get(index).setState("Uneditable");
-                profile_deleter.getUserList().get(index).setDelete(false);
+                user_data.setState(UserData.STATE.UNEDITABLE);
+                user_data.setDelete(false);
+                outcome = "cannot_delete";
                 profile_deleter.logMessage("User is in the cannot delete list, skipping check for this user", ProfileDeleter.LOG_TYPE.INFO, true);
             }
         } catch (CannotEditException e) {
-            String message = "Uneditable";
-            profile_deleter.logMessage(message + ". User may be logged in or PC may need to be restarted", ProfileDeleter.LOG_TYPE.WARNING, true);
-            profile_deleter.getUserList().get(index).setState(message);
-            profile_deleter.getUserList().get(index).setDelete(false);
+            profile_deleter.logMessage("Uneditable. User may be logged in or PC may need to be restarted", ProfileDeleter.LOG_TYPE.WARNING, true);
+            user_data.setState(UserData.STATE.UNEDITABLE);
+            user_data.setDelete(false);
+            outcome = "uneditable";
+            output = e.getMessage();
         } catch (IOException | InterruptedException e) {
             profile_deleter.logMessage("Editable state check has failed, you may not have permission to rename folders in the user directory or PC may be offline", ProfileDeleter.LOG_TYPE.ERROR, true);
             profile_deleter.logMessage(e.getMessage(), ProfileDeleter.LOG_TYPE.ERROR, true);
+            output = e.getMessage();
+        } finally {
+            user_data.setProgress(outcome.equals("failed") ? "State check failed" : "State checked", 100);
+            profile_deleter.logOutcome("state_check", user, Math.max(LogContext.getAttempt(), 1), System.currentTimeMillis() - start_time, outcome, output, outcome.equals("failed") ? ProfileDeleter.LOG_TYPE.ERROR : ProfileDeleter.LOG_TYPE.INFO);
+            LogContext.clear();
         }
         return null;
     }
@@ -2653,37 +4156,72 @@ class state_check_process implements Callable<Object> {
 
 class delete_user_process implements Callable<Object> {
 
+    /**
+     * Result of a step that was stopped or never started because the deletion
+     * was cancelled.
+     */
+    private static final String CANCELLED = "Deletion was cancelled before this step finished";
+
     private UserData user;
     private ProfileDeleter profile_deleter;
-    private List<String> deleted_folders;
+    private ConcurrentHashMap<String, DeletionResult> deletion_results;
+    private ConcurrentLinkedQueue<DeletionResult> completed_deletion_results;
     private AtomicInteger number_of_users_deleted;
 
-    delete_user_process(UserData user, ProfileDeleter profile_deleter, List<String> deleted_folders, AtomicInteger number_of_users_deleted) {
+    delete_user_process(UserData user, ProfileDeleter profile_deleter, ConcurrentHashMap<String, DeletionResult> deletion_results, ConcurrentLinkedQueue<DeletionResult> completed_deletion_results, AtomicInteger number_of_users_deleted) {
         this.user = user;
         this.profile_deleter = profile_deleter;
-        this.deleted_folders = deleted_folders;
+        this.deletion_results = deletion_results;
+        this.completed_deletion_results = completed_deletion_results;
         this.number_of_users_deleted = number_of_users_deleted;
     }
 
     @Override
     public Object call() {
-        profile_deleter.logMessage("User " + user.getName() + " is flagged for deletion", ProfileDeleter.LOG_TYPE.INFO, true);
+        profile_deleter.logMessage(ProfileDeleter.LOG_TYPE.INFO, "User {} is flagged for deletion", user.getName());
+        DeletionResult result = new DeletionResult(user);
         boolean folder_delete = false;
         boolean sid_delete = false;
         boolean guid_delete = false;
         int error_count = 0;
-        String deleted_user_success = "";
         String deleted_user_folder_success = "";
         String deleted_user_sid_success = "";
         String deleted_user_guid_success = "";
-        while (!folder_delete && error_count < profile_deleter.getFolderDeletionAttempts()) {
+        boolean targeted_backup = profile_deleter.getRunRegistryBackup() && profile_deleter.getRegistryBackupMode().equals("targeted");
+        boolean two_phase_delete = profile_deleter.getTwoPhaseDelete();
+        String renamed_folder = user.getName() + PurgeQueue.PURGE_SUFFIX + profile_deleter.getSessionId();
+        long step_start_time = System.currentTimeMillis();
+        LogContext.set(user.getName(), two_phase_delete ? "rename_folder" : "delete_folder");
+        user.setProgress(two_phase_delete ? "Renaming folder" : "Deleting folder", 0);
+        while (!folder_delete && error_count < profile_deleter.getFolderDeletionAttempts() && !profile_deleter.getCancelRequested()) {
+            LogContext.setAttempt(error_count + 1);
             try {
-                profile_deleter.directoryDelete(profile_deleter.getUsersDirectory() + user.getName());
-                deleted_user_folder_success = "Yes";
+                if (two_phase_delete) {
+                    // Renaming is a single directory operation, the slow recursive delete of the renamed folder is left to the purge queue.
+                    // It is not cancellable as stopping psexec after the remote REN has run would leave the folder renamed with no record of it.
+                    boolean interrupted = Thread.interrupted();
+                    try {
+                        profile_deleter.directoryRename(profile_deleter.getRemoteComputer(), "C:\\users\\", user.getName(), renamed_folder, false);
+                    } finally {
+                        if (interrupted) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    deleted_user_folder_success = "Renamed to " + renamed_folder + ", queued for purge";
+                    profile_deleter.logMessage(ProfileDeleter.LOG_TYPE.INFO, "Successfully renamed user directory for {} to {}", user.getName(), renamed_folder);
+                } else {
+                    profile_deleter.directoryDelete(profile_deleter.getUsersDirectory() + user.getName());
+                    deleted_user_folder_success = "Yes";
+                    profile_deleter.logMessage(ProfileDeleter.LOG_TYPE.INFO, "Successfully deleted user directory for {}", user.getName());
+                }
                 folder_delete = true;
-                profile_deleter.logMessage("Successfully deleted user directory for " + user.getName(), ProfileDeleter.LOG_TYPE.INFO, true);
             } catch (IOException | CannotEditException | InterruptedException e) {
-                if (error_count >= profile_deleter.getFolderDeletionAttempts() - 1) {
+                if (two_phase_delete && new File(profile_deleter.getUsersDirectory() + renamed_folder).isDirectory()) {
+                    // psexec can fail after the remote REN has run, in which case every retry would fail as the original folder is gone.
+                    deleted_user_folder_success = "Renamed to " + renamed_folder + ", queued for purge";
+                    profile_deleter.logMessage("Rename of user directory " + user.getName() + " reported an error but the folder has been renamed to " + renamed_folder + ". Error was " + e.getMessage(), ProfileDeleter.LOG_TYPE.WARNING, true);
+                    folder_delete = true;
+                } else if (error_count >= profile_deleter.getFolderDeletionAttempts() - 1) {
                     String message = "Failed to delete user directory " + user.getName() + ". Error is " + e.getMessage();
                     deleted_user_folder_success = message;
                     profile_deleter.logMessage(message, ProfileDeleter.LOG_TYPE.ERROR, true);
@@ -2693,63 +4231,188 @@ class delete_user_process implements Callable<Object> {
                 error_count++;
             }
         }
-        error_count = 0;
-        while (!sid_delete && error_count < profile_deleter.getRegistrySidDeletionAttempts()) {
-            try {
-                if (user.getSid().compareTo("") != 0) {
-                    profile_deleter.registryDelete(profile_deleter.getRemoteComputer(), "HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileList\\" + user.getSid());
-                    deleted_user_sid_success = "Yes";
-                    profile_deleter.logMessage("Successfully deleted SID " + user.getSid() + " for user " + user.getName(), ProfileDeleter.LOG_TYPE.INFO, true);
-                } else {
-                    deleted_user_sid_success = "SID is blank";
-                    profile_deleter.logMessage("SID for user " + user.getName() + " is blank", ProfileDeleter.LOG_TYPE.WARNING, true);
-                }
-                sid_delete = true;
-            } catch (IOException | CannotEditException | InterruptedException e) {
-                if (error_count >= profile_deleter.getRegistrySidDeletionAttempts() - 1) {
-                    String message = "Failed to delete user SID " + user.getSid() + " from registry. Error is " + e.getMessage();
-                    deleted_user_sid_success = message;
-                    profile_deleter.logMessage(message, ProfileDeleter.LOG_TYPE.ERROR, true);
-                } else {
-                    profile_deleter.logMessage("Failed to delete user SID " + user.getSid() + " on attempt " + (error_count + 1) + ". Will try again", ProfileDeleter.LOG_TYPE.WARNING, true);
+        if (!folder_delete && deleted_user_folder_success.isEmpty()) {
+            deleted_user_folder_success = CANCELLED;
+        }
+        result.setStepResult(DeletionResult.STEP.FOLDER, folder_delete, deleted_user_folder_success, System.currentTimeMillis() - step_start_time);
+        result.setFolderRenamed(two_phase_delete && folder_delete);
+        logStepOutcome(folder_delete, deleted_user_folder_success, System.currentTimeMillis() - step_start_time);
+        step_start_time = System.currentTimeMillis();
+        LogContext.set(user.getName(), "delete_sid");
+        if (folder_delete) {
+            user.setProgress(two_phase_delete ? "Folder renamed, deleting SID" : "Folder deleted, deleting SID", 33);
+        } else {
+            user.setProgress("Folder not deleted, deleting SID", 33);
+        }
+        if (profile_deleter.getCancelRequested()) {
+            deleted_user_sid_success = CANCELLED;
+        } else if (targeted_backup && user.getSid().compareTo("") != 0 && !backupRegistryKey(RegistryProfileIndex.PROFILE_LIST_KEY + "\\" + user.getSid(), "ProfileList_" + user.getSid())) {
+            deleted_user_sid_success = "Registry backup failed, SID not deleted";
+        } else {
+            error_count = 0;
+            while (!sid_delete && error_count < profile_deleter.getRegistrySidDeletionAttempts() && !profile_deleter.getCancelRequested()) {
+                LogContext.setAttempt(error_count + 1);
+                try {
+                    if (user.getSid().compareTo("") != 0) {
+                        profile_deleter.registryDelete(profile_deleter.getRemoteComputer(), "HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileList\\" + user.getSid());
+                        deleted_user_sid_success = "Yes";
+                        profile_deleter.logMessage(ProfileDeleter.LOG_TYPE.INFO, "Successfully deleted SID {} for user {}", user.getSid(), user.getName());
+                    } else {
+                        deleted_user_sid_success = "SID is blank";
+                        profile_deleter.logMessage("SID for user " + user.getName() + " is blank", ProfileDeleter.LOG_TYPE.WARNING, true);
+                    }
+                    sid_delete = true;
+                } catch (IOException | CannotEditException | InterruptedException e) {
+                    if (error_count >= profile_deleter.getRegistrySidDeletionAttempts() - 1) {
+                        String message = "Failed to delete user SID " + user.getSid() + " from registry. Error is " + e.getMessage();
+                        deleted_user_sid_success = message;
+                        profile_deleter.logMessage(message, ProfileDeleter.LOG_TYPE.ERROR, true);
+                    } else {
+                        profile_deleter.logMessage("Failed to delete user SID " + user.getSid() + " on attempt " + (error_count + 1) + ". Will try again", ProfileDeleter.LOG_TYPE.WARNING, true);
+                    }
+                    error_count++;
                 }
-                error_count++;
             }
         }
-        error_count = 0;
-        while (!guid_delete && error_count < profile_deleter.getRegistryGuidDeletionAttempts()) {
-            try {
-                if (user.getGuid().compareTo("") != 0) {
-                    profile_deleter.registryDelete(profile_deleter.getRemoteComputer(), "HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileGuid\\" + user.getGuid());
-                    deleted_user_guid_success = "Yes";
-                    profile_deleter.logMessage("Successfully deleted GUID " + user.getGuid() + " for user " + user.getName(), ProfileDeleter.LOG_TYPE.INFO, true);
-                } else {
-                    deleted_user_guid_success = "GUID is blank";
-                    profile_deleter.logMessage("GUID for user " + user.getName() + " is blank", ProfileDeleter.LOG_TYPE.WARNING, true);
-                }
-                guid_delete = true;
-            } catch (IOException | CannotEditException | InterruptedException e) {
-                if (error_count >= profile_deleter.getRegistryGuidDeletionAttempts() - 1) {
-                    String message = "Failed to delete user GUID " + user.getGuid() + " from registry. Error is " + e.getMessage();
-                    deleted_user_guid_success = message;
-                    profile_deleter.logMessage(message, ProfileDeleter.LOG_TYPE.ERROR, true);
-                } else {
-                    profile_deleter.logMessage("Failed to delete user GUID " + user.getGuid() + " on attempt " + (error_count + 1) + ". Will try again", ProfileDeleter.LOG_TYPE.WARNING, true);
+        if (!sid_delete && deleted_user_sid_success.isEmpty()) {
+            deleted_user_sid_success = CANCELLED;
+        }
+        result.setStepResult(DeletionResult.STEP.SID, sid_delete, deleted_user_sid_success, System.currentTimeMillis() - step_start_time);
+        logStepOutcome(sid_delete, deleted_user_sid_success, System.currentTimeMillis() - step_start_time);
+        step_start_time = System.currentTimeMillis();
+        LogContext.set(user.getName(), "delete_guid");
+        user.setProgress(sid_delete ? "SID deleted, deleting GUID" : "SID not deleted, deleting GUID", 67);
+        if (profile_deleter.getCancelRequested()) {
+            deleted_user_guid_success = CANCELLED;
+        } else if (targeted_backup && user.getGuid().compareTo("") != 0 && !backupRegistryKey(RegistryProfileIndex.PROFILE_GUID_KEY + "\\" + user.getGuid(), "ProfileGuid_" + user.getGuid())) {
+            deleted_user_guid_success = "Registry backup failed, GUID not deleted";
+        } else {
+            error_count = 0;
+            while (!guid_delete && error_count < profile_deleter.getRegistryGuidDeletionAttempts() && !profile_deleter.getCancelRequested()) {
+                LogContext.setAttempt(error_count + 1);
+                try {
+                    if (user.getGuid().compareTo("") != 0) {
+                        profile_deleter.registryDelete(profile_deleter.getRemoteComputer(), "HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileGuid\\" + user.getGuid());
+                        deleted_user_guid_success = "Yes";
+                        profile_deleter.logMessage(ProfileDeleter.LOG_TYPE.INFO, "Successfully deleted GUID {} for user {}", user.getGuid(), user.getName());
+                    } else {
+                        deleted_user_guid_success = "GUID is blank";
+                        profile_deleter.logMessage("GUID for user " + user.getName() + " is blank", ProfileDeleter.LOG_TYPE.WARNING, true);
+                    }
+                    guid_delete = true;
+                } catch (IOException | CannotEditException | InterruptedException e) {
+                    if (error_count >= profile_deleter.getRegistryGuidDeletionAttempts() - 1) {
+                        String message = "Failed to delete user GUID " + user.getGuid() + " from registry. Error is " + e.getMessage();
+                        deleted_user_guid_success = message;
+                        profile_deleter.logMessage(message, ProfileDeleter.LOG_TYPE.ERROR, true);
+                    } else {
+                        profile_deleter.logMessage("Failed to delete user GUID " + user.getGuid() + " on attempt " + (error_count + 1) + ". Will try again", ProfileDeleter.LOG_TYPE.WARNING, true);
+                    }
+                    error_count++;
                 }
-                error_count++;
             }
-            if (folder_delete && sid_delete && guid_delete) {
-                deleted_user_success = "Yes";
+        }
+        if (!guid_delete && deleted_user_guid_success.isEmpty()) {
+            deleted_user_guid_success = CANCELLED;
+        }
+        result.setStepResult(DeletionResult.STEP.GUID, guid_delete, deleted_user_guid_success, System.currentTimeMillis() - step_start_time);
+        logStepOutcome(guid_delete, deleted_user_guid_success, System.currentTimeMillis() - step_start_time);
+        if (two_phase_delete && folder_delete) {
+            LogContext.set(user.getName(), "purge");
+            if (sid_delete && guid_delete) {
+                try {
+                    profile_deleter.getPurgeQueue().add(profile_deleter.getRemoteComputer(), profile_deleter.getUsersDirectory() + renamed_folder);
+                } catch (IOException e) {
+                    profile_deleter.logMessage("Failed to save purge queue, renamed folder " + renamed_folder + " will not be purged if the program is closed first. Error is " + e.getMessage(), ProfileDeleter.LOG_TYPE.WARNING, true);
+                }
             } else {
-                deleted_user_success = "No";
+                // ProfileList still points at the original folder, so the user would get a temporary profile unless it is renamed back.
+                LogContext.set(user.getName(), "rename_back");
+                step_start_time = System.currentTimeMillis();
+                String folder_result;
+                boolean renamed_back = false;
+                // A cancelled deletion interrupts this thread, which would stop the rename back from waiting for psexec.
+                boolean interrupted = Thread.interrupted();
+                try {
+                    profile_deleter.directoryRename(profile_deleter.getRemoteComputer(), "C:\\users\\", renamed_folder, user.getName(), false);
+                    renamed_back = true;
+                    folder_result = "Renamed back to " + user.getName() + " as the registry keys were not all deleted";
+                    profile_deleter.logMessage("Registry keys for user " + user.getName() + " were not all deleted, folder " + renamed_folder + " has been renamed back to " + user.getName(), ProfileDeleter.LOG_TYPE.WARNING, true);
+                } catch (IOException | CannotEditException | InterruptedException e) {
+                    folder_result = "Registry keys were not all deleted and the folder could not be renamed back, it has been left as " + renamed_folder + ". Error is " + e.getMessage();
+                    profile_deleter.logMessage("Registry keys for user " + user.getName() + " were not all deleted and folder " + renamed_folder + " could not be renamed back to " + user.getName() + ", rename it back manually. Error is " + e.getMessage(), ProfileDeleter.LOG_TYPE.ERROR, true);
+                } finally {
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                long rename_back_duration = System.currentTimeMillis() - step_start_time;
+                result.setStepResult(DeletionResult.STEP.FOLDER, false, folder_result, result.getDuration(DeletionResult.STEP.FOLDER) + rename_back_duration);
+                logStepOutcome(renamed_back, folder_result, rename_back_duration);
             }
         }
-        String user_name = user.getName().equals("") ? "No name set" : user.getName();
-        String user_sid = user.getSid().equals("") ? "No SID set" : user.getSid();
-        String user_guid = user.getGuid().equals("") ? "No GUID set" : user.getGuid();
-        String user_size = user.getSize().equals("") ? "No size set" : user.getSize();
-        deleted_folders.set(deleted_folders.indexOf(user.getName()), user_name + '\t' + deleted_user_success + '\t' + deleted_user_folder_success + '\t' + deleted_user_sid_success + '\t' + deleted_user_guid_success + '\t' + user_sid + '\t' + user_guid + '\t' + user_size);
+        LogContext.clear();
+        user.setProgress(result.getSuccess() ? "Deleted" : "Deletion failed, see deletion report", 100);
+        deletion_results.put(user.getName(), result);
+        completed_deletion_results.offer(result);
         number_of_users_deleted.incrementAndGet();
         return null;
     }
+
+    /**
+     * Logs the outcome of the current deletion step to the structured log.
+     *
+     * @param deleted whether the step deleted what it was meant to
+     * @param step_result the result text recorded for the step
+     * @param duration how long the step took in milliseconds
+     */
+    private void logStepOutcome(boolean deleted, String step_result, long duration) {
+        String outcome;
+        String output = "";
+        if (deleted) {
+            outcome = step_result.equals("Yes") || step_result.startsWith("Renamed") ? "success" : "skipped";
+        } else {
+            outcome = "failed";
+            output = step_result;
+        }
+        profile_deleter.logOutcome(LogContext.getStage(), user.getName(), Math.max(LogContext.getAttempt(), 1), duration, outcome, output, deleted ? ProfileDeleter.LOG_TYPE.INFO : ProfileDeleter.LOG_TYPE.ERROR);
+    }
+
+    /**
+     * Backs up a registry key of the user to the local backup folder before it
+     * is deleted.
+     *
+     * @param reg_key the registry key to backup
+     * @param backup_name the name to give the backup file, without the
+     * computer name or file extension
+     * @return whether the registry key was backed up
+     */
+    private boolean backupRegistryKey(String reg_key, String backup_name) {
+        if (profile_deleter.getLocalDataDirectory().compareTo("") == 0) {
+            profile_deleter.logMessage("Local backup folder has not been created, unable to backup registry key " + reg_key, ProfileDeleter.LOG_TYPE.ERROR, true);
+            return false;
+        }
+        String filename = profile_deleter.getLocalDataDirectory() + "\\" + profile_deleter.getRemoteComputer().replace('.', '_') + "_" + backup_name + ".reg";
+        int count = 1;
+        while (true) {
+            try {
+                profile_deleter.registryBackupTargeted(profile_deleter.getRemoteComputer(), reg_key, filename);
+                if (profile_deleter.getBackupStoreEnabled()) {
+                    try {
+                        profile_deleter.storeRegistryBackup(filename, backup_name);
+                    } catch (IOException e) {
+                        profile_deleter.logMessage("Unable to add registry backup " + filename + " to backup store, plain backup file has been kept. Error is " + e.getMessage(), ProfileDeleter.LOG_TYPE.WARNING, true);
+                    }
+                }
+                return true;
+            } catch (IOException | CannotEditException | InterruptedException e) {
+                if (count >= profile_deleter.getRegistryCheckAttempts() || profile_deleter.getCancelRequested()) {
+                    profile_deleter.logMessage("Failed to backup registry key " + reg_key + " for user " + user.getName() + ", registry key will not be deleted. Error is " + e.getMessage(), ProfileDeleter.LOG_TYPE.ERROR, true);
+                    return false;
+                }
+                profile_deleter.logMessage("Attempt " + count + " at backing up registry key " + reg_key + " failed", ProfileDeleter.LOG_TYPE.WARNING, true);
+                count++;
+            }
+        }
+    }
 }
@@ -0,0 +1,383 @@
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.table.DefaultTableCellRenderer;
+
+/**
+ * Top level window of the GUI, showing each computer being worked on as a tab.
+ * <p>
+ * Each tab is a ProfileDeleterGUI with its own ProfileDeleter session, so
+ * checks and deletions can run on several computers at once. The size check,
+ * state check and deletion tasks of every computer share a single thread pool
+ * of 'total_pooled_threads=' threads.<br>
+ * A summary table above the tabs shows the stage, number of users selected
+ * and size selected for deletion on each computer. Selecting a row in the
+ * summary table shows the tab of that computer.<br>
+ * The program cannot be exited while checks or a deletion are running on any
+ * computer, so a deletion is never stopped part way through a user.
+ */
+public class ProfileDeleterDashboard extends JFrame implements ActionListener, ChangeListener, ListSelectionListener {
+
+    /**
+     * Class attributes.
+     */
+    private final List<ProfileDeleterGUI> sessions;
+    private final ExecutorService worker_executor;
+    private ExecutorService shared_thread_pool;
+    private int total_pooled_threads;
+    private boolean changing_selection;
+    private ProfileDeleter purge_session;
+
+    /**
+     * Swing GUI elements.
+     */
+    private JButton add_computer_button;
+    private GridBagConstraints add_computer_button_gc;
+    private JButton close_computer_button;
+    private GridBagConstraints close_computer_button_gc;
+    private JButton exit_button;
+    private GridBagConstraints exit_button_gc;
+    private JTable summary_table;
+    private SessionSummaryTableModel summary_table_model;
+    private JScrollPane summary_scroll_pane;
+    private GridBagConstraints summary_scroll_pane_gc;
+    private JTabbedPane sessions_tabbed_pane;
+    private GridBagConstraints sessions_tabbed_pane_gc;
+
+    /**
+     * Constructor for ProfileDeleterDashboard class.
+     * <p>
+     * Opens the dashboard with a tab for a single computer and resumes purging
+     * any renamed folders left in the purge queue.
+     *
+     * @throws UnrecoverableException if a configuration file cannot be loaded
+     */
+    public ProfileDeleterDashboard() throws UnrecoverableException {
+        super("Profile Deleter");
+        sessions = new ArrayList<>();
+        // SwingWorker threads spend most of their time waiting on pooled tasks or remote processes, so each computer gets its own.
+        worker_executor = Executors.newCachedThreadPool();
+        shared_thread_pool = null;
+        total_pooled_threads = 0;
+        changing_selection = false;
+
+        // Configurations for the top level JFrame of the GUI.
+        setMinimumSize(new Dimension(1150, 750));
+        setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                exitButton();
+            }
+        });
+        getContentPane().setLayout(new GridBagLayout());
+
+        // Initialisation of add computer button GUI element.
+        add_computer_button = new JButton("Add Computer");
+        add_computer_button.setToolTipText("Opens a new tab to work on another computer at the same time");
+        add_computer_button.setActionCommand("AddComputer");
+        add_computer_button.addActionListener(this);
+        add_computer_button_gc = new GridBagConstraints();
+        add_computer_button_gc.fill = GridBagConstraints.BOTH;
+        add_computer_button_gc.gridx = 0;
+        add_computer_button_gc.gridy = 0;
+        add_computer_button_gc.gridwidth = 1;
+        add_computer_button_gc.gridheight = 1;
+
+        // Initialisation of close computer button GUI element.
+        close_computer_button = new JButton("Close Computer");
+        close_computer_button.setToolTipText("Closes the tab of the selected computer. Cannot close a computer while checks or a deletion are running on it");
+        close_computer_button.setActionCommand("CloseComputer");
+        close_computer_button.addActionListener(this);
+        close_computer_button_gc = new GridBagConstraints();
+        close_computer_button_gc.fill = GridBagConstraints.BOTH;
+        close_computer_button_gc.gridx = 1;
+        close_computer_button_gc.gridy = 0;
+        close_computer_button_gc.gridwidth = 1;
+        close_computer_button_gc.gridheight = 1;
+
+        // Initialisation of exit button GUI element.
+        exit_button = new JButton("Exit");
+        exit_button.setToolTipText("Exits the program. Cannot exit while checks or a deletion are running on any computer");
+        exit_button.setActionCommand("Exit");
+        exit_button.addActionListener(this);
+        exit_button_gc = new GridBagConstraints();
+        exit_button_gc.fill = GridBagConstraints.BOTH;
+        exit_button_gc.gridx = 2;
+        exit_button_gc.gridy = 0;
+        exit_button_gc.gridwidth = 1;
+        exit_button_gc.gridheight = 1;
+
+        // Initialisation of summary table GUI element.
+        summary_table_model = new SessionSummaryTableModel(sessions);
+        summary_table = new JTable(summary_table_model);
+        summary_table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        summary_table.getTableHeader().setReorderingAllowed(false);
+        summary_table.getSelectionModel().addListSelectionListener(this);
+        summary_table.getColumnModel().getColumn(SessionSummaryTableModel.SIZE_COLUMN).setCellRenderer(new DefaultTableCellRenderer() {
+            @Override
+            public void setValue(Object value) {
+                setText(ProfileDeleterGUI.sizeToFormattedString(value, "Not calculated"));
+                setHorizontalAlignment(DefaultTableCellRenderer.RIGHT);
+            }
+        });
+        summary_scroll_pane = new JScrollPane(summary_table);
+        summary_scroll_pane.setPreferredSize(new Dimension(1150, 120));
+        summary_scroll_pane_gc = new GridBagConstraints();
+        summary_scroll_pane_gc.fill = GridBagConstraints.BOTH;
+        summary_scroll_pane_gc.gridx = 0;
+        summary_scroll_pane_gc.gridy = 1;
+        summary_scroll_pane_gc.gridwidth = GridBagConstraints.REMAINDER;
+        summary_scroll_pane_gc.weightx = 1;
+
+        // Initialisation of computer tabs GUI element.
+        sessions_tabbed_pane = new JTabbedPane();
+        sessions_tabbed_pane.addChangeListener(this);
+        sessions_tabbed_pane_gc = new GridBagConstraints();
+        sessions_tabbed_pane_gc.fill = GridBagConstraints.BOTH;
+        sessions_tabbed_pane_gc.gridx = 0;
+        sessions_tabbed_pane_gc.gridy = 2;
+        sessions_tabbed_pane_gc.gridwidth = GridBagConstraints.REMAINDER;
+        sessions_tabbed_pane_gc.weightx = 1;
+        sessions_tabbed_pane_gc.weighty = 1;
+
+        getContentPane().add(add_computer_button, add_computer_button_gc);
+        getContentPane().add(close_computer_button, close_computer_button_gc);
+        getContentPane().add(exit_button, exit_button_gc);
+        getContentPane().add(summary_scroll_pane, summary_scroll_pane_gc);
+        getContentPane().add(sessions_tabbed_pane, sessions_tabbed_pane_gc);
+
+        addComputer();
+        // Renamed folders are purged by a session of their own so purges carry on after the computer that queued them is closed.
+        purge_session = new ProfileDeleter();
+        int purges_resumed = purge_session.getPurgeQueue().resume(purge_session);
+        if (purges_resumed > 0) {
+            String message = "Resumed purging " + purges_resumed + " renamed folders left from a previous deletion";
+            purge_session.logMessage(message, ProfileDeleter.LOG_TYPE.WARNING, true);
+            sessions.get(0).getProfileDeleter().logMessage(message, ProfileDeleter.LOG_TYPE.WARNING, true);
+        }
+        pack();
+        setLocationRelativeTo(null);
+        setVisible(true);
+    }
+
+    /**
+     * Opens a new tab with its own ProfileDeleter session.
+     * <p>
+     * The shared thread pool is created from the 'total_pooled_threads='
+     * setting of the first session opened.
+     *
+     * @throws UnrecoverableException if a configuration file cannot be loaded
+     */
+    private void addComputer() throws UnrecoverableException {
+        ProfileDeleterGUI session = new ProfileDeleterGUI(this, worker_executor);
+        if (shared_thread_pool == null) {
+            total_pooled_threads = session.getProfileDeleter().getTotalPooledThreads();
+            shared_thread_pool = Executors.newFixedThreadPool(total_pooled_threads);
+        }
+        session.getProfileDeleter().setSharedThreadPool(shared_thread_pool, total_pooled_threads);
+        sessions.add(session);
+        summary_table_model.fireTableRowsInserted(sessions.size() - 1, sessions.size() - 1);
+        sessions_tabbed_pane.addTab("New Computer", session);
+        sessions_tabbed_pane.setSelectedComponent(session);
+    }
+
+    /**
+     * Run when add computer button is pressed.
+     * <p>
+     * Opens a new tab. If the configuration files cannot be loaded the error
+     * is logged to the selected computer instead.
+     */
+    private void addComputerButton() {
+        try {
+            addComputer();
+        } catch (UnrecoverableException e) {
+            ProfileDeleterGUI selected_session = getSelectedSession();
+            if (selected_session != null) {
+                selected_session.getProfileDeleter().logMessage("Failed to open a new computer. Error is " + e.getMessage(), ProfileDeleter.LOG_TYPE.ERROR, true);
+            }
+        }
+    }
+
+    /**
+     * Run when close computer button is pressed.
+     * <p>
+     * Closes the tab of the selected computer unless checks or a deletion are
+     * running on it.
+     */
+    private void closeComputerButton() {
+        ProfileDeleterGUI session = getSelectedSession();
+        if (session == null) {
+            return;
+        }
+        if (session.isRunning()) {
+            session.getProfileDeleter().logMessage("Cannot close computer while checks or a deletion are running, cancel them first", ProfileDeleter.LOG_TYPE.WARNING, true);
+            return;
+        }
+        int index = sessions.indexOf(session);
+        session.close();
+        sessions.remove(index);
+        summary_table_model.fireTableRowsDeleted(index, index);
+        sessions_tabbed_pane.remove(session);
+    }
+
+    /**
+     * Run when exit button is pressed or the window is closed.
+     * <p>
+     * Closes every computer and exits the program unless checks or a deletion
+     * are running on any computer, in which case the first running computer is
+     * shown and a warning is logged to each running computer instead.
+     */
+    private void exitButton() {
+        ProfileDeleterGUI first_running_session = null;
+        for (ProfileDeleterGUI session : sessions) {
+            if (session.isRunning()) {
+                if (first_running_session == null) {
+                    first_running_session = session;
+                }
+                session.getProfileDeleter().logMessage("Cannot exit while checks or a deletion are running, cancel them or wait for them to finish first", ProfileDeleter.LOG_TYPE.WARNING, true);
+            }
+        }
+        if (first_running_session != null) {
+            sessions_tabbed_pane.setSelectedComponent(first_running_session);
+            return;
+        }
+        for (ProfileDeleterGUI session : sessions) {
+            session.close();
+        }
+        // Folders still being purged stay in the purge queue file and are purged the next time the program starts.
+        purge_session.close();
+        worker_executor.shutdown();
+        if (shared_thread_pool != null) {
+            shared_thread_pool.shutdown();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Gets the computer in the selected tab.
+     *
+     * @return the computer in the selected tab, or null if no computers are
+     * open
+     */
+    private ProfileDeleterGUI getSelectedSession() {
+        Component selected_component = sessions_tabbed_pane.getSelectedComponent();
+        return selected_component instanceof ProfileDeleterGUI ? (ProfileDeleterGUI) selected_component : null;
+    }
+
+    /**
+     * Redraws the summary row and tab of a computer and updates the window
+     * title if the computer is selected.
+     *
+     * @param session the computer that has changed
+     */
+    private void sessionUpdated(ProfileDeleterGUI session) {
+        int index = sessions.indexOf(session);
+        if (index < 0) {
+            return;
+        }
+        summary_table_model.fireTableRowsUpdated(index, index);
+        String remote_computer = session.getProfileDeleter().getRemoteComputer();
+        sessions_tabbed_pane.setTitleAt(index, remote_computer == null || remote_computer.isEmpty() ? "New Computer" : remote_computer);
+        if (session == getSelectedSession()) {
+            setTitle(session.getTitle());
+        }
+    }
+
+    /**
+     * Overridden from ActionListener.
+     * <p>
+     * Handles the buttons of the dashboard and the "SessionUpdated"
+     * ActionEvent sent by each computer, which can be sent from any thread.
+     *
+     * @param e the ActionEvent
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        switch (e.getActionCommand()) {
+            case "AddComputer":
+                addComputerButton();
+                break;
+            case "CloseComputer":
+                closeComputerButton();
+                break;
+            case "Exit":
+                exitButton();
+                break;
+            case "SessionUpdated":
+                final ProfileDeleterGUI session = (ProfileDeleterGUI) e.getSource();
+                if (SwingUtilities.isEventDispatchThread()) {
+                    sessionUpdated(session);
+                } else {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            sessionUpdated(session);
+                        }
+                    });
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Overridden from ChangeListener.
+     * <p>
+     * Run when a different tab is selected. Shows the title of the selected
+     * computer and selects its row in the summary table.
+     *
+     * @param e the ChangeEvent
+     */
+    @Override
+    public void stateChanged(ChangeEvent e) {
+        ProfileDeleterGUI session = getSelectedSession();
+        setTitle(session == null ? "Profile Deleter" : session.getTitle());
+        int index = sessions_tabbed_pane.getSelectedIndex();
+        if (!changing_selection && index >= 0 && index < summary_table.getRowCount()) {
+            changing_selection = true;
+            summary_table.setRowSelectionInterval(index, index);
+            changing_selection = false;
+        }
+    }
+
+    /**
+     * Overridden from ListSelectionListener.
+     * <p>
+     * Run when a row is selected in the summary table. Shows the tab of the
+     * selected computer.
+     *
+     * @param e the ListSelectionEvent
+     */
+    @Override
+    public void valueChanged(ListSelectionEvent e) {
+        int index = summary_table.getSelectedRow();
+        if (!changing_selection && !e.getValueIsAdjusting() && index >= 0 && index < sessions_tabbed_pane.getTabCount()) {
+            changing_selection = true;
+            sessions_tabbed_pane.setSelectedIndex(index);
+            changing_selection = false;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.awt.Dimension;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
+import java.awt.Rectangle;
 import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
@@ -19,14 +20,19 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JEditorPane;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JTextArea;
@@ -38,31 +44,46 @@ import javax.swing.ScrollPaneConstants;
 import javax.swing.SortOrder;
 import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.ToolTipManager;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.LineBorder;
 import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.TableColumnModelEvent;
 import javax.swing.event.TableColumnModelListener;
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.table.JTableHeader;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableModel;
 import javax.swing.table.TableRowSorter;
+import javax.swing.text.BadLocationException;
 import javax.swing.text.html.HTMLEditorKit;
 
 /**
  * Implementation of a Swing GUI for the ProfileDeleter class.
+ * <p>
+ * Each ProfileDeleterGUI is a panel working on a single computer with its own
+ * ProfileDeleter session. The panels are shown as tabs in a
+ * ProfileDeleterDashboard so several computers can be worked on at once.
  */
-public class ProfileDeleterGUI extends JFrame implements TableModelListener, ActionListener {
+public class ProfileDeleterGUI extends JPanel implements TableModelListener, ActionListener {
 
     // The ProfileDeleter class that handles all the logic of the application.
     private ProfileDeleter profile_deleter;
 
+    // How often in milliseconds queued log lines are added to the system console.
+    private static final int GUI_REFRESH_INTERVAL = 33;
+
+    // Notified with a "SessionUpdated" ActionEvent when the title or stage of this computer changes.
+    private final ActionListener session_updated;
+
+    // Runs the SwingWorker threads of this computer so they do not wait on the SwingWorker threads of other computers.
+    private final Executor worker_executor;
+
     // Class attributes
     boolean show_tooltips;
     int tooltip_delay_timer;
@@ -70,17 +91,26 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
     String help_location;
     String help_text;
     Color uneditable_color;
-    String deletion_report_string;
+    String deletion_report_computer;
+    String deletion_report_total_size;
+    String deletion_report_queued_size;
     boolean running_deletion;
+    boolean deletion_report_open;
     boolean computer_set;
     int number_of_users_selected_for_deletion;
-    AtomicInteger log_index;
+    int console_line_cap;
+    final ConcurrentLinkedQueue<String> console_queue;
+    volatile boolean title_outdated;
+    Timer gui_refresh_timer;
+    String title;
+    volatile String stage;
 
     /**
      * Swing GUI elements.
      */
     private JScrollPane results_scroll_pane;
     private JTable results_table;
+    private UserTableModel user_table_model;
     private GridBagConstraints results_table_gc;
     private JScrollPane system_console_scroll_pane;
     private JTextArea system_console_text_area;
@@ -94,12 +124,12 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
     private GridBagConstraints rerun_checks_button_gc;
     private JButton run_deletion_button;
     private GridBagConstraints run_deletion_button_gc;
+    private JButton cancel_button;
+    private GridBagConstraints cancel_button_gc;
     private JButton write_log_button;
     private GridBagConstraints write_log_button_gc;
     private JButton help_button;
     private GridBagConstraints help_button_gc;
-    private JButton exit_button;
-    private GridBagConstraints exit_button_gc;
     private JCheckBox size_check_checkbox;
     private GridBagConstraints size_check_checkbox_gc;
     private JCheckBox state_check_checkbox;
@@ -122,6 +152,7 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
     private JButton deletion_report_frame_copy_to_clipboard_button;
     private GridBagConstraints deletion_report_frame_copy_to_clipboard_button_gc;
     private JTable deletion_report_frame_table;
+    private DeletionReportTableModel deletion_report_table_model;
     private deletionReportListener deletion_report_listener;
     private JScrollPane deletion_report_frame_scroll_pane;
     private GridBagConstraints deletion_report_frame_scroll_pane_gc;
@@ -135,11 +166,14 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
     private writeLogThread write_log_thread;
 
     public static void main(String args[]) {
+        if (args.length > 0 && (args[0].equals("--list-backups") || args[0].equals("--restore-backup"))) {
+            System.exit(runBackupStoreCommand(args));
+        }
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
                 try {
-                    new ProfileDeleterGUI();
+                    new ProfileDeleterDashboard();
                 } catch (UnrecoverableException e) {
                     JFrame fatal_error = new JFrame("Fatal Error");
                     fatal_error.setPreferredSize(new Dimension(250, 250));
@@ -154,8 +188,61 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         });
     }
 
-    public ProfileDeleterGUI() throws UnrecoverableException {
-        super("Profile Deleter");
+    /**
+     * Runs a backup store command from the command line instead of opening the
+     * GUI.
+     * <p>
+     * --list-backups [computer] [label text] [date prefix] lists the registry
+     * backups in the backup store, oldest first.<br>
+     * --restore-backup &lt;computer&gt; &lt;label text&gt; &lt;date prefix&gt;
+     * &lt;file&gt; writes the most recent matching backup to a plain .reg file
+     * that can be imported with REG IMPORT. Use "" to match any label text or
+     * date.
+     *
+     * @param args the command line arguments
+     * @return the exit code, 0 if the command succeeded
+     */
+    private static int runBackupStoreCommand(String[] args) {
+        ProfileDeleter profile_deleter = null;
+        try {
+            profile_deleter = new ProfileDeleter();
+            if (args[0].equals("--list-backups")) {
+                List<BackupStore.Entry> entries = profile_deleter.getBackupStore().find(args.length > 1 ? args[1] : "", args.length > 2 ? args[2] : "", args.length > 3 ? args[3] : "");
+                for (BackupStore.Entry entry : entries) {
+                    System.out.println(entry.getDate() + '\t' + entry.getComputer() + '\t' + entry.getLabel());
+                }
+                System.out.println(entries.size() + " registry backups found in " + profile_deleter.getBackupStore().getStoreDirectory().getPath());
+                return 0;
+            }
+            if (args.length < 5) {
+                System.err.println("Usage: --restore-backup <computer> <label text> <date prefix> <file>");
+                return 2;
+            }
+            profile_deleter.restoreRegistryBackup(args[1], args[2], args[3], args[4]);
+            System.out.println("Restored registry backup to " + args[4]);
+            return 0;
+        } catch (UnrecoverableException | IOException | DoesNotExistException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        } finally {
+            if (profile_deleter != null) {
+                profile_deleter.close();
+            }
+        }
+    }
+
+    /**
+     * Constructor for ProfileDeleterGUI class.
+     *
+     * @param session_updated the ActionListener to notify when the title or
+     * stage of this computer changes
+     * @param worker_executor the Executor to run SwingWorker threads on
+     * @throws UnrecoverableException if a configuration file cannot be loaded
+     */
+    public ProfileDeleterGUI(ActionListener session_updated, Executor worker_executor) throws UnrecoverableException {
+        super(new GridBagLayout());
+        this.session_updated = session_updated;
+        this.worker_executor = worker_executor;
 
         // The ProfileDeleter class that handles all the logic of the application.
         profile_deleter = new ProfileDeleter(this);
@@ -164,14 +251,19 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         tooltip_dismiss_timer = 60000;
         help_location = "";
         uneditable_color = new Color(235, 235, 235);
-        deletion_report_string = "";
+        deletion_report_computer = "";
+        deletion_report_total_size = "";
+        deletion_report_queued_size = "";
         running_deletion = false;
+        deletion_report_open = false;
         computer_set = false;
         number_of_users_selected_for_deletion = 0;
-        log_index = new AtomicInteger(profile_deleter.getLogList().size() - 1);
-        if (log_index.intValue() < 0) {
-            log_index.set(0);
-        }
+        console_line_cap = 5000;
+        console_queue = new ConcurrentLinkedQueue<>();
+        title_outdated = false;
+        title = "Profile Deleter";
+        stage = "Computer not set";
+        profile_deleter.flushLog();
 
         // Loads the GUI Configuration settings from the profiledeleter.config file.
         List<String> config = new ArrayList<>();
@@ -184,6 +276,8 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
                     tooltip_delay_timer = Integer.parseInt(line.replace("tooltip_delay_timer=", ""));
                 } else if (line.startsWith("tooltip_dismiss_timer=")) {
                     tooltip_dismiss_timer = Integer.parseInt(line.replace("tooltip_dismiss_timer=", ""));
+                } else if (line.startsWith("console_line_cap=")) {
+                    console_line_cap = Math.max(Integer.parseInt(line.replace("console_line_cap=", "")), 1);
                 } else if (line.startsWith("help=")) {
                     help_location = line.replace("help=", "");
                     try {
@@ -209,11 +303,8 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         ToolTipManager.sharedInstance().setInitialDelay(tooltip_delay_timer);
         ToolTipManager.sharedInstance().setDismissDelay(tooltip_dismiss_timer);
 
-        // Configurations for the top level JFrame of the GUI.
-        setMinimumSize(new Dimension(1150, 600));
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        getContentPane().setLayout(new GridBagLayout());
-        setLocationRelativeTo(null);
+        // Configurations for the top level JPanel of the GUI.
+        setMinimumSize(new Dimension(1150, 450));
 
         // Column header tooltips in the results table JTable GUI element.
         final String[] columnToolTips = {
@@ -223,11 +314,30 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
             "Size in megabytes of the user folder. Run a size check to populate this column",
             "Whether user folder can be edited. If Uneditable user may be logged in or PC may need to be restarted. User may also be on the cannot delete list. Run a state check to populate this column",
             "SID value found in registry for user folder. Run a registry check to populate this column",
-            "GUID value found in registry for user folder. Run a registry check to populate this column"
+            "GUID value found in registry for user folder. Run a registry check to populate this column",
+            "What is currently being done to the user and how far through it is. Updated live while checks and deletion are running"
         };
 
         // Initialisation of results table JTable GUI element.
-        results_table = new JTable(new DefaultTableModel()) {
+        user_table_model = new UserTableModel(profile_deleter.getUserRegistry());
+        profile_deleter.setUserListener(new UserDataListener() {
+            @Override
+            public void sizeChanged(UserData user, boolean delete, long old_size, long new_size) {
+            }
+
+            @Override
+            public void deleteChanged(UserData user, long size, boolean old_delete, boolean new_delete) {
+            }
+
+            @Override
+            public void userChanged(UserData user) {
+                user_table_model.userChanged(user);
+                publishUserChanged(set_computer_thread, user);
+                publishUserChanged(rerun_checks_thread, user);
+                publishUserChanged(run_deletion_thread, user);
+            }
+        });
+        results_table = new JTable(user_table_model) {
             @Override
             public String getToolTipText(MouseEvent e) {
                 String tip = null;
@@ -237,29 +347,33 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
                 int realColumnIndex = convertColumnIndexToModel(colIndex);
                 int realRowIndex = convertRowIndexToModel(rowIndex);
 
-                TableModel model = getModel();
-                String editable = (String) model.getValueAt(realRowIndex, 4);
-                String name = (String) model.getValueAt(realRowIndex, 1);
+                if (realRowIndex < 0) {
+                    return null;
+                }
+                UserData user = user_table_model.getUserAt(realRowIndex);
+                String editable = user.getState().toString();
+                boolean cannot_delete = user.getCannotDelete();
+                boolean should_not_delete = user.getShouldNotDelete();
 
                 switch (realColumnIndex) {
                     case 0:
-                        if (profile_deleter.getCannotDeleteList().contains(name.toLowerCase())) {
+                        if (cannot_delete) {
                             tip = "User is in the cannot delete list, you cannot delete users in this list";
                         } else if (editable.compareTo("Uneditable") == 0) {
                             tip = "Cannot delete if state is not Editable";
-                        } else if (profile_deleter.getShouldNotDeleteList().contains(name.toLowerCase())) {
+                        } else if (should_not_delete) {
                             tip = "User is in the should not delete list. It is recommended you do not delete this account unless it is necessary";
                         } else if (editable.compareTo("Editable") != 0) {
                             tip = "Cannot delete if state is not Editable";
                         }
                         break;
                     case 1:
-                        if (profile_deleter.getCannotDeleteList().contains(name.toLowerCase())) {
+                        if (cannot_delete) {
                             tip = "User is in the cannot delete list, you cannot delete users in this list";
                         }
                         break;
                     case 4:
-                        if (profile_deleter.getCannotDeleteList().contains(name.toLowerCase())) {
+                        if (cannot_delete) {
                             tip = "User is in the cannot delete list, you cannot delete users in this list";
                         } else if (editable.compareTo("Uneditable") == 0) {
                             tip = "User may be logged in or PC may need to be restarted";
@@ -283,6 +397,7 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
                 };
             }
         };
+        initialiseResultsTable();
         createTableData();
         results_scroll_pane = new JScrollPane(results_table);
         results_scroll_pane.setBorder(new LineBorder(Color.BLACK, 2));
@@ -431,6 +546,19 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         run_deletion_button_gc.gridwidth = 1;
         run_deletion_button_gc.gridheight = 1;
 
+        // Initialisation of cancel button GUI element.
+        cancel_button = new JButton("Cancel");
+        cancel_button.setToolTipText("Stops the checks or deletion currently running. Users already being deleted are left as they are when cancelled and users not yet started are listed as not started in the deletion report. This button will only become active while checks or a deletion are running");
+        cancel_button.setActionCommand("Cancel");
+        cancel_button.addActionListener(this);
+        cancel_button.setEnabled(false);
+        cancel_button_gc = new GridBagConstraints();
+        cancel_button_gc.fill = GridBagConstraints.BOTH;
+        cancel_button_gc.gridx = 8;
+        cancel_button_gc.gridy = 0;
+        cancel_button_gc.gridwidth = 1;
+        cancel_button_gc.gridheight = 1;
+
         // Initialisation of write log button GUI element.
         write_log_button = new JButton("Write Log");
         write_log_button.setToolTipText("Creates a log file of all logged events");
@@ -438,7 +566,7 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         write_log_button.addActionListener(this);
         write_log_button_gc = new GridBagConstraints();
         write_log_button_gc.fill = GridBagConstraints.BOTH;
-        write_log_button_gc.gridx = 8;
+        write_log_button_gc.gridx = 9;
         write_log_button_gc.gridy = 0;
         write_log_button_gc.gridwidth = 1;
         write_log_button_gc.gridheight = 1;
@@ -450,7 +578,7 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         help_button.addActionListener(this);
         help_button_gc = new GridBagConstraints();
         help_button_gc.fill = GridBagConstraints.BOTH;
-        help_button_gc.gridx = 9;
+        help_button_gc.gridx = 10;
         help_button_gc.gridy = 0;
         help_button_gc.gridwidth = 1;
         help_button_gc.gridheight = 1;
@@ -464,23 +592,11 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         tooltips_checkbox.addActionListener(this);
         tooltips_checkbox_gc = new GridBagConstraints();
         tooltips_checkbox_gc.fill = GridBagConstraints.BOTH;
-        tooltips_checkbox_gc.gridx = 10;
+        tooltips_checkbox_gc.gridx = 11;
         tooltips_checkbox_gc.gridy = 0;
         tooltips_checkbox_gc.gridwidth = 1;
         tooltips_checkbox_gc.gridheight = 1;
 
-        // Initialisation of exit button GUI element.
-        exit_button = new JButton("Exit");
-        exit_button.setToolTipText("Exits the program");
-        exit_button.setActionCommand("Exit");
-        exit_button.addActionListener(this);
-        exit_button_gc = new GridBagConstraints();
-        exit_button_gc.fill = GridBagConstraints.BOTH;
-        exit_button_gc.gridx = 11;
-        exit_button_gc.gridy = 0;
-        exit_button_gc.gridwidth = 1;
-        exit_button_gc.gridheight = 1;
-
         // Initialisation of help instructions display GUI element.
         help_frame = new JFrame("Profile Deleter Help");
         help_frame_editor_pane = new JEditorPane();
@@ -500,7 +616,7 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         }
         help_frame_scroll_pane = new JScrollPane(help_frame_editor_pane);
         help_frame.getContentPane().add(help_frame_scroll_pane);
-        help_frame.setDefaultCloseOperation(HIDE_ON_CLOSE);
+        help_frame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
         help_frame.setMinimumSize(new Dimension(1200, 600));
         help_frame.pack();
         help_frame.setVisible(false);
@@ -536,9 +652,11 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         deletion_report_frame_copy_to_clipboard_button_gc.fill = GridBagConstraints.BOTH;
         deletion_report_frame_copy_to_clipboard_button_gc.gridx = 1;
         deletion_report_frame_copy_to_clipboard_button_gc.gridy = 1;
-        deletion_report_frame_table = new JTable();
+        deletion_report_table_model = new DeletionReportTableModel();
+        deletion_report_frame_table = new JTable(deletion_report_table_model);
         deletion_report_listener = new deletionReportListener(deletion_report_frame_table);
         deletion_report_frame_scroll_pane = new JScrollPane(deletion_report_frame_table);
+        deletion_report_frame_scroll_pane.getViewport().addChangeListener(deletion_report_listener);
         deletion_report_frame_scroll_pane_gc = new GridBagConstraints();
         deletion_report_frame_scroll_pane_gc.fill = GridBagConstraints.BOTH;
         deletion_report_frame_scroll_pane_gc.gridwidth = GridBagConstraints.REMAINDER;
@@ -550,28 +668,36 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         deletion_report_frame.getContentPane().add(deletion_report_frame_computer_text_pane, deletion_report_frame_computer_text_pane_gc);
         deletion_report_frame.getContentPane().add(deletion_report_frame_copy_to_clipboard_button, deletion_report_frame_copy_to_clipboard_button_gc);
         deletion_report_frame.getContentPane().add(deletion_report_frame_scroll_pane, deletion_report_frame_scroll_pane_gc);
-        deletion_report_frame.setDefaultCloseOperation(HIDE_ON_CLOSE);
+        deletion_report_frame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
         deletion_report_frame.setMinimumSize(new Dimension(1200, 600));
         deletion_report_frame.pack();
         deletion_report_frame.setVisible(false);
 
         // Add all GUI elements to top level JFrame and display the GUI.
-        getContentPane().add(computer_name_text_field, computer_name_text_field_gc);
-        getContentPane().add(set_computer_button, set_computer_button_gc);
-        getContentPane().add(size_check_checkbox, size_check_checkbox_gc);
-        getContentPane().add(state_check_checkbox, state_check_checkbox_gc);
-        getContentPane().add(registry_check_checkbox, registry_check_checkbox_gc);
-        getContentPane().add(rerun_checks_button, rerun_checks_button_gc);
-        getContentPane().add(delete_all_users_checkbox, delete_all_users_checkbox_gc);
-        getContentPane().add(run_deletion_button, run_deletion_button_gc);
-        getContentPane().add(write_log_button, write_log_button_gc);
-        getContentPane().add(help_button, help_button_gc);
-        getContentPane().add(tooltips_checkbox, tooltips_checkbox_gc);
-        getContentPane().add(exit_button, exit_button_gc);
-        getContentPane().add(results_scroll_pane, results_table_gc);
-        getContentPane().add(system_console_scroll_pane, system_console_gc);
-        pack();
-        setVisible(true);
+        add(computer_name_text_field, computer_name_text_field_gc);
+        add(set_computer_button, set_computer_button_gc);
+        add(size_check_checkbox, size_check_checkbox_gc);
+        add(state_check_checkbox, state_check_checkbox_gc);
+        add(registry_check_checkbox, registry_check_checkbox_gc);
+        add(rerun_checks_button, rerun_checks_button_gc);
+        add(delete_all_users_checkbox, delete_all_users_checkbox_gc);
+        add(run_deletion_button, run_deletion_button_gc);
+        add(cancel_button, cancel_button_gc);
+        add(write_log_button, write_log_button_gc);
+        add(help_button, help_button_gc);
+        add(tooltips_checkbox, tooltips_checkbox_gc);
+        add(results_scroll_pane, results_table_gc);
+        add(system_console_scroll_pane, system_console_gc);
+
+        // Adds queued log lines and finished deletions to the system console and deletion report on the event dispatch thread.
+        gui_refresh_timer = new Timer(GUI_REFRESH_INTERVAL, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                refreshSystemConsole();
+                refreshDeletionReport();
+            }
+        });
+        gui_refresh_timer.start();
     }
 
     /**
@@ -584,39 +710,98 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
             title += " - " + profile_deleter.getRemoteComputer();
             int number_of_users_deleted = 0;
             if (profile_deleter.getSizeCheckComplete()) {
-                double total_size = 0.0;
-                double selected_size = 0.0;
-                for (UserData user : profile_deleter.getUserList()) {
-                    double size_as_double = 0.0;
-                    try {
-                        size_as_double += Double.parseDouble(user.getSize());
-                    } catch (NumberFormatException e) {
-                    }
-                    if (size_as_double > 0.0) {
-                        total_size += size_as_double;
-                        if (user.getDelete()) {
-                            selected_size += size_as_double;
-                        }
-                    }
-                }
+                long total_size = profile_deleter.getTotalSize();
+                long selected_size = profile_deleter.getSelectedSize();
                 title += " - Total Users Size: " + doubleToFormattedString(total_size / (1024.0 * 1024.0)) + " MB - Total size selected for deletion: " + doubleToFormattedString(selected_size / (1024.0 * 1024.0)) + " MB";
+                int size_check_walks_skipped = profile_deleter.getSizeCheckWalksSkipped();
+                if (size_check_walks_skipped > 0) {
+                    title += " - Cached sizes used: " + size_check_walks_skipped + " (approx. " + doubleToFormattedString(profile_deleter.getSizeCheckTimeSaved() / 1000.0) + " seconds saved)";
+                }
             }
             if (running_deletion) {
                 number_of_users_deleted = profile_deleter.getNumberOfUsersDeleted().get();
                 title += " - Users deleted: " + number_of_users_deleted + "/" + number_of_users_selected_for_deletion;
             } else {
                 if (computer_set) {
-                    number_of_users_selected_for_deletion = 0;
-                    for (UserData user : profile_deleter.getUserList()) {
-                        if (user.getDelete()) {
-                            number_of_users_selected_for_deletion++;
-                        }
-                    }
+                    number_of_users_selected_for_deletion = profile_deleter.getSelectedCount();
                     title += " - Users selected: " + number_of_users_selected_for_deletion;
                 }
             }
         }
-        setTitle(title);
+        this.title = title;
+        fireSessionUpdated();
+    }
+
+    /**
+     * Notifies the session updated ActionListener that the title or stage of
+     * this computer has changed.
+     */
+    private void fireSessionUpdated() {
+        if (session_updated != null) {
+            session_updated.actionPerformed(new ActionEvent(this, 0, "SessionUpdated"));
+        }
+    }
+
+    /**
+     * Sets the stage attribute and notifies the session updated
+     * ActionListener.
+     *
+     * @param stage what is currently being done on this computer
+     */
+    private void setStage(String stage) {
+        this.stage = stage;
+        fireSessionUpdated();
+    }
+
+    /**
+     * Gets the stage attribute.
+     *
+     * @return what is currently being done on this computer
+     */
+    public String getStage() {
+        return stage;
+    }
+
+    /**
+     * Gets the title attribute.
+     *
+     * @return the title showing the status of this computer
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Gets the ProfileDeleter session used by this computer.
+     *
+     * @return the ProfileDeleter session used by this computer
+     */
+    public ProfileDeleter getProfileDeleter() {
+        return profile_deleter;
+    }
+
+    /**
+     * Gets whether checks or a deletion are running on this computer.
+     *
+     * @return whether checks or a deletion are running on this computer
+     */
+    public boolean isRunning() {
+        return (set_computer_thread != null && !set_computer_thread.isDone()) || (rerun_checks_thread != null && !rerun_checks_thread.isDone()) || (run_deletion_thread != null && !run_deletion_thread.isDone());
+    }
+
+    /**
+     * Stops updating the GUI, closes any windows opened by this computer and
+     * closes the ProfileDeleter session, stopping its logging thread and
+     * closing its log files.
+     * <p>
+     * Run when this computer is closed in the dashboard or the program exits.
+     * Checks or a deletion must not be running.
+     */
+    public void close() {
+        gui_refresh_timer.stop();
+        help_frame.dispose();
+        deletion_report_frame.dispose();
+        profile_deleter.close();
     }
 
     /**
@@ -629,58 +814,49 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
      * @return the value with the decimal place removed and , added every 3rd
      * number
      */
-    private String doubleToFormattedString(Double format_value) {
+    static String doubleToFormattedString(Double format_value) {
         long double_to_long = Math.round(format_value);
         String double_to_long_string = Long.toString(double_to_long);
-        String formatted_string = "";
+        StringBuilder formatted_string = new StringBuilder(double_to_long_string.length() + double_to_long_string.length() / 3);
         int count = 0;
         for (int i = double_to_long_string.length() - 1; i >= 0; i--) {
             if (count == 3) {
-                formatted_string = "," + formatted_string;
+                formatted_string.append(',');
                 count = 0;
             }
-            formatted_string = double_to_long_string.charAt(i) + formatted_string;
+            formatted_string.append(double_to_long_string.charAt(i));
             count++;
         }
-        return formatted_string;
+        return formatted_string.reverse().toString();
     }
 
     /**
-     * Initialises the table model and populates the data for the results table.
-     * <p>
-     * This needs to be run anytime the amount of users in the user list
-     * changes.
+     * Converts a size in bytes from a size column to the text displayed in the
+     * column.
+     *
+     * @param value the size in bytes as a Long
+     * @param not_checked_text the text to display if the size has not been
+     * calculated
+     * @return the size in MB with , added every 3rd number, not checked text if
+     * the size has not been calculated or Could not calculate size if the size
+     * check failed
      */
-    private void createTableData() {
-        results_table.getModel().removeTableModelListener(this);
-        results_table.setModel(new DefaultTableModel(profile_deleter.convertUserListTo2DObjectArray(), UserData.headingsToStringArray()) {
-
-            @Override
-            public Class getColumnClass(int col) {
-                String class_name = "";
-                switch (col) {
-                    case 0:
-                        class_name = "java.lang.Boolean";
-                        break;
-                    case 2:
-                        class_name = "java.util.Date";
-                        break;
-                    default:
-                        class_name = "java.lang.String";
-                        break;
-                }
-                try {
-                    return Class.forName(class_name);
-                } catch (ClassNotFoundException e) {
-                }
-                return null;
-            }
+    static String sizeToFormattedString(Object value, String not_checked_text) {
+        long size = value instanceof Long ? (Long) value : UserData.SIZE_NOT_CHECKED;
+        if (size == UserData.SIZE_NOT_CHECKED) {
+            return not_checked_text;
+        } else if (size < 0) {
+            return "Could not calculate size";
+        }
+        return doubleToFormattedString(size / (1024.0 * 1024.0)) + " MB";
+    }
 
-            @Override
-            public boolean isCellEditable(int row, int col) {
-                return col == 0 && getValueAt(row, 4) == "Editable" && !profile_deleter.getCannotDeleteList().contains(getValueAt(row, 1).toString().toLowerCase());
-            }
-        });
+    /**
+     * Sets up the renderers, column widths and sorter of the results table.
+     * <p>
+     * Only needs to be run once as the table model is never replaced.
+     */
+    private void initialiseResultsTable() {
         // Default renderer for table columns.
         TableCellRenderer default_renderer = new DefaultTableCellRenderer() {
 
@@ -738,15 +914,7 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         TableCellRenderer size_renderer = new DefaultTableCellRenderer() {
             @Override
             public void setValue(Object value) {
-                String output = "";
-                if (value != null && !value.toString().isEmpty()) {
-                    try {
-                        output = doubleToFormattedString(Double.parseDouble(value.toString()) / (1024.0 * 1024.0)) + " MB";
-                    } catch (NumberFormatException e) {
-                        output = value.toString();
-                    }
-                }
-                setText(output);
+                setText(sizeToFormattedString(value, ""));
             }
 
             @Override
@@ -795,41 +963,39 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         results_table.getColumnModel().getColumn(6).setPreferredWidth(230);
         results_table.getColumnModel().getColumn(6).setMinWidth(1);
         results_table.getColumnModel().getColumn(6).setMaxWidth(Short.MAX_VALUE);
+        results_table.getColumnModel().getColumn(7).setCellRenderer(default_renderer);
+        results_table.getColumnModel().getColumn(7).setPreferredWidth(200);
+        results_table.getColumnModel().getColumn(7).setMinWidth(1);
+        results_table.getColumnModel().getColumn(7).setMaxWidth(Short.MAX_VALUE);
         results_table.setAutoCreateRowSorter(false);
         tableRowSorterWithPreferredColumn sorter = new tableRowSorterWithPreferredColumn(new ArrayList<Integer>(Arrays.asList(1)), SortOrder.ASCENDING, results_table.getModel());
-        formattedSizeComparator size_comparator = new formattedSizeComparator();
         results_table.setRowSorter(sorter);
-        sorter.setComparator(3, size_comparator);
+        sorter.setSizeColumn(3);
         List<RowSorter.SortKey> sort_keys = new ArrayList<RowSorter.SortKey>();
         sort_keys.add(new RowSorter.SortKey(1, SortOrder.ASCENDING));
         sorter.setSortKeys(sort_keys);
-        results_table.getModel().addTableModelListener(this);
+        user_table_model.addTableModelListener(this);
+    }
+
+    /**
+     * Populates the results table with the users in the user list.
+     * <p>
+     * This needs to be run anytime the amount of users in the user list
+     * changes. The sort order of the table is kept.
+     */
+    private void createTableData() {
+        user_table_model.reload();
     }
 
     /**
-     * Updates the data in the current table model for the results table.
+     * Redraws the users in the results table that have changed.
      * <p>
-     * This needs to be run anytime a change is made to the users in the current
-     * user list.
+     * Users changed while a SwingWorker thread is running are redrawn as they
+     * are published, this only needs to be run for changes made on the event
+     * dispatch thread.
      */
     private void updateTableData() {
-        for (int i = 0; i < ((DefaultTableModel) results_table.getModel()).getRowCount(); i++) {
-            Object[] matching_user = null;
-            for (Object[] user : profile_deleter.convertUserListTo2DObjectArray()) {
-                if (user[1].toString().equals(results_table.getModel().getValueAt(i, 1).toString())) {
-                    matching_user = user;
-                    break;
-                }
-            }
-            if (matching_user != null) {
-                results_table.getModel().setValueAt(matching_user[0], i, 0);
-                results_table.getModel().setValueAt(matching_user[2], i, 2);
-                results_table.getModel().setValueAt(matching_user[3], i, 3);
-                results_table.getModel().setValueAt(matching_user[4], i, 4);
-                results_table.getModel().setValueAt(matching_user[5], i, 5);
-                results_table.getModel().setValueAt(matching_user[6], i, 6);
-            }
-        }
+        user_table_model.fireChangedRows();
     }
 
     /**
@@ -848,15 +1014,11 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         }
         switch (action_command) {
             case "LogWritten":
-                int index_as_int = 0;
                 try {
-                    if (system_console_text_area != null) {
-                        index_as_int = Integer.parseInt(sub_command);
-                        writeLogToSystemConsole(index_as_int);
-                    }
+                    writeLogToSystemConsole(Long.parseLong(sub_command));
                 } catch (NumberFormatException ex) {
                 }
-                setFormattedTitle();
+                title_outdated = true;
                 break;
             case "SetComputer":
                 setComputerButton();
@@ -867,6 +1029,9 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
             case "RunDeletion":
                 runDeletionButton();
                 break;
+            case "Cancel":
+                cancelButton();
+                break;
             case "WriteLog":
                 writeLogButton();
                 break;
@@ -889,9 +1054,6 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
             case "Help":
                 helpButton();
                 break;
-            case "Exit":
-                exitButton();
-                break;
             case "CopyDeletionReport":
                 copyDeletionReportToClipboardButton();
                 break;
@@ -914,7 +1076,10 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         delete_all_users_checkbox.setEnabled(false);
         run_deletion_button.setEnabled(false);
         results_table.setEnabled(false);
-        (set_computer_thread = new setComputerThread()).execute();
+        profile_deleter.setCancelRequested(false);
+        cancel_button.setEnabled(true);
+        setStage("Setting computer");
+        worker_executor.execute(set_computer_thread = new setComputerThread());
     }
 
     /**
@@ -933,7 +1098,10 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         delete_all_users_checkbox.setEnabled(false);
         run_deletion_button.setEnabled(false);
         results_table.setEnabled(false);
-        (rerun_checks_thread = new rerunChecksThread()).execute();
+        profile_deleter.setCancelRequested(false);
+        cancel_button.setEnabled(true);
+        setStage("Running checks");
+        worker_executor.execute(rerun_checks_thread = new rerunChecksThread());
     }
 
     /**
@@ -952,7 +1120,24 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         delete_all_users_checkbox.setEnabled(false);
         run_deletion_button.setEnabled(false);
         results_table.setEnabled(false);
-        (run_deletion_thread = new runDeletionThread()).execute();
+        profile_deleter.setCancelRequested(false);
+        cancel_button.setEnabled(true);
+        setStage("Running deletion");
+        deletion_report_open = false;
+        worker_executor.execute(run_deletion_thread = new runDeletionThread());
+    }
+
+    /**
+     * Run when cancel button is pressed.
+     * <p>
+     * Disables the cancel button and asks the running checks or deletion to
+     * stop. The GUI elements are enabled again by the SwingWorker thread once
+     * it has stopped.
+     */
+    private void cancelButton() {
+        cancel_button.setEnabled(false);
+        setStage("Cancelling");
+        profile_deleter.cancel();
     }
 
     /**
@@ -972,7 +1157,7 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         run_deletion_button.setEnabled(false);*/
         write_log_button.setEnabled(false);/*
         results_table.setEnabled(false);*/
-        (write_log_thread = new writeLogThread()).execute();
+        worker_executor.execute(write_log_thread = new writeLogThread());
     }
 
     /**
@@ -1036,15 +1221,6 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
          */
     }
 
-    /**
-     * Run when exit button is pressed.
-     * <p>
-     * Closes the application.
-     */
-    private void exitButton() {
-        System.exit(0);
-    }
-
     /**
      * Run when the copy deletion report to clipboard button is pressed on the
      * deletion report JFrame.
@@ -1052,8 +1228,9 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
      * Copies the deletion report to the clipboard
      */
     private void copyDeletionReportToClipboardButton() {
-        if (deletion_report_string != null && !deletion_report_string.isEmpty()) {
-            StringSelection selection = new StringSelection(deletion_report_string);
+        List<DeletionResult> deletion_results = deletion_report_table_model.getResults();
+        if (!deletion_results.isEmpty()) {
+            StringSelection selection = new StringSelection(writeDeletionReport(deletion_results));
             Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
             clipboard.setContents(selection, selection);
             profile_deleter.logMessage("Copied deletion report to clipboard", ProfileDeleter.LOG_TYPE.INFO, true);
@@ -1061,269 +1238,289 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
     }
 
     /**
-     * Appends log to system console when ProfileDeleter log is updated.
+     * Writes the deletion report as tab delimited text for copying to the
+     * clipboard.
+     * <p>
+     * The report is written in a single pass when it is copied rather than
+     * kept as a String while the report is displayed.
      *
-     * @param index the index of the log list to write to system console
+     * @param deletion_results the results of the deletion to write
+     * @return the deletion report as tab delimited text
      */
-    private synchronized void writeLogToSystemConsole(int index) {
-        system_console_text_area.append('\n' + profile_deleter.getLogList().get(index));
+    private String writeDeletionReport(List<DeletionResult> deletion_results) {
+        String[] deletion_report_headings = DeletionResult.REPORT_HEADINGS;
+        StringBuilder deletion_report = new StringBuilder(256 + 128 * deletion_results.size());
+        deletion_report.append("Deletion Report").append('\n');
+        deletion_report.append("Computer:").append('\t').append(deletion_report_computer).append('\n');
+        deletion_report.append("Total Size Deleted:").append('\t').append(deletion_report_total_size).append('\n');
+        if (!deletion_report_queued_size.isEmpty()) {
+            deletion_report.append("Total Size Renamed And Queued For Purge:").append('\t').append(deletion_report_queued_size).append('\n');
+        }
+        for (int i = 0; i < deletion_report_headings.length; i++) {
+            deletion_report.append(deletion_report_headings[i]).append(i < deletion_report_headings.length - 1 ? '\t' : '\n');
+        }
+        for (int i = 0; i < deletion_results.size(); i++) {
+            DeletionResult deletion_result = deletion_results.get(i);
+            if (i > 0) {
+                deletion_report.append('\n');
+            }
+            for (int j = 0; j < DeletionReportTableModel.SIZE_COLUMN; j++) {
+                deletion_report.append(deletion_result.getColumn(j)).append('\t');
+            }
+            if (deletion_result.getSize() >= 0) {
+                deletion_report.append(doubleToFormattedString(deletion_result.getSize() / (1024.0 * 1024.0))).append(" MB");
+            } else {
+                deletion_report.append(deletion_result.getSizeText());
+            }
+        }
+        return deletion_report.toString();
     }
 
     /**
-     * Displays the deletion report from ProfileDeleter process deletion
-     * function on a new JFrame using a JTable to display the data.
+     * Queues a log line to be appended to the system console when the
+     * ProfileDeleter log is updated.
+     * <p>
+     * Called on the logging thread. The line is appended on the event dispatch
+     * thread the next time the system console is refreshed.
      *
-     * @param deletion_report the deletion report returned from ProfileDeleter
-     * after a deletion is processed
+     * @param index the index of the log list to write to system console
      */
-    private void displayDeletionReport(List<String> deletion_report) {
-        if (deletion_report.size() > 2) {
-            String deletion_report_header_as_string = "";
-            String deletion_report_headings_as_string = "";
-            String deletion_report_content_as_string = "";
-            Double total_size = 0.0;
-            deletion_report_frame.setTitle("Deletion Report - " + profile_deleter.getRemoteComputer());
-            String[] deletion_report_headings = new String[deletion_report.get(1).split("\t").length];
-            Object[][] deletion_report_content = new Object[deletion_report.size() - 2][];
-            for (int i = 0; i < deletion_report.size(); i++) {
-                if (i > 0) {
-                    if (i == 1) {
-                        deletion_report_headings = deletion_report.get(i).split("\t");
-                        deletion_report_headings_as_string += deletion_report.get(i);
-                    } else {
-                        deletion_report_content[i - 2] = deletion_report.get(i).split("\t");
-                        String size_formatted = "";
-                        if (deletion_report_content[i - 2][7] != null && !deletion_report_content[i - 2][7].toString().isEmpty()) {
-                            try {
-                                total_size += Double.parseDouble(deletion_report_content[i - 2][7].toString());
-                                size_formatted = doubleToFormattedString(Double.parseDouble(deletion_report_content[i - 2][7].toString()) / (1024 * 1024)) + " MB";
-                            } catch (NumberFormatException e) {
-                                size_formatted = deletion_report_content[i - 2][7].toString();
-                            }
-                        }
-                        deletion_report_content_as_string += deletion_report_content[i - 2][0].toString() + '\t' + deletion_report_content[i - 2][1].toString() + '\t' + deletion_report_content[i - 2][2].toString() + '\t' + deletion_report_content[i - 2][3].toString() + '\t' + deletion_report_content[i - 2][4].toString() + '\t' + deletion_report_content[i - 2][5].toString() + '\t' + deletion_report_content[i - 2][6].toString() + '\t' + size_formatted;
-                        if (i != deletion_report.size() - 1) {
-                            deletion_report_content_as_string += '\n';
-                        }
-                    }
-                } else {
-                    deletion_report_header_as_string += deletion_report.get(i) + '\n';
-                }
-            }
-            String total_size_formatted = "";
-            if (total_size > 0.0) {
-                total_size_formatted = doubleToFormattedString(total_size / (1024 * 1024)) + " MB";
-            } else {
-                total_size_formatted = "Not calculated";
+    private void writeLogToSystemConsole(long index) {
+        String log_line = profile_deleter.getLogLine(index);
+        if (log_line != null) {
+            console_queue.offer(log_line);
+        }
+    }
+
+    /**
+     * Appends every queued log line to the system console in a single append
+     * and updates the title if the log has changed.
+     * <p>
+     * Runs on the event dispatch thread every GUI_REFRESH_INTERVAL
+     * milliseconds. Once the system console has more than console_line_cap
+     * lines the oldest lines are removed.
+     */
+    private void refreshSystemConsole() {
+        String log_line = console_queue.poll();
+        if (log_line != null) {
+            StringBuilder log_lines = new StringBuilder(4096);
+            while (log_line != null) {
+                log_lines.append('\n').append(log_line);
+                log_line = console_queue.poll();
             }
-            deletion_report_frame_computer_text_pane.setText("<html><strong>Computer:</strong> " + profile_deleter.getRemoteComputer() + "<br>" + "<strong>Total Size Deleted:</strong> " + total_size_formatted + "</html>");
-            deletion_report_header_as_string += "Computer:" + '\t' + profile_deleter.getRemoteComputer() + '\n';
-            deletion_report_header_as_string += "Total Size Deleted:" + '\t' + total_size_formatted + '\n';
-            deletion_report_string = deletion_report_header_as_string + deletion_report_headings_as_string + '\n' + deletion_report_content_as_string;
-
-            // Default renderer for table columns.
-            TableCellRenderer default_renderer = new DefaultTableCellRenderer() {
-
-                @Override
-                public Component getTableCellRendererComponent(JTable table, Object value, boolean is_selected, boolean has_focus, int row, int column) {
-                    Component tableCellRendererComponent = super.getTableCellRendererComponent(table, value, is_selected, has_focus, row, column);
-                    ((DefaultTableCellRenderer) tableCellRendererComponent).setHorizontalAlignment(DefaultTableCellRenderer.LEFT);
-                    ((DefaultTableCellRenderer) tableCellRendererComponent).setVerticalAlignment(DefaultTableCellRenderer.TOP);
-                    if (!(table.getModel().getValueAt(table.convertRowIndexToModel(row), 1)).toString().equals("Yes")) {
-                        tableCellRendererComponent.setForeground(Color.WHITE);
-                        tableCellRendererComponent.setBackground(Color.DARK_GRAY);
-                    } else {
-                        tableCellRendererComponent.setForeground(Color.BLACK);
-                        tableCellRendererComponent.setBackground(Color.WHITE);
-                    }
-                    return tableCellRendererComponent;
-                }
-            };
-            // Determines how the Successfully Deleted? column shoud be displayed.
-            TableCellRenderer deletion_successful_renderer = new DefaultTableCellRenderer() {
-
-                @Override
-                public Component getTableCellRendererComponent(JTable table, Object value, boolean is_selected, boolean has_focus, int row, int column) {
-                    Component tableCellRendererComponent = super.getTableCellRendererComponent(table, value, is_selected, has_focus, row, column);
-                    ((DefaultTableCellRenderer) tableCellRendererComponent).setHorizontalAlignment(DefaultTableCellRenderer.LEFT);
-                    ((DefaultTableCellRenderer) tableCellRendererComponent).setVerticalAlignment(DefaultTableCellRenderer.TOP);
-                    if (!(table.getModel().getValueAt(table.convertRowIndexToModel(row), 1)).toString().equals("Yes")) {
-                        tableCellRendererComponent.setForeground(Color.WHITE);
-                        tableCellRendererComponent.setBackground(Color.DARK_GRAY);
-                    } else {
-                        tableCellRendererComponent.setForeground(Color.BLACK);
-                        tableCellRendererComponent.setBackground(uneditable_color);
-                    }
-                    return tableCellRendererComponent;
-                }
-            };
-            // Determines how the Size column shoud be displayed.
-            TableCellRenderer size_renderer = new DefaultTableCellRenderer() {
-
-                @Override
-                public void setValue(Object value) {
-                    String output = "";
-                    if (value != null && !value.toString().isEmpty()) {
-                        try {
-                            output = doubleToFormattedString(Double.parseDouble(value.toString()) / (1024.0 * 1024.0)) + " MB";
-                        } catch (NumberFormatException e) {
-                            output = value.toString();
-                        }
-                    }
-                    setText(output);
+            system_console_text_area.append(log_lines.toString());
+            int excess_lines = system_console_text_area.getLineCount() - console_line_cap;
+            if (excess_lines > 0) {
+                try {
+                    system_console_text_area.replaceRange("", 0, system_console_text_area.getLineEndOffset(excess_lines - 1));
+                } catch (BadLocationException e) {
                 }
+            }
+        }
+        if (title_outdated) {
+            title_outdated = false;
+            setFormattedTitle();
+        }
+    }
 
-                @Override
-                public Component getTableCellRendererComponent(JTable table, Object value, boolean is_selected, boolean has_focus, int row, int column) {
-                    Component tableCellRendererComponent = super.getTableCellRendererComponent(table, value, is_selected, has_focus, row, column);
-                    if (!(table.getModel().getValueAt(table.convertRowIndexToModel(row), 1)).toString().equals("Yes")) {
-                        tableCellRendererComponent.setForeground(Color.WHITE);
-                        tableCellRendererComponent.setBackground(Color.DARK_GRAY);
-                    } else {
-                        tableCellRendererComponent.setForeground(Color.BLACK);
-                        tableCellRendererComponent.setBackground(Color.WHITE);
-                    }
-                    ((DefaultTableCellRenderer) tableCellRendererComponent).setHorizontalAlignment(DefaultTableCellRenderer.RIGHT);
-                    ((DefaultTableCellRenderer) tableCellRendererComponent).setVerticalAlignment(DefaultTableCellRenderer.TOP);
-                    return tableCellRendererComponent;
-                }
-            };
-
-            deletion_report_frame_table.getModel().removeTableModelListener(deletion_report_listener);
-            deletion_report_frame_table.getColumnModel().removeColumnModelListener(deletion_report_listener);
-            deletion_report_frame_table.setModel(new DefaultTableModel(deletion_report_content, deletion_report_headings));
-            deletion_report_frame_table.getColumnModel().getColumn(0).setCellRenderer(default_renderer);
-            deletion_report_frame_table.getColumnModel().getColumn(0).setPreferredWidth(70);
-            deletion_report_frame_table.getColumnModel().getColumn(0).setMinWidth(1);
-            deletion_report_frame_table.getColumnModel().getColumn(0).setMaxWidth(Short.MAX_VALUE);
-            deletion_report_frame_table.getColumnModel().getColumn(1).setCellRenderer(deletion_successful_renderer);
-            deletion_report_frame_table.getColumnModel().getColumn(1).setPreferredWidth(60);
-            deletion_report_frame_table.getColumnModel().getColumn(1).setMinWidth(1);
-            deletion_report_frame_table.getColumnModel().getColumn(1).setMaxWidth(Short.MAX_VALUE);
-            deletion_report_frame_table.getColumnModel().getColumn(2).setCellRenderer(new possibleErrorRenderer());
-            deletion_report_frame_table.getColumnModel().getColumn(2).setPreferredWidth(70);
-            deletion_report_frame_table.getColumnModel().getColumn(2).setMinWidth(1);
-            deletion_report_frame_table.getColumnModel().getColumn(2).setMaxWidth(Short.MAX_VALUE);
-            deletion_report_frame_table.getColumnModel().getColumn(3).setCellRenderer(new possibleErrorRenderer());
-            deletion_report_frame_table.getColumnModel().getColumn(3).setPreferredWidth(50);
-            deletion_report_frame_table.getColumnModel().getColumn(3).setMinWidth(1);
-            deletion_report_frame_table.getColumnModel().getColumn(3).setMaxWidth(Short.MAX_VALUE);
-            deletion_report_frame_table.getColumnModel().getColumn(4).setCellRenderer(new possibleErrorRenderer());
-            deletion_report_frame_table.getColumnModel().getColumn(4).setPreferredWidth(60);
-            deletion_report_frame_table.getColumnModel().getColumn(4).setMinWidth(1);
-            deletion_report_frame_table.getColumnModel().getColumn(4).setMaxWidth(Short.MAX_VALUE);
-            deletion_report_frame_table.getColumnModel().getColumn(5).setCellRenderer(default_renderer);
-            deletion_report_frame_table.getColumnModel().getColumn(5).setPreferredWidth(275);
-            deletion_report_frame_table.getColumnModel().getColumn(5).setMinWidth(1);
-            deletion_report_frame_table.getColumnModel().getColumn(5).setMaxWidth(Short.MAX_VALUE);
-            deletion_report_frame_table.getColumnModel().getColumn(6).setCellRenderer(default_renderer);
-            deletion_report_frame_table.getColumnModel().getColumn(6).setPreferredWidth(215);
-            deletion_report_frame_table.getColumnModel().getColumn(6).setMinWidth(1);
-            deletion_report_frame_table.getColumnModel().getColumn(6).setMaxWidth(Short.MAX_VALUE);
-            deletion_report_frame_table.getColumnModel().getColumn(7).setCellRenderer(size_renderer);
-            deletion_report_frame_table.getColumnModel().getColumn(7).setPreferredWidth(50);
-            deletion_report_frame_table.getColumnModel().getColumn(7).setMinWidth(1);
-            deletion_report_frame_table.getColumnModel().getColumn(7).setMaxWidth(Short.MAX_VALUE);
-            deletion_report_frame_table.setAutoCreateRowSorter(false);
-            tableRowSorterWithPreferredColumn sorter = new tableRowSorterWithPreferredColumn(new ArrayList<Integer>(Arrays.asList(1, 0)), SortOrder.ASCENDING, deletion_report_frame_table.getModel());
-            formattedSizeComparator size_comparator = new formattedSizeComparator();
-            deletion_report_frame_table.setRowSorter(sorter);
-            sorter.setComparator(7, size_comparator);
-            List<RowSorter.SortKey> sort_keys = new ArrayList<RowSorter.SortKey>();
-            sort_keys.add(new RowSorter.SortKey(1, SortOrder.ASCENDING));
-            sort_keys.add(new RowSorter.SortKey(0, SortOrder.ASCENDING));
-            sorter.setSortKeys(sort_keys);
-            deletion_report_frame_table.getModel().addTableModelListener(deletion_report_listener);
-            deletion_report_frame_table.getColumnModel().addColumnModelListener(deletion_report_listener);
-            deletion_report_frame.setVisible(true);
+    /**
+     * Adds the result of every user whose deletion has finished since this
+     * was last called to the deletion report, opening the report when the
+     * first user of a deletion finishes.
+     */
+    private void refreshDeletionReport() {
+        DeletionResult deletion_result = profile_deleter.pollCompletedDeletionResult();
+        if (deletion_result != null) {
+            if (!deletion_report_open) {
+                openDeletionReport();
+            }
+            while (deletion_result != null) {
+                deletion_report_table_model.addResult(deletion_result);
+                deletion_result = profile_deleter.pollCompletedDeletionResult();
+            }
+            updateDeletionReportTotals();
         }
     }
 
     /**
-     * Overridden from TableModelListener.
+     * Completes the deletion report once the ProfileDeleter process deletion
+     * function has returned.
      * <p>
-     * Used to track changes to the results table JTable.
+     * Results not yet added by refreshDeletionReport are added, which includes
+     * the users that were never started because the deletion was cancelled.
      *
-     * @param e the event detailing the change in table model
+     * @param deletion_results the results returned from ProfileDeleter after a
+     * deletion is processed
      */
-    @Override
-    public void tableChanged(TableModelEvent e) {
-        int row = e.getFirstRow();
-        int column = e.getColumn();
-        TableModel model = (TableModel) e.getSource();
-        Object data = model.getValueAt(row, column);
+    private void displayDeletionReport(List<DeletionResult> deletion_results) {
+        refreshDeletionReport();
+        if (!deletion_results.isEmpty()) {
+            if (!deletion_report_open) {
+                openDeletionReport();
+            }
+            Set<DeletionResult> displayed_results = Collections.newSetFromMap(new IdentityHashMap<DeletionResult, Boolean>());
+            displayed_results.addAll(deletion_report_table_model.getResults());
+            for (DeletionResult deletion_result : deletion_results) {
+                if (!displayed_results.contains(deletion_result)) {
+                    deletion_report_table_model.addResult(deletion_result);
+                }
+            }
+            updateDeletionReportTotals();
+        }
+    }
 
-        if (column == 0) {
-            profile_deleter.getUserList().get(row).setDelete(Boolean.parseBoolean(data.toString()));
-            setFormattedTitle();
+    /**
+     * Sets the computer, total size deleted and total size queued for purge
+     * shown above the deletion report from the results currently displayed.
+     * <p>
+     * Folders renamed by a two phase deletion are only counted as queued, as
+     * their purge may still fail.
+     */
+    private void updateDeletionReportTotals() {
+        long total_size = 0;
+        long queued_size = 0;
+        for (DeletionResult deletion_result : deletion_report_table_model.getResults()) {
+            total_size += deletion_result.getBytesFreed();
+            queued_size += deletion_result.getBytesQueued();
         }
+        if (total_size > 0) {
+            deletion_report_total_size = doubleToFormattedString(total_size / (1024.0 * 1024.0)) + " MB";
+        } else {
+            deletion_report_total_size = "Not calculated";
+        }
+        deletion_report_queued_size = queued_size > 0 ? doubleToFormattedString(queued_size / (1024.0 * 1024.0)) + " MB" : "";
+        deletion_report_frame_computer_text_pane.setText("<html><strong>Computer:</strong> " + deletion_report_computer + "<br>" + "<strong>Total Size Deleted:</strong> " + deletion_report_total_size + (deletion_report_queued_size.isEmpty() ? "" : "<br><strong>Total Size Renamed And Queued For Purge:</strong> " + deletion_report_queued_size) + "</html>");
     }
 
     /**
-     * Strips all non-numeric characters except the first period as long as it
-     * is not at the end of the String from each String, then compares the
-     * double values returned. If the string has no numeric characters it is
-     * counted as double value -Double.MAX_VALUE.
+     * Clears the deletion report and displays it on a new JFrame using a
+     * JTable, ready for results to be added as each user is deleted.
      */
-    private class formattedSizeComparator implements Comparator<String> {
+    private void openDeletionReport() {
+        deletion_report_open = true;
+        deletion_report_frame.setTitle("Deletion Report - " + profile_deleter.getRemoteComputer());
+        deletion_report_computer = profile_deleter.getRemoteComputer();
 
-        @Override
-        public int compare(String o1, String o2) {
-            int strings_compared = 0;
-            String o1_stripped = o1.replaceAll("([^0-9.])|(\\.$)", "");
-            String o2_stripped = o2.replaceAll("([^0-9.])|(\\.$)", "");
-            if (o1_stripped.isEmpty()) {
-                o1_stripped = Double.toString(-Double.MAX_VALUE);
-            } else {
-                String[] o1_split = o1_stripped.split("\\.");
-                if (o1_split.length > 1) {
-                    boolean first_period = false;
-                    String o1_cleaned = "";
-                    for (String characters : o1_split) {
-                        if (!first_period) {
-                            o1_cleaned += characters + ".";
-                            first_period = true;
-                        } else {
-                            o1_cleaned += characters;
-                        }
-                    }
-                    o1_stripped = o1_cleaned;
+        // Default renderer for table columns.
+        TableCellRenderer default_renderer = new DefaultTableCellRenderer() {
+
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean is_selected, boolean has_focus, int row, int column) {
+                Component tableCellRendererComponent = super.getTableCellRendererComponent(table, value, is_selected, has_focus, row, column);
+                ((DefaultTableCellRenderer) tableCellRendererComponent).setHorizontalAlignment(DefaultTableCellRenderer.LEFT);
+                ((DefaultTableCellRenderer) tableCellRendererComponent).setVerticalAlignment(DefaultTableCellRenderer.TOP);
+                if (!(table.getModel().getValueAt(table.convertRowIndexToModel(row), 1)).toString().equals("Yes")) {
+                    tableCellRendererComponent.setForeground(Color.WHITE);
+                    tableCellRendererComponent.setBackground(Color.DARK_GRAY);
+                } else {
+                    tableCellRendererComponent.setForeground(Color.BLACK);
+                    tableCellRendererComponent.setBackground(Color.WHITE);
                 }
+                return tableCellRendererComponent;
             }
-            if (o2_stripped.isEmpty()) {
-                o2_stripped = Double.toString(-Double.MAX_VALUE);
-            } else {
-                String[] o2_split = o2_stripped.split("\\.");
-                if (o2_split.length > 1) {
-                    boolean first_period = false;
-                    String o2_cleaned = "";
-                    for (String characters : o2_split) {
-                        if (!first_period) {
-                            o2_cleaned += characters + ".";
-                            first_period = true;
-                        } else {
-                            o2_cleaned += characters;
-                        }
-                    }
-                    o2_stripped = o2_cleaned;
+        };
+        // Determines how the Successfully Deleted? column shoud be displayed.
+        TableCellRenderer deletion_successful_renderer = new DefaultTableCellRenderer() {
+
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean is_selected, boolean has_focus, int row, int column) {
+                Component tableCellRendererComponent = super.getTableCellRendererComponent(table, value, is_selected, has_focus, row, column);
+                ((DefaultTableCellRenderer) tableCellRendererComponent).setHorizontalAlignment(DefaultTableCellRenderer.LEFT);
+                ((DefaultTableCellRenderer) tableCellRendererComponent).setVerticalAlignment(DefaultTableCellRenderer.TOP);
+                if (!(table.getModel().getValueAt(table.convertRowIndexToModel(row), 1)).toString().equals("Yes")) {
+                    tableCellRendererComponent.setForeground(Color.WHITE);
+                    tableCellRendererComponent.setBackground(Color.DARK_GRAY);
+                } else {
+                    tableCellRendererComponent.setForeground(Color.BLACK);
+                    tableCellRendererComponent.setBackground(uneditable_color);
                 }
+                return tableCellRendererComponent;
             }
-            Double o1_converted;
-            Double o2_converted;
-            try {
-                o1_converted = Double.parseDouble(o1_stripped);
-            } catch (NumberFormatException e) {
-                o1_converted = -Double.MAX_VALUE;
+        };
+        // Determines how the Size column shoud be displayed.
+        TableCellRenderer size_renderer = new DefaultTableCellRenderer() {
+
+            @Override
+            public void setValue(Object value) {
+                setText(sizeToFormattedString(value, "No size set"));
             }
-            try {
-                o2_converted = Double.parseDouble(o2_stripped);
-            } catch (NumberFormatException e) {
-                o2_converted = -Double.MAX_VALUE;
+
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean is_selected, boolean has_focus, int row, int column) {
+                Component tableCellRendererComponent = super.getTableCellRendererComponent(table, value, is_selected, has_focus, row, column);
+                if (!(table.getModel().getValueAt(table.convertRowIndexToModel(row), 1)).toString().equals("Yes")) {
+                    tableCellRendererComponent.setForeground(Color.WHITE);
+                    tableCellRendererComponent.setBackground(Color.DARK_GRAY);
+                } else {
+                    tableCellRendererComponent.setForeground(Color.BLACK);
+                    tableCellRendererComponent.setBackground(Color.WHITE);
+                }
+                ((DefaultTableCellRenderer) tableCellRendererComponent).setHorizontalAlignment(DefaultTableCellRenderer.RIGHT);
+                ((DefaultTableCellRenderer) tableCellRendererComponent).setVerticalAlignment(DefaultTableCellRenderer.TOP);
+                return tableCellRendererComponent;
             }
-            strings_compared = Double.compare(o1_converted, o2_converted);
-            return strings_compared;
-        }
+        };
 
+        deletion_report_frame_table.getModel().removeTableModelListener(deletion_report_listener);
+        deletion_report_frame_table.getColumnModel().removeColumnModelListener(deletion_report_listener);
+        deletion_report_table_model.setResults(Collections.<DeletionResult>emptyList());
+        deletion_report_frame_table.getColumnModel().getColumn(0).setCellRenderer(default_renderer);
+        deletion_report_frame_table.getColumnModel().getColumn(0).setPreferredWidth(70);
+        deletion_report_frame_table.getColumnModel().getColumn(0).setMinWidth(1);
+        deletion_report_frame_table.getColumnModel().getColumn(0).setMaxWidth(Short.MAX_VALUE);
+        deletion_report_frame_table.getColumnModel().getColumn(1).setCellRenderer(deletion_successful_renderer);
+        deletion_report_frame_table.getColumnModel().getColumn(1).setPreferredWidth(60);
+        deletion_report_frame_table.getColumnModel().getColumn(1).setMinWidth(1);
+        deletion_report_frame_table.getColumnModel().getColumn(1).setMaxWidth(Short.MAX_VALUE);
+        deletion_report_frame_table.getColumnModel().getColumn(2).setCellRenderer(new possibleErrorRenderer());
+        deletion_report_frame_table.getColumnModel().getColumn(2).setPreferredWidth(70);
+        deletion_report_frame_table.getColumnModel().getColumn(2).setMinWidth(1);
+        deletion_report_frame_table.getColumnModel().getColumn(2).setMaxWidth(Short.MAX_VALUE);
+        deletion_report_frame_table.getColumnModel().getColumn(3).setCellRenderer(new possibleErrorRenderer());
+        deletion_report_frame_table.getColumnModel().getColumn(3).setPreferredWidth(50);
+        deletion_report_frame_table.getColumnModel().getColumn(3).setMinWidth(1);
+        deletion_report_frame_table.getColumnModel().getColumn(3).setMaxWidth(Short.MAX_VALUE);
+        deletion_report_frame_table.getColumnModel().getColumn(4).setCellRenderer(new possibleErrorRenderer());
+        deletion_report_frame_table.getColumnModel().getColumn(4).setPreferredWidth(60);
+        deletion_report_frame_table.getColumnModel().getColumn(4).setMinWidth(1);
+        deletion_report_frame_table.getColumnModel().getColumn(4).setMaxWidth(Short.MAX_VALUE);
+        deletion_report_frame_table.getColumnModel().getColumn(5).setCellRenderer(default_renderer);
+        deletion_report_frame_table.getColumnModel().getColumn(5).setPreferredWidth(275);
+        deletion_report_frame_table.getColumnModel().getColumn(5).setMinWidth(1);
+        deletion_report_frame_table.getColumnModel().getColumn(5).setMaxWidth(Short.MAX_VALUE);
+        deletion_report_frame_table.getColumnModel().getColumn(6).setCellRenderer(default_renderer);
+        deletion_report_frame_table.getColumnModel().getColumn(6).setPreferredWidth(215);
+        deletion_report_frame_table.getColumnModel().getColumn(6).setMinWidth(1);
+        deletion_report_frame_table.getColumnModel().getColumn(6).setMaxWidth(Short.MAX_VALUE);
+        deletion_report_frame_table.getColumnModel().getColumn(7).setCellRenderer(size_renderer);
+        deletion_report_frame_table.getColumnModel().getColumn(7).setPreferredWidth(50);
+        deletion_report_frame_table.getColumnModel().getColumn(7).setMinWidth(1);
+        deletion_report_frame_table.getColumnModel().getColumn(7).setMaxWidth(Short.MAX_VALUE);
+        deletion_report_frame_table.setAutoCreateRowSorter(false);
+        tableRowSorterWithPreferredColumn sorter = new tableRowSorterWithPreferredColumn(new ArrayList<Integer>(Arrays.asList(1, 0)), SortOrder.ASCENDING, deletion_report_frame_table.getModel());
+        deletion_report_frame_table.setRowSorter(sorter);
+        sorter.setSizeColumn(7);
+        List<RowSorter.SortKey> sort_keys = new ArrayList<RowSorter.SortKey>();
+        sort_keys.add(new RowSorter.SortKey(1, SortOrder.ASCENDING));
+        sort_keys.add(new RowSorter.SortKey(0, SortOrder.ASCENDING));
+        sorter.setSortKeys(sort_keys);
+        deletion_report_frame_table.getModel().addTableModelListener(deletion_report_listener);
+        deletion_report_frame_table.getColumnModel().addColumnModelListener(deletion_report_listener);
+        deletion_report_frame.setVisible(true);
+    }
+
+    /**
+     * Overridden from TableModelListener.
+     * <p>
+     * Used to track changes to the results table JTable.
+     *
+     * @param e the event detailing the change in table model
+     */
+    @Override
+    public void tableChanged(TableModelEvent e) {
+        if (e.getColumn() == 0) {
+            setFormattedTitle();
+        }
     }
 
     /**
@@ -1340,6 +1537,15 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         SortOrder preferred_sort_order;
         boolean first_sort;
         int last_column_sorted;
+        // Compares sizes in bytes, users without a size are negative so sort before all sized users.
+        final Comparator<Long> size_comparator = new Comparator<Long>() {
+            @Override
+            public int compare(Long o1, Long o2) {
+                long size_1 = o1 == null ? UserData.SIZE_NOT_CHECKED : o1;
+                long size_2 = o2 == null ? UserData.SIZE_NOT_CHECKED : o2;
+                return size_1 < size_2 ? -1 : (size_1 == size_2 ? 0 : 1);
+            }
+        };
 
         public tableRowSorterWithPreferredColumn(M model) {
             column_preferences = new ArrayList<>(Arrays.asList(0));
@@ -1391,6 +1597,15 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
             super.toggleSortOrder(column);
         }
 
+        /**
+         * Sorts a column holding sizes in bytes as Long values numerically.
+         *
+         * @param column the index of the size column in the model
+         */
+        public void setSizeColumn(int column) {
+            setComparator(column, size_comparator);
+        }
+
         private void generateSortKeys(int first_column, SortOrder first_column_sort_order) {
             List<SortKey> new_keys = new ArrayList<SortKey>();
             new_keys.add(new SortKey(first_column, first_column_sort_order));
@@ -1432,13 +1647,18 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
      * Listener to track changes in the deletion report JTable. This is used
      * specifically to dynamically adjust row height for each row as the table
      * view is changed.
+     * <p>
+     * Only the rows currently visible are measured, the rest are measured as
+     * they are scrolled into view.
      */
-    private class deletionReportListener implements TableModelListener, TableColumnModelListener {
+    private class deletionReportListener implements TableModelListener, TableColumnModelListener, ChangeListener {
 
         JTable table;
+        boolean updating_row_heights;
 
         deletionReportListener(JTable table) {
             this.table = table;
+            updating_row_heights = false;
         }
 
         @Override
@@ -1451,16 +1671,37 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
             updateRowHeights();
         }
 
+        @Override
+        public void stateChanged(ChangeEvent e) {
+            updateRowHeights();
+        }
+
         private void updateRowHeights() {
-            for (int i = 0; i < table.getRowCount(); i++) {
-                int row_height = 0;
-                for (int j = 0; j < table.getColumnCount(); j++) {
-                    int current_cell_height = table.getCellRenderer(i, j).getTableCellRendererComponent(table, table.getValueAt(i, j), false, false, i, j).getPreferredSize().height;
-                    if (current_cell_height > row_height) {
-                        row_height = current_cell_height;
+            // Changing a row height scrolls the viewport, which would call this again.
+            if (updating_row_heights || table.getRowCount() == 0) {
+                return;
+            }
+            updating_row_heights = true;
+            try {
+                Rectangle visible_area = table.getVisibleRect();
+                int first_row = Math.max(table.rowAtPoint(visible_area.getLocation()), 0);
+                for (int i = first_row; i < table.getRowCount(); i++) {
+                    if (table.getCellRect(i, 0, true).y > visible_area.y + visible_area.height) {
+                        break;
+                    }
+                    int row_height = 0;
+                    for (int j = 0; j < table.getColumnCount(); j++) {
+                        int current_cell_height = table.getCellRenderer(i, j).getTableCellRendererComponent(table, table.getValueAt(i, j), false, false, i, j).getPreferredSize().height;
+                        if (current_cell_height > row_height) {
+                            row_height = current_cell_height;
+                        }
+                    }
+                    if (row_height > 0 && table.getRowHeight(i) != row_height) {
+                        table.setRowHeight(i, row_height);
                     }
                 }
-                table.setRowHeight(i, row_height);
+            } finally {
+                updating_row_heights = false;
             }
         }
 
@@ -1481,14 +1722,13 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
 
         @Override
         public void columnSelectionChanged(ListSelectionEvent e) {
-            updateRowHeights();
         }
     }
 
     /**
      * SwingWorker thread used to run the setComputer function from the GUI.
      */
-    private class setComputerThread extends SwingWorker<Object, Object> {
+    private class setComputerThread extends progressThread {
 
         boolean ping_success = false;
 
@@ -1502,6 +1742,13 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
                 profile_deleter.setRegistryCheckComplete(false);
                 profile_deleter.setRemoteComputer(computer_name_text_field.getText());
                 profile_deleter.generateUserList();
+                // Shows the new user list before the checks start so each user's progress can be seen.
+                SwingUtilities.invokeAndWait(new Runnable() {
+                    @Override
+                    public void run() {
+                        createTableData();
+                    }
+                });
                 profile_deleter.checkAll();
                 computer_set = true;
             } else {
@@ -1526,7 +1773,52 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
             registry_check_checkbox.setEnabled(true);
             delete_all_users_checkbox.setEnabled(true);
             write_log_button.setEnabled(true);
+            cancel_button.setEnabled(false);
             results_table.setEnabled(true);
+            if (profile_deleter.getCancelRequested()) {
+                setStage("Checks cancelled");
+            } else {
+                setStage(computer_set ? "Checks complete" : "Computer not set");
+            }
+            setFormattedTitle();
+        }
+    }
+
+    /**
+     * Passes a changed user to a SwingWorker thread if it is running.
+     *
+     * @param thread the SwingWorker thread, or null if it has never been run
+     * @param user the user that changed
+     */
+    private void publishUserChanged(progressThread thread, UserData user) {
+        if (thread != null && !thread.isDone()) {
+            thread.userChanged(user);
+        }
+    }
+
+    /**
+     * SwingWorker thread that shows the progress of each user in the results
+     * table while it runs.
+     * <p>
+     * Every change to a user is published from the thread that made it, and
+     * the changed rows are redrawn when Swing passes the published users to
+     * process on the event dispatch thread, which happens at most about 30
+     * times a second no matter how many users change.
+     */
+    private abstract class progressThread extends SwingWorker<Object, UserData> {
+
+        /**
+         * Publishes a changed user.
+         *
+         * @param user the user that changed
+         */
+        void userChanged(UserData user) {
+            publish(user);
+        }
+
+        @Override
+        protected void process(List<UserData> changed_users) {
+            user_table_model.fireChangedRows();
             setFormattedTitle();
         }
     }
@@ -1534,7 +1826,7 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
     /**
      * SwingWorker thread used to run the checkAll function from the GUI.
      */
-    private class rerunChecksThread extends SwingWorker<Object, Object> {
+    private class rerunChecksThread extends progressThread {
 
         @Override
         protected Object doInBackground() throws Exception {
@@ -1559,7 +1851,9 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
             registry_check_checkbox.setEnabled(true);
             delete_all_users_checkbox.setEnabled(true);
             write_log_button.setEnabled(true);
+            cancel_button.setEnabled(false);
             results_table.setEnabled(true);
+            setStage(profile_deleter.getCancelRequested() ? "Checks cancelled" : "Checks complete");
         }
     }
 
@@ -1598,25 +1892,22 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
     /**
      * SwingWorker thread used to run the processDeletion function from the GUI.
      */
-    private class runDeletionThread extends SwingWorker<Object, Object> {
+    private class runDeletionThread extends progressThread {
+
+        List<DeletionResult> deletion_results = new ArrayList<>();
 
         @Override
         protected Object doInBackground() throws Exception {
             running_deletion = true;
-            number_of_users_selected_for_deletion = 0;
-            for (UserData user : profile_deleter.getUserList()) {
-                if (user.getDelete()) {
-                    number_of_users_selected_for_deletion++;
+            number_of_users_selected_for_deletion = profile_deleter.getSelectedCount();
+            deletion_results = profile_deleter.processDeletion();
+            if (!deletion_results.isEmpty()) {
+                StringBuilder console_report = new StringBuilder(128 * (deletion_results.size() + 2));
+                DeletionResult.appendReportHeadings(console_report.append("\nDeletion report:\n"));
+                for (DeletionResult deletion_result : deletion_results) {
+                    deletion_result.appendReportLine(console_report.append('\n'));
                 }
-            }
-            List<String> deleted_users = profile_deleter.processDeletion();
-            deleted_users.add(0, "Deletion report:");
-            if (deleted_users.size() > 2) {
-                for (String deleted_user : deleted_users) {
-                    system_console_text_area.append('\n' + deleted_user);
-                }
-                displayDeletionReport(deleted_users);
-                setFormattedTitle();
+                console_queue.offer(console_report.substring(1));
             } else {
                 profile_deleter.logMessage("Nothing was flagged for deletion", ProfileDeleter.LOG_TYPE.WARNING, true);
             }
@@ -1626,6 +1917,9 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
         @Override
         public void done() {
             createTableData();
+            // The report is displayed here so its table is only changed on the event dispatch thread.
+            displayDeletionReport(deletion_results);
+            setFormattedTitle();
             if (profile_deleter.getStateCheckComplete() && profile_deleter.getRegistryCheckComplete()) {
                 run_deletion_button.setEnabled(true);
             }
@@ -1637,8 +1931,10 @@ public class ProfileDeleterGUI extends JFrame implements TableModelListener, Act
             registry_check_checkbox.setEnabled(true);
             delete_all_users_checkbox.setEnabled(true);
             write_log_button.setEnabled(true);
+            cancel_button.setEnabled(false);
             results_table.setEnabled(true);
             running_deletion = false;
+            setStage(profile_deleter.getCancelRequested() ? "Deletion cancelled" : "Deletion complete");
         }
     }
 }
@@ -0,0 +1,269 @@
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Queue of renamed user folders waiting to be deleted in the background.
+ * <p>
+ * When a two phase deletion is run each user folder is renamed and its
+ * registry keys deleted straight away, then the renamed folder is added to
+ * this queue. Folders are deleted by a fixed number of background threads so
+ * only a limited number of deletions read and write to the remote computers at
+ * once.<br>
+ * The queue is saved to a file every time it changes so folders still waiting
+ * to be deleted when the program closes are deleted the next time it starts.
+ * Every ProfileDeleter session using the same queue file shares a single
+ * PurgeQueue.<br>
+ * Folders are deleted and their results logged by the session passed to
+ * resume rather than the session that queued them, so purges carry on after
+ * the computer that queued them is closed. Until resume is called folders are
+ * only saved to the queue file.
+ */
+public class PurgeQueue {
+
+    /**
+     * Added to the name of each renamed user folder, followed by the session
+     * ID of the deletion.
+     */
+    public static final String PURGE_SUFFIX = ".pd-trash-";
+
+    /**
+     * The queue for each queue file that has been opened.
+     */
+    private static final Map<String, PurgeQueue> QUEUES = new HashMap<>();
+
+    /**
+     * Class attributes.
+     */
+    private final File queue_file;
+    private final Map<String, String> pending_folders;
+    private final Set<String> scheduled_folders;
+    private final ExecutorService purge_pool;
+    private ProfileDeleter purge_session;
+
+    /**
+     * Constructor for PurgeQueue class.
+     * <p>
+     * Loads any folders left in the queue file. The folders are not deleted
+     * until resume is called.
+     *
+     * @param queue_file the file the queue is saved to
+     * @param purge_concurrency the number of folders to delete at once
+     */
+    private PurgeQueue(File queue_file, int purge_concurrency) {
+        this.queue_file = queue_file;
+        pending_folders = new LinkedHashMap<>();
+        scheduled_folders = new HashSet<>();
+        purge_session = null;
+        purge_pool = Executors.newFixedThreadPool(purge_concurrency, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ProfileDeleter-purge");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (queue_file.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(queue_file))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] line_split = line.split("\t", -1);
+                    if (line_split.length == 2 && !line_split[1].isEmpty()) {
+                        pending_folders.put(line_split[1], line_split[0]);
+                    }
+                }
+            } catch (IOException e) {
+                // Folders that cannot be loaded stay renamed on the remote computer and can be deleted manually.
+            }
+        }
+    }
+
+    /**
+     * Gets the queue saved to a file, loading it the first time it is
+     * requested.
+     *
+     * @param queue_file the file the queue is saved to
+     * @param purge_concurrency the number of folders to delete at once. Only
+     * used the first time the queue is requested
+     * @return the queue saved to the file
+     */
+    public static synchronized PurgeQueue getQueue(File queue_file, int purge_concurrency) {
+        String key = queue_file.getAbsolutePath();
+        PurgeQueue queue = QUEUES.get(key);
+        if (queue == null) {
+            queue = new PurgeQueue(queue_file, purge_concurrency);
+            QUEUES.put(key, queue);
+        }
+        return queue;
+    }
+
+    /**
+     * Adds a renamed folder to the queue and starts deleting it in the
+     * background if resume has been called.
+     *
+     * @param computer the computer the folder is on
+     * @param folder the path + name of the renamed folder
+     * @throws IOException the queue file could not be saved. The folder is
+     * still deleted
+     */
+    public synchronized void add(String computer, String folder) throws IOException {
+        pending_folders.put(folder, computer);
+        try {
+            save();
+        } finally {
+            if (purge_session != null) {
+                schedule(folder);
+            }
+        }
+    }
+
+    /**
+     * Starts deleting every folder in the queue that is not already being
+     * deleted, and every folder added from now on.
+     * <p>
+     * Folders that failed to delete are tried again.
+     *
+     * @param purge_session the session used to delete the folders and log the
+     * results. It must stay open for as long as folders are being deleted
+     * @return the number of folders started
+     */
+    public synchronized int resume(ProfileDeleter purge_session) {
+        this.purge_session = purge_session;
+        int started = 0;
+        for (String folder : pending_folders.keySet()) {
+            if (schedule(folder)) {
+                started++;
+            }
+        }
+        return started;
+    }
+
+    /**
+     * Gets the folders waiting to be deleted on a computer.
+     *
+     * @param computer the computer the folders are on
+     * @return the path + name of each folder waiting to be deleted
+     */
+    public synchronized List<String> getPendingFolders(String computer) {
+        List<String> folders = new ArrayList<>();
+        for (Map.Entry<String, String> pending_folder : pending_folders.entrySet()) {
+            if (pending_folder.getValue().equalsIgnoreCase(computer)) {
+                folders.add(pending_folder.getKey());
+            }
+        }
+        return folders;
+    }
+
+    /**
+     * Gets the number of folders waiting to be deleted on every computer.
+     *
+     * @return the number of folders waiting to be deleted
+     */
+    public synchronized int size() {
+        return pending_folders.size();
+    }
+
+    /**
+     * Starts deleting a folder on the purge threads unless it is already being
+     * deleted.
+     *
+     * @param folder the path + name of the folder to delete
+     * @return whether the folder was started
+     */
+    private boolean schedule(final String folder) {
+        if (!scheduled_folders.add(folder)) {
+            return false;
+        }
+        final ProfileDeleter profile_deleter = purge_session;
+        purge_pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                purge(folder, profile_deleter);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Deletes a folder and removes it from the queue. Runs on a purge thread.
+     * <p>
+     * A folder that no longer exists is removed from the queue. A folder that
+     * fails to delete is kept in the queue and tried again the next time
+     * resume is called.
+     *
+     * @param folder the path + name of the folder to delete
+     * @param profile_deleter the session used to delete the folder and log the
+     * result
+     */
+    private void purge(String folder, ProfileDeleter profile_deleter) {
+        LogContext.set(new File(folder).getName(), "purge");
+        long start_time = System.currentTimeMillis();
+        String outcome = "success";
+        String output = "";
+        try {
+            if (new File(folder).exists()) {
+                profile_deleter.directoryDelete(folder, false);
+            } else {
+                outcome = "skipped";
+                profile_deleter.logMessage(ProfileDeleter.LOG_TYPE.INFO, "Renamed folder {} no longer exists, removing it from the purge queue", folder);
+            }
+        } catch (IOException | CannotEditException | InterruptedException e) {
+            outcome = "failed";
+            output = e.getMessage();
+            profile_deleter.logMessage("Failed to purge renamed folder " + folder + ", it will be tried again the next time the program starts. Error is " + e.getMessage(), ProfileDeleter.LOG_TYPE.WARNING, true);
+        }
+        synchronized (this) {
+            scheduled_folders.remove(folder);
+            if (!outcome.equals("failed")) {
+                pending_folders.remove(folder);
+                try {
+                    save();
+                } catch (IOException e) {
+                    profile_deleter.logMessage("Failed to save purge queue " + queue_file.getPath() + ". Error is " + e.getMessage(), ProfileDeleter.LOG_TYPE.WARNING, true);
+                }
+            }
+        }
+        profile_deleter.logOutcome("purge", LogContext.getUser(), 1, System.currentTimeMillis() - start_time, outcome, output, outcome.equals("failed") ? ProfileDeleter.LOG_TYPE.WARNING : ProfileDeleter.LOG_TYPE.INFO);
+        LogContext.clear();
+    }
+
+    /**
+     * Writes the queue to the queue file, replacing the previous file only once
+     * the new one has been written.
+     *
+     * @throws IOException an IO error occurred when writing the queue file
+     */
+    private synchronized void save() throws IOException {
+        File directory = queue_file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Unable to create purge queue folder " + directory.getPath());
+        }
+        File temp_file = new File(queue_file.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp_file))) {
+            for (Map.Entry<String, String> pending_folder : pending_folders.entrySet()) {
+                writer.write(pending_folder.getValue() + '\t' + pending_folder.getKey());
+                writer.newLine();
+            }
+        }
+        if (queue_file.exists() && !queue_file.delete()) {
+            throw new IOException("Unable to replace purge queue file " + queue_file.getPath());
+        }
+        if (!temp_file.renameTo(queue_file)) {
+            throw new IOException("Unable to replace purge queue file " + queue_file.getPath());
+        }
+    }
+}
@@ -0,0 +1,291 @@
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Streaming reader for registry files created by REG EXPORT or regedit.
+ * <p>
+ * Reads the file a line at a time and adds each key and value to a
+ * RegistryProfileIndex, so large exports never need to be loaded into memory
+ * whole.<br>
+ * Handles:
+ * <ul>
+ * <li>UTF-16LE, UTF-16BE and UTF-8 files with a byte order mark and ANSI
+ * REGEDIT4 files without one.</li>
+ * <li>Hex values split over several lines using a trailing \.</li>
+ * <li>String values with escaped \ and " characters.</li>
+ * <li>dword, qword, hex, hex(2) (REG_EXPAND_SZ) and hex(7) (REG_MULTI_SZ)
+ * values. Data is converted to the same text REG QUERY displays so both
+ * registry sources produce the same index.</li>
+ * </ul>
+ */
+public class RegFileReader {
+
+    /**
+     * Header line of an ANSI registry file.
+     */
+    private static final String REGEDIT4_HEADER = "REGEDIT4";
+
+    /**
+     * Reads a registry file and adds its keys and values to an index.
+     *
+     * @param file the registry file to read
+     * @param registry_index the index to add the keys and values to
+     * @throws IOException an IO error occurred when reading the file
+     */
+    public static void read(File file, RegistryProfileIndex registry_index) throws IOException {
+        try (BufferedReader reader = openReader(file)) {
+            boolean unicode = true;
+            StringBuilder logical_line = new StringBuilder();
+            String line;
+            boolean first_line = true;
+            while ((line = reader.readLine()) != null) {
+                if (first_line) {
+                    unicode = !line.trim().equals(REGEDIT4_HEADER);
+                    first_line = false;
+                    continue;
+                }
+                String trimmed_line = line.trim();
+                if (trimmed_line.endsWith("\\") && !trimmed_line.startsWith("[") && !trimmed_line.endsWith("\"")) {
+                    logical_line.append(trimmed_line, 0, trimmed_line.length() - 1);
+                    continue;
+                }
+                logical_line.append(trimmed_line);
+                processLine(logical_line.toString(), registry_index, unicode);
+                logical_line.setLength(0);
+            }
+            if (logical_line.length() > 0) {
+                processLine(logical_line.toString(), registry_index, unicode);
+            }
+        }
+    }
+
+    /**
+     * Opens a registry file for reading using the encoding given by its byte
+     * order mark.
+     * <p>
+     * Files without a byte order mark are read using the default charset, as
+     * REGEDIT4 files are written in the ANSI code page.
+     *
+     * @param file the registry file to open
+     * @return a reader positioned after the byte order mark
+     * @throws IOException an IO error occurred when opening the file
+     */
+    public static BufferedReader openReader(File file) throws IOException {
+        PushbackInputStream input = new PushbackInputStream(new FileInputStream(file), 3);
+        try {
+            byte[] bom = new byte[3];
+            int read = readFully(input, bom);
+            Charset charset;
+            int bom_length;
+            if (read >= 2 && (bom[0] & 0xFF) == 0xFF && (bom[1] & 0xFF) == 0xFE) {
+                charset = Charset.forName("UTF-16LE");
+                bom_length = 2;
+            } else if (read >= 2 && (bom[0] & 0xFF) == 0xFE && (bom[1] & 0xFF) == 0xFF) {
+                charset = Charset.forName("UTF-16BE");
+                bom_length = 2;
+            } else if (read >= 3 && (bom[0] & 0xFF) == 0xEF && (bom[1] & 0xFF) == 0xBB && (bom[2] & 0xFF) == 0xBF) {
+                charset = Charset.forName("UTF-8");
+                bom_length = 3;
+            } else {
+                charset = Charset.defaultCharset();
+                bom_length = 0;
+            }
+            if (read > bom_length) {
+                input.unread(bom, bom_length, read - bom_length);
+            }
+            return new BufferedReader(new InputStreamReader(input, charset), 65536);
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds a single logical line of a registry file to an index.
+     *
+     * @param line the logical line with any continuation lines joined
+     * @param registry_index the index to add the key or value to
+     * @param unicode whether hex(2) and hex(7) data is UTF-16LE or ANSI
+     */
+    private static void processLine(String line, RegistryProfileIndex registry_index, boolean unicode) {
+        if (line.isEmpty() || line.startsWith(";")) {
+            return;
+        }
+        if (line.startsWith("[") && line.endsWith("]")) {
+            if (line.startsWith("[-")) {
+                registry_index.addKey("");
+            } else {
+                registry_index.addKey(line.substring(1, line.length() - 1));
+            }
+            return;
+        }
+        String name;
+        int data_start;
+        if (line.startsWith("@=")) {
+            name = "";
+            data_start = 2;
+        } else if (line.startsWith("\"")) {
+            StringBuilder unescaped = new StringBuilder();
+            int name_end = readQuoted(line, 0, unescaped);
+            if (name_end < 0 || name_end + 1 >= line.length() || line.charAt(name_end + 1) != '=') {
+                return;
+            }
+            name = unescaped.toString();
+            data_start = name_end + 2;
+        } else {
+            return;
+        }
+        String data = convertData(line.substring(data_start), unicode);
+        if (data != null) {
+            registry_index.addValue(name, data);
+        }
+    }
+
+    /**
+     * Converts the data of a registry file value into the text REG QUERY
+     * displays for the same value.
+     *
+     * @param data the data part of the value line, after the =
+     * @param unicode whether hex(2) and hex(7) data is UTF-16LE or ANSI
+     * @return the converted data or null if the value is a deletion or cannot
+     * be read
+     */
+    private static String convertData(String data, boolean unicode) {
+        if (data.startsWith("\"")) {
+            StringBuilder unescaped = new StringBuilder();
+            return readQuoted(data, 0, unescaped) < 0 ? null : unescaped.toString();
+        } else if (data.startsWith("dword:")) {
+            return "0x" + stripLeadingZeros(data.substring(6));
+        } else if (data.startsWith("hex(b):")) {
+            byte[] bytes = parseHex(data.substring(7));
+            StringBuilder hex = new StringBuilder();
+            for (int i = bytes.length - 1; i >= 0; i--) {
+                appendHexByte(hex, bytes[i]);
+            }
+            return "0x" + stripLeadingZeros(hex.toString());
+        } else if (data.startsWith("hex(2):") || data.startsWith("hex(7):")) {
+            byte[] bytes = parseHex(data.substring(7));
+            String text = new String(bytes, unicode ? Charset.forName("UTF-16LE") : Charset.defaultCharset());
+            int end = text.length();
+            while (end > 0 && text.charAt(end - 1) == '\0') {
+                end--;
+            }
+            text = text.substring(0, end);
+            return data.startsWith("hex(7):") ? text.replace("\0", "\\0") : text;
+        } else if (data.startsWith("hex")) {
+            int data_start = data.indexOf(':');
+            if (data_start < 0) {
+                return null;
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte value : parseHex(data.substring(data_start + 1))) {
+                appendHexByte(hex, value);
+            }
+            return hex.toString();
+        }
+        return null;
+    }
+
+    /**
+     * Reads a quoted registry file String, removing the escape characters.
+     *
+     * @param text the text containing the quoted String
+     * @param start the index of the opening quote
+     * @param unescaped where to write the unescaped String
+     * @return the index of the closing quote or -1 if there is no closing
+     * quote
+     */
+    private static int readQuoted(String text, int start, StringBuilder unescaped) {
+        for (int i = start + 1; i < text.length(); i++) {
+            char character = text.charAt(i);
+            if (character == '\\' && i + 1 < text.length()) {
+                i++;
+                unescaped.append(text.charAt(i));
+            } else if (character == '"') {
+                return i;
+            } else {
+                unescaped.append(character);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a comma separated list of hex bytes.
+     *
+     * @param hex the comma separated list of hex bytes
+     * @return the parsed bytes. Any malformed bytes are skipped
+     */
+    private static byte[] parseHex(String hex) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(hex.length() / 3 + 1);
+        int value = 0;
+        int digits = 0;
+        for (int i = 0; i < hex.length(); i++) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit >= 0) {
+                value = (value << 4) | digit;
+                digits++;
+            } else if (hex.charAt(i) == ',') {
+                if (digits > 0) {
+                    bytes.write(value);
+                }
+                value = 0;
+                digits = 0;
+            }
+        }
+        if (digits > 0) {
+            bytes.write(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Appends a byte to a String as two upper case hex digits.
+     *
+     * @param hex where to append the hex digits
+     * @param value the byte to append
+     */
+    private static void appendHexByte(StringBuilder hex, byte value) {
+        hex.append(Character.toUpperCase(Character.forDigit((value >> 4) & 0xF, 16)));
+        hex.append(Character.toUpperCase(Character.forDigit(value & 0xF, 16)));
+    }
+
+    /**
+     * Removes leading zeros from a hex number, leaving at least one digit.
+     *
+     * @param hex the hex number
+     * @return the hex number without leading zeros in lower case
+     */
+    private static String stripLeadingZeros(String hex) {
+        int start = 0;
+        while (start < hex.length() - 1 && hex.charAt(start) == '0') {
+            start++;
+        }
+        return hex.substring(start).toLowerCase();
+    }
+
+    /**
+     * Reads as many bytes as are available into a buffer, up to its length.
+     *
+     * @param input the stream to read from
+     * @param buffer the buffer to read into
+     * @return the number of bytes read
+     * @throws IOException an IO error occurred when reading the stream
+     */
+    private static int readFully(InputStream input, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = input.read(buffer, total, buffer.length - total)) > 0) {
+            total += read;
+        }
+        return total;
+    }
+}
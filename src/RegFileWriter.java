@@ -0,0 +1,269 @@
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+
+/**
+ * Streaming writer for registry files in the format created by REG EXPORT.
+ * <p>
+ * Files are written as UTF-16LE with a byte order mark and the Windows
+ * Registry Editor Version 5.00 header so they can be restored with REG IMPORT
+ * and read back with RegFileReader.<br>
+ * Keys and values can be written directly or converted from REG QUERY output a
+ * line at a time, so a registry key can be backed up straight from a REG
+ * QUERY process without holding the data in memory.
+ */
+public class RegFileWriter implements Closeable {
+
+    /**
+     * Header line of a unicode registry file.
+     */
+    public static final String REGEDIT5_HEADER = "Windows Registry Editor Version 5.00";
+
+    /**
+     * Number of hex bytes written on each line of a hex value.
+     */
+    private static final int HEX_BYTES_PER_LINE = 25;
+
+    /**
+     * Class attributes.
+     */
+    private final BufferedWriter writer;
+    private int key_count;
+    private int value_count;
+
+    /**
+     * Constructor for RegFileWriter class.
+     * <p>
+     * Creates the file, overwriting any existing file, and writes the byte
+     * order mark and header.
+     *
+     * @param file the registry file to create
+     * @throws IOException an IO error occurred when creating the file
+     */
+    public RegFileWriter(File file) throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-16LE")), 65536);
+        writer.write('\uFEFF');
+        writer.write(REGEDIT5_HEADER);
+        writer.write("\r\n");
+        key_count = 0;
+        value_count = 0;
+    }
+
+    /**
+     * Writes a registry key.
+     * <p>
+     * Any values written after this belong to this key until another key is
+     * written.
+     *
+     * @param key the full path of the registry key
+     * @throws IOException an IO error occurred when writing the file
+     */
+    public void writeKey(String key) throws IOException {
+        writer.write("\r\n[");
+        writer.write(key);
+        writer.write("]\r\n");
+        key_count++;
+    }
+
+    /**
+     * Writes a registry value under the last key written.
+     * <p>
+     * The data is given as REG QUERY displays it and converted to registry
+     * file syntax based on the type. Values of unknown types are skipped.
+     *
+     * @param name the name of the registry value. An empty String or
+     * (Default) writes the default value
+     * @param type the registry type of the value, for example REG_SZ
+     * @param data the data of the value as REG QUERY displays it
+     * @throws IOException an IO error occurred when writing the file
+     */
+    public void writeValue(String name, String type, String data) throws IOException {
+        String value;
+        if (type.equals("REG_SZ")) {
+            value = "\"" + escape(data) + "\"";
+        } else if (type.equals("REG_EXPAND_SZ")) {
+            value = "hex(2):" + formatHex((data + "\0").getBytes(Charset.forName("UTF-16LE")));
+        } else if (type.equals("REG_MULTI_SZ")) {
+            value = "hex(7):" + formatHex((data.replace("\\0", "\0") + "\0\0").getBytes(Charset.forName("UTF-16LE")));
+        } else if (type.equals("REG_DWORD")) {
+            value = String.format("dword:%08x", parseHexNumber(data) & 0xFFFFFFFFL);
+        } else if (type.equals("REG_QWORD")) {
+            long number = parseHexNumber(data);
+            byte[] bytes = new byte[8];
+            for (int i = 0; i < 8; i++) {
+                bytes[i] = (byte) (number >>> (8 * i));
+            }
+            value = "hex(b):" + formatHex(bytes);
+        } else if (type.equals("REG_BINARY")) {
+            value = "hex:" + formatHex(parseHexString(data));
+        } else if (type.equals("REG_NONE")) {
+            value = "hex(0):" + formatHex(parseHexString(data));
+        } else {
+            return;
+        }
+        if (name.isEmpty() || name.equals("(Default)")) {
+            writer.write("@=");
+        } else {
+            writer.write("\"");
+            writer.write(escape(name));
+            writer.write("\"=");
+        }
+        writer.write(value);
+        writer.write("\r\n");
+        value_count++;
+    }
+
+    /**
+     * Converts a single line of REG QUERY output and writes it.
+     * <p>
+     * Lines starting with HKEY_ are written as keys, indented lines are
+     * written as values and any other lines are ignored.<br>
+     * Only the indent and the separators REG QUERY puts between the name,
+     * type and data are removed, so whitespace at the end of String data is
+     * kept.
+     *
+     * @param line the line of REG QUERY output
+     * @throws IOException an IO error occurred when writing the file
+     */
+    public void addRegQueryLine(String line) throws IOException {
+        if (line.startsWith("HKEY_")) {
+            writeKey(line.trim());
+        } else if (!line.isEmpty() && Character.isWhitespace(line.charAt(0))) {
+            int value_start = 0;
+            while (value_start < line.length() && Character.isWhitespace(line.charAt(value_start))) {
+                value_start++;
+            }
+            String value = line.substring(value_start);
+            int name_end = value.indexOf("    REG_");
+            int separator_length = 4;
+            if (name_end < 0) {
+                name_end = value.indexOf("\tREG_");
+                separator_length = 1;
+            }
+            if (name_end >= 0) {
+                String type_and_data = value.substring(name_end + separator_length);
+                String type = type_and_data;
+                String data = "";
+                int type_end = type_and_data.indexOf("    ");
+                int data_separator_length = 4;
+                if (type_end < 0) {
+                    type_end = type_and_data.indexOf('\t');
+                    data_separator_length = 1;
+                }
+                if (type_end >= 0) {
+                    type = type_and_data.substring(0, type_end);
+                    data = type_and_data.substring(type_end + data_separator_length);
+                }
+                String name = value.substring(0, name_end);
+                if (!(name.equals("(Default)") && data.equals("(value not set)"))) {
+                    writeValue(name, type, data);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of keys written.
+     *
+     * @return the number of keys written
+     */
+    public int getKeyCount() {
+        return key_count;
+    }
+
+    /**
+     * Gets the number of values written.
+     *
+     * @return the number of values written
+     */
+    public int getValueCount() {
+        return value_count;
+    }
+
+    /**
+     * Writes the trailing blank line and closes the file.
+     *
+     * @throws IOException an IO error occurred when writing the file
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.write("\r\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Escapes the \ and " characters in a registry file String.
+     *
+     * @param text the String to escape
+     * @return the escaped String
+     */
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Formats bytes as a comma separated list of hex bytes, wrapped with
+     * continuation lines the same way REG EXPORT wraps them.
+     *
+     * @param bytes the bytes to format
+     * @return the formatted hex bytes
+     */
+    private static String formatHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 3 + (bytes.length / HEX_BYTES_PER_LINE) * 5);
+        for (int i = 0; i < bytes.length; i++) {
+            if (i > 0) {
+                hex.append(',');
+                if (i % HEX_BYTES_PER_LINE == 0) {
+                    hex.append("\\\r\n  ");
+                }
+            }
+            hex.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Parses a hex number as REG QUERY displays it, for example 0x1f.
+     *
+     * @param data the hex number
+     * @return the parsed number or 0 if it cannot be parsed
+     */
+    private static long parseHexNumber(String data) {
+        String hex = data.toLowerCase().startsWith("0x") ? data.substring(2) : data;
+        long number = 0;
+        for (int i = 0; i < hex.length(); i++) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                return 0;
+            }
+            number = (number << 4) | digit;
+        }
+        return number;
+    }
+
+    /**
+     * Parses binary data as REG QUERY displays it, a String of hex digit
+     * pairs with no separators.
+     *
+     * @param data the hex digit pairs
+     * @return the parsed bytes
+     */
+    private static byte[] parseHexString(String data) {
+        byte[] bytes = new byte[data.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(data.charAt(i * 2), 16);
+            int low = Character.digit(data.charAt(i * 2 + 1), 16);
+            bytes[i] = (byte) (((high < 0 ? 0 : high) << 4) | (low < 0 ? 0 : low));
+        }
+        return bytes;
+    }
+}
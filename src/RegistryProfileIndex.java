@@ -0,0 +1,259 @@
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the ProfileList and ProfileGuid registry data for a single
+ * computer.
+ * <p>
+ * Registry keys and values are added one at a time as they are read, so the
+ * registry data only needs to be read once and never needs to be held in
+ * memory as text.<br>
+ * While the data is added the following hash indexes are built:
+ * <ul>
+ * <li>SID to ProfileImagePath, from ProfileList.</li>
+ * <li>SID to Guid, from ProfileList.</li>
+ * <li>Guid to SidString, from ProfileGuid.</li>
+ * <li>Profile folder name to SID, from ProfileList.</li>
+ * </ul>
+ * Once built the SID and GUID for a user can be found in constant time.
+ */
+public class RegistryProfileIndex {
+
+    /**
+     * Registry keys containing the profile data.
+     */
+    public static final String PROFILE_LIST_KEY = "HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileList";
+    public static final String PROFILE_GUID_KEY = "HKEY_LOCAL_MACHINE\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\ProfileGuid";
+
+    /**
+     * The users directory profile paths are matched against.
+     */
+    private static final String USERS_DIRECTORY = "c:\\users\\";
+
+    /**
+     * Class attributes.
+     */
+    private final Map<String, String> sid_to_profile_path;
+    private final Map<String, String> sid_to_guid;
+    private final Map<String, String> guid_to_sid;
+    private final Map<String, List<String>> profile_name_to_sids;
+    private String current_sid;
+    private String current_guid;
+
+    /**
+     * Constructor for RegistryProfileIndex class.
+     */
+    public RegistryProfileIndex() {
+        sid_to_profile_path = new HashMap<>();
+        sid_to_guid = new HashMap<>();
+        guid_to_sid = new HashMap<>();
+        profile_name_to_sids = new HashMap<>();
+        current_sid = null;
+        current_guid = null;
+    }
+
+    /**
+     * Adds a registry key to the index.
+     * <p>
+     * Any values added after this are assigned to this key until another key
+     * is added. Keys that are not a direct sub key of ProfileList or
+     * ProfileGuid are ignored along with their values.
+     *
+     * @param key the full path of the registry key
+     */
+    public void addKey(String key) {
+        current_sid = findSubKey(key, PROFILE_LIST_KEY);
+        current_guid = findSubKey(key, PROFILE_GUID_KEY);
+    }
+
+    /**
+     * Adds a registry value to the index under the last key added.
+     *
+     * @param name the name of the registry value
+     * @param data the data of the registry value as a String
+     */
+    public void addValue(String name, String data) {
+        if (current_sid != null) {
+            if (name.equalsIgnoreCase("ProfileImagePath")) {
+                sid_to_profile_path.put(current_sid, data);
+                String profile_path = data.toLowerCase();
+                if (profile_path.startsWith(USERS_DIRECTORY)) {
+                    String profile_name = profile_path.substring(USERS_DIRECTORY.length());
+                    List<String> sids = profile_name_to_sids.get(profile_name);
+                    if (sids == null) {
+                        sids = new ArrayList<>(1);
+                        profile_name_to_sids.put(profile_name, sids);
+                    }
+                    sids.add(current_sid);
+                }
+            } else if (name.equalsIgnoreCase("Guid")) {
+                sid_to_guid.put(current_sid, data);
+            }
+        } else if (current_guid != null && name.equalsIgnoreCase("SidString")) {
+            guid_to_sid.put(current_guid, data);
+        }
+    }
+
+    /**
+     * Adds a single line of REG QUERY output to the index.
+     * <p>
+     * Lines starting with HKEY_ are added as keys, indented lines are added as
+     * values and any other lines are ignored.
+     *
+     * @param line the line of REG QUERY output
+     */
+    public void addRegQueryLine(String line) {
+        if (line.startsWith("HKEY_")) {
+            addKey(line.trim());
+        } else if (!line.isEmpty() && Character.isWhitespace(line.charAt(0))) {
+            String value = line.trim();
+            int name_end = value.indexOf("    REG_");
+            int separator_length = 4;
+            if (name_end < 0) {
+                name_end = value.indexOf("\tREG_");
+                separator_length = 1;
+            }
+            if (name_end >= 0) {
+                String type_and_data = value.substring(name_end + separator_length);
+                int type_end = type_and_data.indexOf("    ");
+                String data = "";
+                if (type_end < 0) {
+                    type_end = type_and_data.indexOf('\t');
+                    if (type_end >= 0) {
+                        data = type_and_data.substring(type_end + 1);
+                    }
+                } else {
+                    data = type_and_data.substring(type_end + 4);
+                }
+                addValue(value.substring(0, name_end), data.trim());
+            }
+        }
+    }
+
+    /**
+     * Adds everything indexed by another index to this index.
+     * <p>
+     * Allows ProfileList and ProfileGuid to be read at the same time into
+     * indexes of their own and combined once both have been read.
+     *
+     * @param index the index to add
+     */
+    public void addIndex(RegistryProfileIndex index) {
+        sid_to_profile_path.putAll(index.sid_to_profile_path);
+        sid_to_guid.putAll(index.sid_to_guid);
+        guid_to_sid.putAll(index.guid_to_sid);
+        for (Map.Entry<String, List<String>> profile_name_sids : index.profile_name_to_sids.entrySet()) {
+            List<String> sids = profile_name_to_sids.get(profile_name_sids.getKey());
+            if (sids == null) {
+                profile_name_to_sids.put(profile_name_sids.getKey(), new ArrayList<>(profile_name_sids.getValue()));
+            } else {
+                sids.addAll(profile_name_sids.getValue());
+            }
+        }
+    }
+
+    /**
+     * Adds every line of REG QUERY output to the index.
+     *
+     * @param lines the lines of REG QUERY output
+     */
+    public void addRegQueryLines(List<String> lines) {
+        for (String line : lines) {
+            addRegQueryLine(line);
+        }
+    }
+
+    /**
+     * Finds the SID for a users profile folder.
+     * <p>
+     * If more than one SID in ProfileList points to the folder the SID whose
+     * GUID in ProfileGuid points back to it is used, otherwise the first SID
+     * found is used.
+     *
+     * @param profile_name the name of the users folder in the users directory
+     * @return the SID for the user or null if no SID points to the folder
+     */
+    public String findSid(String profile_name) {
+        List<String> sids = profile_name_to_sids.get(profile_name.toLowerCase());
+        if (sids == null) {
+            return null;
+        }
+        if (sids.size() > 1) {
+            for (String sid : sids) {
+                String guid = sid_to_guid.get(sid);
+                if (guid != null && sid.equals(guid_to_sid.get(guid))) {
+                    return sid;
+                }
+            }
+        }
+        return sids.get(0);
+    }
+
+    /**
+     * Finds the GUID for a SID.
+     *
+     * @param sid the ProfileList SID
+     * @return the Guid value of the SID or an empty String if it has none
+     */
+    public String findGuid(String sid) {
+        String guid = sid_to_guid.get(sid);
+        return guid == null ? "" : guid;
+    }
+
+    /**
+     * Finds the ProfileImagePath for a SID.
+     *
+     * @param sid the ProfileList SID
+     * @return the ProfileImagePath of the SID or null if it has none
+     */
+    public String findProfilePath(String sid) {
+        return sid_to_profile_path.get(sid);
+    }
+
+    /**
+     * Finds the SidString for a GUID.
+     *
+     * @param guid the ProfileGuid GUID
+     * @return the SidString of the GUID or null if it has none
+     */
+    public String findSidForGuid(String guid) {
+        return guid_to_sid.get(guid);
+    }
+
+    /**
+     * Gets the number of SIDs found in ProfileList.
+     *
+     * @return the number of SIDs with a ProfileImagePath
+     */
+    public int getProfileCount() {
+        return sid_to_profile_path.size();
+    }
+
+    /**
+     * Gets the number of GUIDs found in ProfileGuid.
+     *
+     * @return the number of GUIDs with a SidString
+     */
+    public int getGuidCount() {
+        return guid_to_sid.size();
+    }
+
+    /**
+     * Gets the name of a direct sub key of a parent key.
+     *
+     * @param key the full path of the key
+     * @param parent_key the full path of the parent key
+     * @return the name of the sub key or null if the key is not a direct sub
+     * key of the parent key
+     */
+    private static String findSubKey(String key, String parent_key) {
+        int length = parent_key.length();
+        if (key.length() > length + 1 && key.regionMatches(true, 0, parent_key, 0, length) && key.charAt(length) == '\\' && key.indexOf('\\', length + 1) < 0) {
+            return key.substring(length + 1);
+        }
+        return null;
+    }
+}
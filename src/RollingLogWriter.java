@@ -0,0 +1,163 @@
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes log lines to a series of files, starting a new file when the current
+ * one reaches a maximum size or age.
+ * <p>
+ * Files are named &lt;prefix&gt;_&lt;part&gt;&lt;extension&gt;, with the part
+ * starting at 1. Lines are buffered and written when flush is called, so a crash loses at
+ * most the lines logged since the last flush.
+ */
+public class RollingLogWriter implements Closeable {
+
+    /**
+     * Class attributes.
+     */
+    private final File directory;
+    private final String prefix;
+    private final String extension;
+    private final long max_bytes;
+    private final long max_age;
+    private final Charset charset;
+    private final List<File> files;
+    private BufferedWriter writer;
+    private long current_bytes;
+    private long current_opened;
+
+    /**
+     * Constructor for RollingLogWriter class.
+     * <p>
+     * The first file is not created until the first line is written.
+     *
+     * @param directory the folder to write the log files to. Created if it
+     * does not exist
+     * @param prefix the start of the name of each log file
+     * @param extension the end of the name of each log file, for example .txt
+     * @param max_bytes the approximate size in bytes a log file can reach
+     * before a new file is started
+     * @param max_age how long in milliseconds a log file is written to before a
+     * new file is started
+     * @param charset the charset to write the log files in
+     */
+    public RollingLogWriter(File directory, String prefix, String extension, long max_bytes, long max_age, Charset charset) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.extension = extension;
+        this.max_bytes = max_bytes;
+        this.max_age = max_age;
+        this.charset = charset;
+        files = new ArrayList<>();
+        writer = null;
+        current_bytes = 0;
+        current_opened = 0;
+    }
+
+    /**
+     * Writes a line to the current log file, starting a new file first if the
+     * current one is full or too old.
+     *
+     * @param line the line to write
+     * @throws IOException an IO error occurred when creating or writing the
+     * log file
+     */
+    public synchronized void write(String line) throws IOException {
+        if (writer == null || current_bytes >= max_bytes || System.currentTimeMillis() - current_opened >= max_age) {
+            roll();
+        }
+        writer.write(line);
+        writer.newLine();
+        current_bytes += line.length() + System.lineSeparator().length();
+    }
+
+    /**
+     * Writes any buffered lines to the current log file.
+     *
+     * @throws IOException an IO error occurred when writing the log file
+     */
+    public synchronized void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Gets the log files written so far, oldest first.
+     *
+     * @return the log files written so far
+     */
+    public synchronized List<File> getFiles() {
+        return Collections.unmodifiableList(new ArrayList<>(files));
+    }
+
+    /**
+     * Flushes the current log file and copies every log file written so far
+     * into a single file.
+     *
+     * @param destination the file to create. Any existing file is overwritten
+     * @throws IOException an IO error occurred when reading the log files or
+     * writing the destination file
+     */
+    public synchronized void copyTo(File destination) throws IOException {
+        flush();
+        try (FileChannel destination_channel = new FileOutputStream(destination).getChannel()) {
+            for (File file : files) {
+                try (FileChannel source_channel = new FileInputStream(file).getChannel()) {
+                    long bytes = source_channel.size();
+                    long position = 0;
+                    while (position < bytes) {
+                        long transferred = source_channel.transferTo(position, bytes - position, destination_channel);
+                        if (transferred <= 0) {
+                            throw new IOException("Copy of " + file.getPath() + " stopped after " + position + " of " + bytes + " bytes");
+                        }
+                        position += transferred;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes and closes the current log file.
+     *
+     * @throws IOException an IO error occurred when writing the log file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            try {
+                writer.close();
+            } finally {
+                writer = null;
+            }
+        }
+    }
+
+    /**
+     * Closes the current log file and starts the next one.
+     *
+     * @throws IOException an IO error occurred when creating the log file
+     */
+    private void roll() throws IOException {
+        close();
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Unable to create log folder " + directory.getPath());
+        }
+        File file = new File(directory, prefix + "_" + (files.size() + 1) + extension);
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), charset));
+        files.add(file);
+        current_bytes = 0;
+        current_opened = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,317 @@
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled set of rules used to match users for the cannot delete list, the
+ * should not delete list and automatic selection.
+ * <p>
+ * A user matches the set if it matches any one rule. Each rule is one or more
+ * conditions joined with &amp; that must all match:<br>
+ * &lt;name&gt; - the users folder name, case insensitive<br>
+ * glob:&lt;pattern&gt; - the users folder name using * and ? wildcards, case
+ * insensitive<br>
+ * regex:&lt;pattern&gt; - the users folder name using a regular expression,
+ * case insensitive<br>
+ * sid:&lt;pattern&gt; - the users SID using * and ? wildcards, case
+ * insensitive<br>
+ * age&gt;&lt;number&gt;&lt;d|h&gt; or age&lt;&lt;number&gt;&lt;d|h&gt; - the
+ * time since the users folder was last updated<br>
+ * size&gt;&lt;number&gt;&lt;B|KB|MB|GB|TB&gt; or
+ * size&lt;&lt;number&gt;&lt;B|KB|MB|GB|TB&gt; - the size of the users
+ * folder<br>
+ * For example "age&gt;90d &amp; size&gt;1GB" matches every user not updated in
+ * 90 days whose folder is larger than 1 GB.<br>
+ * Rules are compiled once. Rules made of a single exact name are kept in a hash
+ * set, and rules made of a single name or SID pattern are combined into one
+ * regular expression each, so most users are matched with a single lookup.
+ */
+public class SelectionRules {
+
+    /**
+     * A single condition of a compound rule.
+     */
+    private static abstract class Condition {
+
+        abstract boolean matches(UserData user, long now);
+    }
+
+    /**
+     * Class attributes.
+     */
+    private final List<String> rules;
+    private final Set<String> names;
+    private final Pattern name_pattern;
+    private final Pattern sid_pattern;
+    private final List<List<Condition>> compound_rules;
+
+    /**
+     * Constructor for SelectionRules class with no rules.
+     */
+    public SelectionRules() {
+        rules = Collections.emptyList();
+        names = Collections.emptySet();
+        name_pattern = null;
+        sid_pattern = null;
+        compound_rules = Collections.emptyList();
+    }
+
+    /**
+     * Constructor for SelectionRules class.
+     * <p>
+     * Compiles every rule so they can be evaluated without parsing.
+     *
+     * @param rules the rules to compile, as written in the config file
+     * @throws NonNumericException a rule could not be compiled
+     */
+    public SelectionRules(List<String> rules) throws NonNumericException {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        names = new HashSet<>();
+        compound_rules = new ArrayList<>();
+        StringBuilder name_regex = new StringBuilder();
+        StringBuilder sid_regex = new StringBuilder();
+        for (String rule : rules) {
+            String[] conditions = rule.split("&");
+            if (conditions.length == 1) {
+                String condition = conditions[0].trim();
+                String lower_condition = condition.toLowerCase(Locale.ENGLISH);
+                if (lower_condition.startsWith("glob:")) {
+                    appendAlternative(name_regex, globToRegex(condition.substring(5)), rule);
+                    continue;
+                } else if (lower_condition.startsWith("regex:")) {
+                    appendAlternative(name_regex, condition.substring(6), rule);
+                    continue;
+                } else if (lower_condition.startsWith("sid:")) {
+                    appendAlternative(sid_regex, globToRegex(condition.substring(4)), rule);
+                    continue;
+                } else if (!isPredicate(lower_condition)) {
+                    if (!condition.isEmpty()) {
+                        names.add(lower_condition);
+                    }
+                    continue;
+                }
+            }
+            List<Condition> compound_rule = new ArrayList<>(conditions.length);
+            for (String condition : conditions) {
+                compound_rule.add(compileCondition(condition.trim(), rule));
+            }
+            compound_rules.add(compound_rule);
+        }
+        name_pattern = name_regex.length() > 0 ? compilePattern(name_regex.toString(), "name patterns") : null;
+        sid_pattern = sid_regex.length() > 0 ? compilePattern(sid_regex.toString(), "SID patterns") : null;
+    }
+
+    /**
+     * Checks whether a user matches any of the rules.
+     *
+     * @param user the user to check
+     * @param now the current time in milliseconds since the epoch, used for
+     * age conditions
+     * @return whether the user matches any of the rules
+     */
+    public boolean matches(UserData user, long now) {
+        if (names.contains(user.getName().toLowerCase(Locale.ENGLISH))) {
+            return true;
+        }
+        if (name_pattern != null && name_pattern.matcher(user.getName()).matches()) {
+            return true;
+        }
+        if (sid_pattern != null && !user.getSid().isEmpty() && sid_pattern.matcher(user.getSid()).matches()) {
+            return true;
+        }
+        for (List<Condition> compound_rule : compound_rules) {
+            boolean compound_rule_matches = true;
+            for (Condition condition : compound_rule) {
+                if (!condition.matches(user, now)) {
+                    compound_rule_matches = false;
+                    break;
+                }
+            }
+            if (compound_rule_matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the rules attribute.
+     *
+     * @return the rules as written in the config file
+     */
+    public List<String> getRules() {
+        return rules;
+    }
+
+    /**
+     * Gets whether there are no rules.
+     *
+     * @return whether there are no rules
+     */
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Compiles a single condition of a compound rule.
+     *
+     * @param condition the condition to compile
+     * @param rule the rule the condition belongs to, used in error messages
+     * @return the compiled condition
+     * @throws NonNumericException the condition could not be compiled
+     */
+    private static Condition compileCondition(String condition, String rule) throws NonNumericException {
+        String lower_condition = condition.toLowerCase(Locale.ENGLISH);
+        if (lower_condition.startsWith("glob:") || lower_condition.startsWith("regex:")) {
+            final Pattern pattern = compilePattern(lower_condition.startsWith("glob:") ? globToRegex(condition.substring(5)) : condition.substring(6), rule);
+            return new Condition() {
+                @Override
+                boolean matches(UserData user, long now) {
+                    return pattern.matcher(user.getName()).matches();
+                }
+            };
+        } else if (lower_condition.startsWith("sid:")) {
+            final Pattern pattern = compilePattern(globToRegex(condition.substring(4)), rule);
+            return new Condition() {
+                @Override
+                boolean matches(UserData user, long now) {
+                    return !user.getSid().isEmpty() && pattern.matcher(user.getSid()).matches();
+                }
+            };
+        } else if (lower_condition.startsWith("age")) {
+            final boolean greater_than = lower_condition.charAt(3) == '>';
+            final long age = parseQuantity(lower_condition.substring(4), new String[]{"d", "h"}, new long[]{86400000L, 3600000L}, rule);
+            return new Condition() {
+                @Override
+                boolean matches(UserData user, long now) {
+                    long last_updated_time = user.getLastUpdatedTime();
+                    if (last_updated_time < 0) {
+                        return false;
+                    }
+                    return greater_than ? now - last_updated_time > age : now - last_updated_time < age;
+                }
+            };
+        } else if (lower_condition.startsWith("size")) {
+            final boolean greater_than = lower_condition.charAt(4) == '>';
+            final long size = parseQuantity(lower_condition.substring(5), new String[]{"tb", "gb", "mb", "kb", "b"}, new long[]{1099511627776L, 1073741824L, 1048576L, 1024L, 1L}, rule);
+            return new Condition() {
+                @Override
+                boolean matches(UserData user, long now) {
+                    long user_size = user.getSize();
+                    if (user_size < 0) {
+                        return false;
+                    }
+                    return greater_than ? user_size > size : user_size < size;
+                }
+            };
+        } else if (!condition.isEmpty()) {
+            final String name = lower_condition;
+            return new Condition() {
+                @Override
+                boolean matches(UserData user, long now) {
+                    return user.getName().toLowerCase(Locale.ENGLISH).equals(name);
+                }
+            };
+        }
+        throw new NonNumericException("Selection rule " + rule + " contains an empty condition");
+    }
+
+    /**
+     * Checks whether a condition is an age or size condition.
+     *
+     * @param lower_condition the condition in lower case
+     * @return whether the condition is an age or size condition
+     */
+    private static boolean isPredicate(String lower_condition) {
+        return ((lower_condition.startsWith("age>") || lower_condition.startsWith("age<")) && lower_condition.length() > 4) || ((lower_condition.startsWith("size>") || lower_condition.startsWith("size<")) && lower_condition.length() > 5);
+    }
+
+    /**
+     * Parses a number followed by a unit, for example 90d or 1.5GB.
+     *
+     * @param quantity the number and unit in lower case
+     * @param units the units allowed, longest first where one ends with another
+     * @param multipliers the value of one of each unit
+     * @param rule the rule the quantity belongs to, used in error messages
+     * @return the quantity multiplied by the value of its unit
+     * @throws NonNumericException the quantity could not be parsed
+     */
+    private static long parseQuantity(String quantity, String[] units, long[] multipliers, String rule) throws NonNumericException {
+        String trimmed_quantity = quantity.trim();
+        for (int i = 0; i < units.length; i++) {
+            if (trimmed_quantity.endsWith(units[i])) {
+                try {
+                    return Math.round(Double.parseDouble(trimmed_quantity.substring(0, trimmed_quantity.length() - units[i].length()).trim()) * multipliers[i]);
+                } catch (NumberFormatException e) {
+                    break;
+                }
+            }
+        }
+        throw new NonNumericException("Selection rule " + rule + " contains an invalid value " + quantity);
+    }
+
+    /**
+     * Adds a regular expression to an alternation of regular expressions.
+     *
+     * @param alternatives the alternation to add to
+     * @param regex the regular expression to add
+     * @param rule the rule the regular expression belongs to, used in error
+     * messages
+     * @throws NonNumericException the regular expression is invalid
+     */
+    private static void appendAlternative(StringBuilder alternatives, String regex, String rule) throws NonNumericException {
+        compilePattern(regex, rule);
+        if (alternatives.length() > 0) {
+            alternatives.append('|');
+        }
+        alternatives.append("(?:").append(regex).append(')');
+    }
+
+    /**
+     * Compiles a case insensitive regular expression.
+     *
+     * @param regex the regular expression to compile
+     * @param rule the rule the regular expression belongs to, used in error
+     * messages
+     * @return the compiled pattern
+     * @throws NonNumericException the regular expression is invalid
+     */
+    private static Pattern compilePattern(String regex, String rule) throws NonNumericException {
+        try {
+            return Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        } catch (PatternSyntaxException e) {
+            throw new NonNumericException("Selection rule " + rule + " contains an invalid pattern. Error is " + e.getDescription());
+        }
+    }
+
+    /**
+     * Converts a pattern using * and ? wildcards to a regular expression.
+     *
+     * @param glob the pattern to convert
+     * @return the equivalent regular expression
+     */
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        int literal_start = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literal_start) {
+                    regex.append(Pattern.quote(glob.substring(literal_start, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literal_start = i + 1;
+            }
+        }
+        if (literal_start < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literal_start)));
+        }
+        return regex.toString();
+    }
+}
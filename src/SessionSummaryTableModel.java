@@ -0,0 +1,96 @@
+
+import java.util.List;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model for the summary table in the dashboard, showing one row for
+ * each computer open in the dashboard.
+ * <p>
+ * Each cell is read from the ProfileDeleterGUI and ProfileDeleter session of
+ * the computer when the table draws it, so a row only needs to be redrawn
+ * when its computer reports a change.<br>
+ * Everything must be called on the event dispatch thread.
+ */
+public class SessionSummaryTableModel extends AbstractTableModel {
+
+    /**
+     * Heading names of the summary table columns.
+     */
+    public static final String[] HEADINGS = {"Computer", "Stage", "Users", "Users Selected", "Size Selected"};
+
+    /**
+     * The column showing the size in bytes of the users selected for deletion
+     * on each computer.
+     */
+    public static final int SIZE_COLUMN = 4;
+
+    /**
+     * Class attributes.
+     */
+    private final List<ProfileDeleterGUI> sessions;
+
+    /**
+     * Constructor for SessionSummaryTableModel class.
+     *
+     * @param sessions the computers open in the dashboard. The list is read
+     * directly so the dashboard must fire the matching event whenever it adds
+     * or removes a computer
+     */
+    public SessionSummaryTableModel(List<ProfileDeleterGUI> sessions) {
+        this.sessions = sessions;
+    }
+
+    @Override
+    public int getRowCount() {
+        return sessions.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return HEADINGS.length;
+    }
+
+    @Override
+    public String getColumnName(int col) {
+        return HEADINGS[col];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int col) {
+        switch (col) {
+            case 2:
+            case 3:
+                return Integer.class;
+            case SIZE_COLUMN:
+                return Long.class;
+            default:
+                return String.class;
+        }
+    }
+
+    @Override
+    public Object getValueAt(int row, int col) {
+        ProfileDeleterGUI session = sessions.get(row);
+        ProfileDeleter profile_deleter = session.getProfileDeleter();
+        switch (col) {
+            case 0:
+                String remote_computer = profile_deleter.getRemoteComputer();
+                return remote_computer == null || remote_computer.isEmpty() ? "Not set" : remote_computer;
+            case 1:
+                return session.getStage();
+            case 2:
+                return profile_deleter.getUserRegistry().size();
+            case 3:
+                return profile_deleter.getSelectedCount();
+            case SIZE_COLUMN:
+                return profile_deleter.getSizeCheckComplete() ? profile_deleter.getSelectedSize() : UserData.SIZE_NOT_CHECKED;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int col) {
+        return false;
+    }
+}
@@ -1,7 +1,9 @@
 
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
-import java.util.regex.Pattern;
 
 /**
  * Essentially a data structure class containing data for a single user account
@@ -13,7 +15,11 @@ import java.util.regex.Pattern;
  * Also has an attribute to tell the ProfileDeleter class whether this
  * particular user folder should be deleted.<br>
  * Has some functions for compiling the data into Strings or Object arrays for
- * use with various GUI elements.
+ * use with various GUI elements.<br>
+ * Size, last updated and state are parsed once when set and held as typed
+ * values. They are only formatted as Strings when displayed.<br>
+ * Attributes are volatile as they are updated by worker threads and read by
+ * the GUI.
  */
 public class UserData {
 
@@ -22,16 +28,65 @@ public class UserData {
      */
     public static final List<String> HEADINGS = Arrays.asList("Delete?", "Name", "Last Updated", "Size", "State", "SID", "GUID");
 
+    /**
+     * Size values for users whose size has not been calculated.
+     */
+    public static final long SIZE_NOT_CHECKED = -1;
+    public static final long SIZE_CHECK_FAILED = -2;
+
+    /**
+     * Format of the last updated value returned by GetDirectoryList.ps1.
+     * <p>
+     * SimpleDateFormat is not thread safe so each thread gets its own.
+     */
+    private static final ThreadLocal<SimpleDateFormat> LAST_UPDATED_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("MM/dd/yyyy HH:mm:ss");
+        }
+    };
+
+    /**
+     * Editable state of a users folder.
+     */
+    public enum STATE {
+        NOT_CHECKED(""), EDITABLE("Editable"), UNEDITABLE("Uneditable");
+
+        private final String display_name;
+
+        STATE(String display_name) {
+            this.display_name = display_name;
+        }
+
+        /**
+         * Gets the name of the state as displayed in GUI elements.
+         *
+         * @return the display name of the state
+         */
+        @Override
+        public String toString() {
+            return display_name;
+        }
+    }
+
     /**
      * Class attributes.
      */
-    private boolean delete;
-    private String name;
-    private String last_updated;
-    private String size;
-    private String state;
-    private String sid;
-    private String guid;
+    private volatile boolean delete;
+    private volatile boolean delete_automatic;
+    private volatile String name;
+    private volatile String last_updated;
+    private volatile long last_updated_time;
+    private volatile String key_folders_updated;
+    private volatile long size;
+    private volatile STATE state;
+    private volatile String sid;
+    private volatile String guid;
+    private volatile boolean cannot_delete;
+    private volatile boolean should_not_delete;
+    private volatile String progress;
+    private volatile int progress_percent;
+    private volatile UserDataListener listener;
 
     /**
      * Constructor for UserData class.
@@ -40,10 +95,14 @@ public class UserData {
         delete = false;
         name = "";
         last_updated = "";
-        size = "";
-        state = "";
+        last_updated_time = -1;
+        key_folders_updated = "";
+        size = SIZE_NOT_CHECKED;
+        state = STATE.NOT_CHECKED;
         sid = "";
         guid = "";
+        progress = "";
+        progress_percent = -1;
     }
 
     /**
@@ -52,28 +111,55 @@ public class UserData {
      * @param delete whether the user should be flagged for deletion
      * @param name the username of the user
      * @param last_updated the last time the users folder in Windows was updated
-     * @param size the size of the users folder in Windows
+     * @param size the size of the users folder in Windows in bytes, or
+     * SIZE_NOT_CHECKED
      * @param state whether the users folder in Windows can be edited
      * @param sid the ProfileList SID value for the user in the registry
      * @param guid the ProfileGuid GUID value for the user in the registry
      */
-    public UserData(boolean delete, String name, String last_updated, String size, String state, String sid, String guid) {
+    public UserData(boolean delete, String name, String last_updated, long size, STATE state, String sid, String guid) {
         this.delete = delete;
         this.name = name;
-        this.last_updated = last_updated;
+        this.key_folders_updated = "";
         this.size = size;
         this.state = state;
-        this.sid = sid;
-        this.guid = guid;
+        this.progress = "";
+        this.progress_percent = -1;
+        setLastUpdated(last_updated);
+        setSid(sid);
+        setGuid(guid);
     }
 
     /**
      * Sets the delete attribute
+     * <p>
+     * Notifies the listener if the delete flag changes. The flag is treated as
+     * set by the user rather than automatically.
      *
      * @param delete whether the user should be flagged for deletion
      */
     public void setDelete(boolean delete) {
+        setDelete(delete, false);
+    }
+
+    /**
+     * Sets the delete attribute, recording whether it was set automatically
+     * by delete all users or the auto select rules rather than by the user.
+     * <p>
+     * Notifies the listener if the delete flag changes.
+     *
+     * @param delete whether the user should be flagged for deletion
+     * @param automatic whether the flag was set automatically
+     */
+    public synchronized void setDelete(boolean delete, boolean automatic) {
+        boolean old_delete = this.delete;
         this.delete = delete;
+        this.delete_automatic = delete && automatic;
+        UserDataListener current_listener = listener;
+        if (current_listener != null && old_delete != delete) {
+            current_listener.deleteChanged(this, size, old_delete, delete);
+            current_listener.userChanged(this);
+        }
     }
 
     /**
@@ -88,19 +174,78 @@ public class UserData {
     /**
      * Sets the last updated attribute
      *
-     * @param last_updated the last time the users folder in Windows was updated
+     * <p>
+     * The value is parsed into a time once here so it never needs to be parsed
+     * again when displayed or sorted.
+     *
+     * @param last_updated the last time the users folder in Windows was
+     * updated, in the format MM/dd/yyyy HH:mm:ss
      */
     public void setLastUpdated(String last_updated) {
         this.last_updated = last_updated;
+        last_updated_time = -1;
+        if (last_updated != null && !last_updated.isEmpty()) {
+            try {
+                last_updated_time = LAST_UPDATED_FORMAT.get().parse(last_updated).getTime();
+            } catch (ParseException e) {
+            }
+        }
+    }
+
+    /**
+     * Sets the key folders updated attribute
+     *
+     * @param key_folders_updated the most recent time any of the key sub
+     * folders in the users folder in Windows was updated
+     */
+    public void setKeyFoldersUpdated(String key_folders_updated) {
+        this.key_folders_updated = key_folders_updated;
     }
 
     /**
      * Sets the size attribute
      *
-     * @param size the size of the users folder in Windows
+     * @param size the size of the users folder in Windows in bytes, or
+     * SIZE_NOT_CHECKED or SIZE_CHECK_FAILED
      */
-    public void setSize(String size) {
+    public synchronized void setSize(long size) {
+        long old_size = this.size;
         this.size = size;
+        UserDataListener current_listener = listener;
+        if (current_listener != null && old_size != size) {
+            current_listener.sizeChanged(this, delete, old_size, size);
+            current_listener.userChanged(this);
+        }
+    }
+
+    /**
+     * Sets the listener attribute
+     * <p>
+     * The new listener is notified of the current size and delete flag as if
+     * they had just been set and the old listener is notified as if they had
+     * just been cleared, so running totals kept by either stay correct.
+     *
+     * @param listener the listener to notify when the size or delete flag
+     * changes, or null for none
+     */
+    public synchronized void setListener(UserDataListener listener) {
+        UserDataListener old_listener = this.listener;
+        if (old_listener == listener) {
+            return;
+        }
+        if (old_listener != null) {
+            if (delete) {
+                old_listener.deleteChanged(this, size, true, false);
+            }
+            old_listener.sizeChanged(this, false, size, SIZE_NOT_CHECKED);
+        }
+        this.listener = listener;
+        if (listener != null) {
+            listener.sizeChanged(this, false, SIZE_NOT_CHECKED, size);
+            if (delete) {
+                listener.deleteChanged(this, size, false, true);
+            }
+        }
     }
 
     /**
@@ -108,8 +253,9 @@ public class UserData {
      *
      * @param state whether the users folder in Windows can be edited
      */
-    public void setState(String state) {
+    public void setState(STATE state) {
         this.state = state;
+        notifyChanged();
     }
 
     /**
@@ -118,7 +264,8 @@ public class UserData {
      * @param sid the ProfileList SID value for the user in the registry
      */
     public void setSid(String sid) {
-        this.sid = sid;
+        this.sid = sid == null ? "" : sid.trim();
+        notifyChanged();
     }
 
     /**
@@ -127,7 +274,56 @@ public class UserData {
      * @param guid the ProfileGuid GUID value for the user in the registry
      */
     public void setGuid(String guid) {
-        this.guid = guid;
+        this.guid = guid == null ? "" : guid.trim();
+        notifyChanged();
+    }
+
+    /**
+     * Sets the cannot delete attribute
+     *
+     * @param cannot_delete whether the user matches the cannot delete rules
+     * and is not allowed to be deleted
+     */
+    public void setCannotDelete(boolean cannot_delete) {
+        this.cannot_delete = cannot_delete;
+        notifyChanged();
+    }
+
+    /**
+     * Sets the should not delete attribute
+     *
+     * @param should_not_delete whether the user matches the should not delete
+     * rules and must not be flagged for deletion automatically
+     */
+    public void setShouldNotDelete(boolean should_not_delete) {
+        this.should_not_delete = should_not_delete;
+    }
+
+    /**
+     * Sets the progress attributes
+     * <p>
+     * Used to show what is currently being done to the user while a check or
+     * deletion is running.
+     *
+     * @param progress what is currently being done to the user, or an empty
+     * String if nothing is
+     * @param progress_percent how far through the current check or deletion
+     * the user is, or -1 if not known
+     */
+    public void setProgress(String progress, int progress_percent) {
+        this.progress = progress == null ? "" : progress;
+        this.progress_percent = progress_percent;
+        notifyChanged();
+    }
+
+    /**
+     * Notifies the listener that an attribute has changed.
+     */
+    private void notifyChanged() {
+        UserDataListener current_listener = listener;
+        if (current_listener != null) {
+            current_listener.userChanged(this);
+        }
     }
 
     /**
@@ -139,6 +335,16 @@ public class UserData {
         return delete;
     }
 
+    /**
+     * Gets the delete automatic attribute
+     *
+     * @return whether the user was flagged for deletion automatically by
+     * delete all users or the auto select rules rather than by the user
+     */
+    public boolean getDeleteAutomatic() {
+        return delete_automatic;
+    }
+
     /**
      * Gets the name attribute
      *
@@ -157,21 +363,68 @@ public class UserData {
         return last_updated;
     }
 
+    /**
+     * Gets the last updated attribute as a time
+     *
+     * @return the last time the users folder in Windows was updated in
+     * milliseconds since the epoch, or -1 if it could not be parsed
+     */
+    public long getLastUpdatedTime() {
+        return last_updated_time;
+    }
+
+    /**
+     * Gets the last updated attribute as a Date
+     *
+     * @return the last time the users folder in Windows was updated, or null
+     * if it could not be parsed
+     */
+    public Date getLastUpdatedDate() {
+        return last_updated_time < 0 ? null : new Date(last_updated_time);
+    }
+
+    /**
+     * Gets the key folders updated attribute
+     *
+     * @return the most recent time any of the key sub folders in the users
+     * folder in Windows was updated
+     */
+    public String getKeyFoldersUpdated() {
+        return key_folders_updated;
+    }
+
     /**
      * Gets the size attribute
      *
-     * @return the size of the users folder in Windows
+     * @return the size of the users folder in Windows in bytes, or
+     * SIZE_NOT_CHECKED or SIZE_CHECK_FAILED
      */
-    public String getSize() {
+    public long getSize() {
         return size;
     }
 
+    /**
+     * Gets the size attribute as a String
+     *
+     * @return the size of the users folder in Windows in bytes, an empty
+     * String if it has not been checked or Could not calculate size if the
+     * check failed
+     */
+    public String getSizeText() {
+        if (size == SIZE_NOT_CHECKED) {
+            return "";
+        } else if (size < 0) {
+            return "Could not calculate size";
+        }
+        return Long.toString(size);
+    }
+
     /**
      * Gets the state attribute
      *
      * @return whether the users folder in Windows can be edited
      */
-    public String getState() {
+    public STATE getState() {
         return state;
     }
 
@@ -193,6 +446,46 @@ public class UserData {
         return guid;
     }
 
+    /**
+     * Gets the cannot delete attribute
+     *
+     * @return whether the user matches the cannot delete rules and is not
+     * allowed to be deleted
+     */
+    public boolean getCannotDelete() {
+        return cannot_delete;
+    }
+
+    /**
+     * Gets the should not delete attribute
+     *
+     * @return whether the user matches the should not delete rules and must
+     * not be flagged for deletion automatically
+     */
+    public boolean getShouldNotDelete() {
+        return should_not_delete;
+    }
+
+    /**
+     * Gets the progress attribute
+     *
+     * @return what is currently being done to the user, or an empty String if
+     * nothing is
+     */
+    public String getProgress() {
+        return progress;
+    }
+
+    /**
+     * Gets the progress percent attribute
+     *
+     * @return how far through the current check or deletion the user is, or
+     * -1 if not known
+     */
+    public int getProgressPercent() {
+        return progress_percent;
+    }
+
     /**
      * Converts the HEADINGS attribute into a String array.
      * <p>
@@ -234,7 +527,7 @@ public class UserData {
      * @return the attribute of the UserData as an Object array
      */
     public Object[] toObjectArray() {
-        Object[] object_array = {delete, name, last_updated, size, state, sid, guid};
+        Object[] object_array = {delete, name, getLastUpdatedDate(), getSizeText(), state.toString(), sid, guid};
         return object_array;
     }
 
@@ -254,16 +547,13 @@ public class UserData {
         }
         output += name + '\t';
         output += last_updated + '\t';
-        if (Pattern.matches("[-+]?[0-9]*\\.?[0-9]+", size)) {
-            Double size_in_bytes = Double.parseDouble(size);
-            Double size_in_megabytes = size_in_bytes / (1024.0 * 1024.0);
+        if (size >= 0) {
+            double size_in_megabytes = size / (1024.0 * 1024.0);
             output += (size_in_megabytes + " MB") + '\t';
-        } else {
-            if (size.compareTo("") != 0) {
-                output += "Could not calculate size" + '\t';
-            }
+        } else if (size != SIZE_NOT_CHECKED) {
+            output += "Could not calculate size" + '\t';
         }
-        output += state + '\t';
+        output += state.toString() + '\t';
         output += sid + '\t';
         output += guid;
         return output;
@@ -0,0 +1,44 @@
+
+/**
+ * Listener notified when the size, delete flag or other attributes of a
+ * UserData change.
+ * <p>
+ * Used to keep running totals of user sizes and users selected for deletion
+ * up to date without walking the user list, and to update only the rows of
+ * the results table whose user has changed.<br>
+ * Called on the thread that made the change while the UserData is locked, so
+ * implementations must be quick and thread safe.
+ */
+public interface UserDataListener {
+
+    /**
+     * Called when the size of a user changes.
+     *
+     * @param user the user whose size changed
+     * @param delete whether the user is flagged for deletion
+     * @param old_size the previous size in bytes, or a negative value if the
+     * size was not known
+     * @param new_size the new size in bytes, or a negative value if the size
+     * is not known
+     */
+    void sizeChanged(UserData user, boolean delete, long old_size, long new_size);
+
+    /**
+     * Called when the delete flag of a user changes.
+     *
+     * @param user the user whose delete flag changed
+     * @param size the size of the user in bytes, or a negative value if the
+     * size is not known
+     * @param old_delete the previous delete flag
+     * @param new_delete the new delete flag
+     */
+    void deleteChanged(UserData user, long size, boolean old_delete, boolean new_delete);
+
+    /**
+     * Called when any attribute of a user that is displayed changes,
+     * including the size and delete flag.
+     *
+     * @param user the user that changed
+     */
+    void userChanged(UserData user);
+}
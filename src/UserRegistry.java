@@ -0,0 +1,196 @@
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concurrent registry of the users on the target computer.
+ * <p>
+ * Users are kept in the order they were discovered and indexed by folder name
+ * and by SID so any user can be found in constant time without searching the
+ * list.<br>
+ * The ordered list and the name index are immutable and replaced whole when
+ * users are added or removed, so reads never lock and snapshot returns the
+ * current list without copying it. Worker threads hold a reference to the
+ * UserData they are working on rather than an index into the list, so users
+ * being removed by a deletion while checks are rerun can never cause a worker
+ * to update the wrong user.<br>
+ * Every user in the registry is given the registry's UserDataListener, and
+ * the listener is removed again when the user leaves the registry, so running
+ * totals kept by the listener only ever include current users.
+ */
+public class UserRegistry implements Iterable<UserData> {
+
+    /**
+     * Class attributes.
+     */
+    private volatile List<UserData> users;
+    private volatile Map<String, UserData> users_by_name;
+    private final ConcurrentHashMap<String, UserData> users_by_sid;
+    private final UserDataListener listener;
+
+    /**
+     * Constructor for UserRegistry class.
+     *
+     * @param listener the listener to notify when the size or delete flag of a
+     * user in the registry changes, or null for none
+     */
+    public UserRegistry(UserDataListener listener) {
+        this.listener = listener;
+        users = Collections.emptyList();
+        users_by_name = Collections.emptyMap();
+        users_by_sid = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Replaces every user in the registry.
+     *
+     * @param new_users the users to add, in display order
+     */
+    public synchronized void replaceAll(Collection<UserData> new_users) {
+        users_by_sid.clear();
+        for (UserData user : users) {
+            user.setListener(null);
+        }
+        publish(new ArrayList<>(new_users));
+    }
+
+    /**
+     * Adds a user to the end of the registry.
+     *
+     * @param user the user to add
+     */
+    public synchronized void add(UserData user) {
+        List<UserData> new_users = new ArrayList<>(users.size() + 1);
+        new_users.addAll(users);
+        new_users.add(user);
+        publish(new_users);
+    }
+
+    /**
+     * Removes users from the registry.
+     *
+     * @param removed_users the users to remove
+     */
+    public synchronized void removeAll(Collection<UserData> removed_users) {
+        Map<UserData, Boolean> removed = new IdentityHashMap<>();
+        for (UserData user : removed_users) {
+            removed.put(user, Boolean.TRUE);
+        }
+        List<UserData> new_users = new ArrayList<>(users.size());
+        for (UserData user : users) {
+            if (removed.containsKey(user)) {
+                user.setListener(null);
+                if (!user.getSid().isEmpty()) {
+                    users_by_sid.remove(user.getSid(), user);
+                }
+            } else {
+                new_users.add(user);
+            }
+        }
+        publish(new_users);
+    }
+
+    /**
+     * Sets the SID of a user and updates the SID index.
+     *
+     * @param user the user to set the SID for
+     * @param sid the ProfileList SID value for the user in the registry
+     */
+    public void setSid(UserData user, String sid) {
+        String old_sid = user.getSid();
+        if (!old_sid.isEmpty()) {
+            users_by_sid.remove(old_sid, user);
+        }
+        user.setSid(sid);
+        if (!user.getSid().isEmpty()) {
+            users_by_sid.put(user.getSid(), user);
+        }
+    }
+
+    /**
+     * Finds a user by the name of their folder.
+     *
+     * @param name the name of the users folder, case insensitive
+     * @return the user or null if there is no user with that name
+     */
+    public UserData getByName(String name) {
+        return users_by_name.get(name.toLowerCase());
+    }
+
+    /**
+     * Finds a user by their SID.
+     *
+     * @param sid the ProfileList SID value for the user in the registry
+     * @return the user or null if no user has that SID
+     */
+    public UserData getBySid(String sid) {
+        return users_by_sid.get(sid);
+    }
+
+    /**
+     * Gets an immutable snapshot of the users in the registry.
+     * <p>
+     * The snapshot does not change when users are added or removed later, so
+     * it can be iterated by the GUI or used for reports without locking.
+     *
+     * @return the users in display order
+     */
+    public List<UserData> snapshot() {
+        return users;
+    }
+
+    /**
+     * Gets the number of users in the registry.
+     *
+     * @return the number of users
+     */
+    public int size() {
+        return users.size();
+    }
+
+    /**
+     * Gets whether the registry has no users.
+     *
+     * @return whether the registry has no users
+     */
+    public boolean isEmpty() {
+        return users.isEmpty();
+    }
+
+    /**
+     * Iterates over a snapshot of the users in the registry.
+     *
+     * @return an iterator over the users in display order
+     */
+    @Override
+    public Iterator<UserData> iterator() {
+        return users.iterator();
+    }
+
+    /**
+     * Publishes a new list of users and rebuilds the name index.
+     * <p>
+     * Must only be called while synchronized on the registry.
+     *
+     * @param new_users the new list of users
+     */
+    private void publish(List<UserData> new_users) {
+        Map<String, UserData> new_users_by_name = new HashMap<>(new_users.size() * 2);
+        for (UserData user : new_users) {
+            user.setListener(listener);
+            new_users_by_name.put(user.getName().toLowerCase(), user);
+            if (!user.getSid().isEmpty()) {
+                users_by_sid.put(user.getSid(), user);
+            }
+        }
+        users_by_name = Collections.unmodifiableMap(new_users_by_name);
+        users = Collections.unmodifiableList(new_users);
+    }
+}
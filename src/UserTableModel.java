@@ -0,0 +1,186 @@
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model for the results table that reads each cell straight from the
+ * UserData in the user registry.
+ * <p>
+ * The rows are a snapshot of the registry taken when reload is called, which
+ * only needs to happen when users are added or removed. Changes to a user are
+ * reported through userChanged from whichever thread made them and only the
+ * changed rows are redrawn the next time fireChangedRows is called, so the
+ * table keeps its sort order and selection while checks are running.<br>
+ * The Size column holds the size in bytes as a Long so it can be sorted
+ * without parsing text, the GUI formats it when the cell is drawn.<br>
+ * After the columns in UserData.HEADINGS the model has a Progress column
+ * showing what is currently being done to each user.<br>
+ * Everything except userChanged must be called on the event dispatch thread.
+ */
+public class UserTableModel extends AbstractTableModel implements UserDataListener {
+
+    /**
+     * The column showing the progress of each user.
+     */
+    public static final int PROGRESS_COLUMN = UserData.HEADINGS.size();
+
+    /**
+     * Class attributes.
+     */
+    private final UserRegistry user_registry;
+    private final Set<UserData> changed_users;
+    private List<UserData> users;
+    private Map<UserData, Integer> rows;
+
+    /**
+     * Constructor for UserTableModel class.
+     *
+     * @param user_registry the registry of users to display
+     */
+    public UserTableModel(UserRegistry user_registry) {
+        this.user_registry = user_registry;
+        changed_users = Collections.newSetFromMap(new ConcurrentHashMap<UserData, Boolean>());
+        users = Collections.emptyList();
+        rows = new IdentityHashMap<>();
+    }
+
+    /**
+     * Takes a new snapshot of the user registry and redraws every row.
+     * <p>
+     * Needs to be run anytime users are added to or removed from the user
+     * registry.
+     */
+    public void reload() {
+        changed_users.clear();
+        users = user_registry.snapshot();
+        Map<UserData, Integer> new_rows = new IdentityHashMap<>(users.size() * 2);
+        for (int i = 0; i < users.size(); i++) {
+            new_rows.put(users.get(i), i);
+        }
+        rows = new_rows;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Redraws the rows of every user that has changed since this was last
+     * called.
+     * <p>
+     * The changed rows are reported as a single range so the table and its
+     * sorter only handle one event no matter how many users changed.
+     */
+    public void fireChangedRows() {
+        int first_row = Integer.MAX_VALUE;
+        int last_row = -1;
+        Iterator<UserData> iterator = changed_users.iterator();
+        while (iterator.hasNext()) {
+            Integer row = rows.get(iterator.next());
+            iterator.remove();
+            if (row != null) {
+                first_row = Math.min(first_row, row);
+                last_row = Math.max(last_row, row);
+            }
+        }
+        if (last_row >= 0) {
+            fireTableRowsUpdated(first_row, last_row);
+        }
+    }
+
+    /**
+     * Gets the user displayed in a row.
+     *
+     * @param row the row in the model
+     * @return the user displayed in the row
+     */
+    public UserData getUserAt(int row) {
+        return users.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return users.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return UserData.HEADINGS.size() + 1;
+    }
+
+    @Override
+    public String getColumnName(int col) {
+        return col == PROGRESS_COLUMN ? "Progress" : UserData.HEADINGS.get(col);
+    }
+
+    @Override
+    public Class<?> getColumnClass(int col) {
+        switch (col) {
+            case 0:
+                return Boolean.class;
+            case 2:
+                return Date.class;
+            case 3:
+                return Long.class;
+            default:
+                return String.class;
+        }
+    }
+
+    @Override
+    public Object getValueAt(int row, int col) {
+        UserData user = users.get(row);
+        switch (col) {
+            case 0:
+                return user.getDelete();
+            case 1:
+                return user.getName();
+            case 2:
+                return user.getLastUpdatedDate();
+            case 3:
+                return user.getSize();
+            case 4:
+                return user.getState().toString();
+            case 5:
+                return user.getSid();
+            case 6:
+                return user.getGuid();
+            case 7:
+                int percent = user.getProgressPercent();
+                return percent < 0 || user.getProgress().isEmpty() ? user.getProgress() : user.getProgress() + " (" + percent + "%)";
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int col) {
+        UserData user = users.get(row);
+        return col == 0 && user.getState() == UserData.STATE.EDITABLE && !user.getCannotDelete();
+    }
+
+    @Override
+    public void setValueAt(Object value, int row, int col) {
+        if (col == 0 && value instanceof Boolean) {
+            users.get(row).setDelete((Boolean) value);
+            fireTableCellUpdated(row, col);
+        }
+    }
+
+    @Override
+    public void sizeChanged(UserData user, boolean delete, long old_size, long new_size) {
+    }
+
+    @Override
+    public void deleteChanged(UserData user, long size, boolean old_delete, boolean new_delete) {
+    }
+
+    @Override
+    public void userChanged(UserData user) {
+        changed_users.add(user);
+    }
+}